@@ -0,0 +1,109 @@
+package benchmarks;
+
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.domain.ReservationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the operations of Hotel for hotels with a growing amount of reservations.
+ * The time per availability check and per added reservation should stay the same for every reservationCount.
+ * Run with: mvn -Pbenchmarks compile exec:exec -Dbenchmark=HotelBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotelBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int reservationCount;
+
+    private Hotel hotel;
+    private LocalDate date;
+
+
+    /**
+     * Fills the hotel with reservationCount stays of 1 room and 1 to 7 nights, spread over a year.
+     * None of them are confirmed, and they expire in an hour.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws ReservationException {
+        // Enough rooms so every reservation fits, even with an extra one from the benchmarks.
+        hotel = new Hotel("h1", reservationCount + 1);
+        date = LocalDate.of(2022, 1, 1);
+        long expiresAt = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < reservationCount; i++) {
+            hotel.addReservation(hotel.createReservation(
+                    new Reservation("c" + (i % 100), 1, date.plusDays(i % 365), date.plusDays(i % 365 + 1 + i % 7)),
+                    Collections.emptyList(),
+                    expiresAt));
+        }
+    }
+
+
+    @Benchmark
+    public int getAvailableRooms() {
+        return hotel.getAvailableRooms(date);
+    }
+
+    /**
+     * Availability for every night of a two week stay.
+     */
+    @Benchmark
+    public int getAvailableRoomsStay() {
+        return hotel.getAvailableRooms(date, date.plusDays(14));
+    }
+
+    /**
+     * Deletes the reservation again so the hotel keeps the same size during the benchmark.
+     */
+    @Benchmark
+    public Reservation addAndDeleteReservation() throws ReservationException {
+        Reservation reservation = hotel.createReservation(new Reservation("c1", 1, date), Collections.emptyList());
+        hotel.addReservation(reservation);
+        hotel.deleteReservation(reservation.id);
+        return reservation;
+    }
+
+    /**
+     * Same as addAndDeleteReservation, for a two week stay.
+     */
+    @Benchmark
+    public Reservation addAndDeleteStay() throws ReservationException {
+        Reservation reservation = hotel.createReservation(
+                new Reservation("c1", 1, date, date.plusDays(14)), Collections.emptyList());
+        hotel.addReservation(reservation);
+        hotel.deleteReservation(reservation.id);
+        return reservation;
+    }
+
+    /**
+     * What the expiry timer of the hotel does when it goes off. Nothing expired yet,
+     * so it should take the same time however many reservations wait to be confirmed.
+     */
+    @Benchmark
+    public long expire() {
+        long now = System.currentTimeMillis();
+        hotel.expire(now);
+        return hotel.getNextExpiry();
+    }
+
+    /**
+     * The reservations of 1 of the 100 customers.
+     * The hotel stores them as rows of primitives, so this makes a Reservation of each of them.
+     * It grows with the reservations of the customer, 10000 of them for the largest reservationCount.
+     */
+    @Benchmark
+    public Collection<Reservation> getReservations() {
+        return hotel.getReservations("c1");
+    }
+
+}
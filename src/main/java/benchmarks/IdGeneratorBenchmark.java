@@ -0,0 +1,49 @@
+package benchmarks;
+
+import nl.saxion.concurrency.domain.ReservationIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares making reservation ids with UUID.randomUUID(), which shares one SecureRandom between all threads,
+ * to the ReservationIdGenerators, of which every hotel has its own. Runs on 4 threads, like agents booking at once.
+ * Run with: mvn -Pbenchmarks compile exec:exec -Dbenchmark=IdGeneratorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private ReservationIdGenerator snowflake;
+    private ReservationIdGenerator random;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        snowflake = ReservationIdGenerator.create("snowflake");
+        random = ReservationIdGenerator.create("random");
+    }
+
+
+    @Benchmark
+    public UUID randomUUID() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public long snowflake() {
+        return snowflake.nextId();
+    }
+
+    @Benchmark
+    public long random() {
+        return random.nextId();
+    }
+
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import nl.saxion.concurrency.domain.Reservation;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Reservation.toString(), which is part of every response that lists reservations.
+ * Run with: mvn -Pbenchmarks compile exec:exec -Dbenchmark=ReservationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservationBenchmark {
+
+    private Reservation reservation;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        reservation = new Reservation(UUID.randomUUID().toString(), "c1", 5, LocalDate.of(2022, 1, 1));
+    }
+
+
+    @Benchmark
+    public String toStringReservation() {
+        return reservation.toString();
+    }
+
+}
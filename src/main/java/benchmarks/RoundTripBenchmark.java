@@ -0,0 +1,114 @@
+package benchmarks;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.japi.function.Function;
+import nl.saxion.concurrency.AgentRouter;
+import nl.saxion.concurrency.StartAkka;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures asks from outside the system through an AgentActor and a HotelManagerActor, and back.
+ * The asks go straight to the agents with an AgentRouter, or through the RentARoomActor like before.
+ * Run with more threads to see the RentARoomActor limit the throughput, with -t.
+ * Runs a single node like the unit tests, with an empty journal. The replies aren't rendered to text, like internal callers.
+ * Run with: mvn -Pbenchmarks compile exec:exec -Dbenchmark=RoundTripBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Param({"agents", "guardian"})
+    public String entry;
+
+    private ActorSystem<RentARoomMessage> system;
+    private AgentRouter agents;
+    private LocalDate date;
+    private int dayOffset;
+
+
+    /**
+     * Starts the system with hotel "h1", and waits until the agents know it.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        system = new StartAkka().test();
+        agents = new AgentRouter(system);
+        date = LocalDate.of(2022, 1, 1);
+        // Gives the AgentActor time to register at the router, like the unit tests do.
+        try { Thread.sleep(1000); } catch (Exception ignored) { }
+
+        ask(sender -> new RentARoomMessage.AddHotel(sender, "h1", Integer.MAX_VALUE));
+        while (listReservations() instanceof RentARoomMessage.Rejected) {
+            try { Thread.sleep(100); } catch (Exception ignored) { }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+    }
+
+
+    /**
+     * Read of one hotel.
+     */
+    @Benchmark
+    public RentARoomMessage listReservations() {
+        return ask(sender -> new RentARoomMessage.ListReservations(sender, "h1", "c1"));
+    }
+
+    /**
+     * Scatter-gather over all hotels.
+     */
+    @Benchmark
+    public RentARoomMessage listHotels() {
+        return ask(RentARoomMessage.ListHotels::new);
+    }
+
+    /**
+     * Scatter-gather over all hotels, where the hotels check the availability and only the best one is returned.
+     */
+    @Benchmark
+    public RentARoomMessage searchAvailableRooms() {
+        return ask(sender -> new RentARoomMessage.SearchAvailableRooms(sender, 1, date, 7, 1, TIMEOUT));
+    }
+
+    /**
+     * Write of one hotel, it replies after the reservation is in the journal.
+     * Spreads the reservations over 10 years.
+     */
+    @Benchmark
+    public RentARoomMessage requestReservations() {
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c2", 1, date.plusDays(dayOffset++ % 3650)))));
+        return ask(sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations));
+    }
+
+
+    private RentARoomMessage ask(Function<ActorRef<RentARoomMessage>, RentARoomMessage> message) {
+        if (entry.equals("agents")) {
+            return agents.ask(message, TIMEOUT).toCompletableFuture().join();
+        }
+        return AskPattern.ask(system, message, TIMEOUT, system.scheduler()).toCompletableFuture().join();
+    }
+
+}
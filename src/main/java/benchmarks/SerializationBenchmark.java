@@ -0,0 +1,118 @@
+package benchmarks;
+
+import akka.actor.ActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.domain.HotelSummary;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.messages.HotelEvent;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the RentARoomSerializer to java serialization, which the messages used before.
+ * Every operation serializes or deserializes four typical messages: a request for three reservations with the sender,
+ * a booked reservation as the reply, a hotel summary and the event of an added reservation. The bytes of each are printed in the setup.
+ * Run with: mvn -Pbenchmarks compile exec:exec -Dbenchmark=SerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"rent-a-room", "java"})
+    public String serializer;
+
+    private ActorSystem system;
+    private Serialization serialization;
+    private List<Object> messages;
+    private Serializer[] serializers;
+    private String[] manifests;
+    private byte[][] serialized;
+
+
+    /**
+     * Starts a local classic system, which can spawn the sender from the outside, with the serializers of application.conf, or with the messages bound to java.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        String bindings = serializer.equals("java")
+                ? "akka.actor.allow-java-serialization = on\n" +
+                  "akka.actor.warn-about-java-serializer-usage = off\n" +
+                  "akka.actor.serialization-bindings {\n" +
+                  "  \"nl.saxion.concurrency.messages.RentARoomMessage\" = java\n" +
+                  "  \"nl.saxion.concurrency.messages.HotelEvent\" = java\n" +
+                  "}\n"
+                : "";
+        system = ActorSystem.create("SerializationBenchmark",
+                ConfigFactory.parseString("akka.actor.provider = local\nakka.loglevel = warning\n" + bindings)
+                        .withFallback(ConfigFactory.load()));
+        serialization = SerializationExtension.get(system);
+        ActorRef<RentARoomMessage> sender = Adapter.spawn(system, Behaviors.empty(), "sender");
+
+        LocalDate date = LocalDate.of(2022, 1, 1);
+        ArrayList<Reservation> reservations = new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 1, date),
+                new Reservation("c1", 2, date, date.plusDays(3)),
+                new Reservation("c2", 1, date.plusDays(7))));
+        messages = Arrays.asList(
+                new RentARoomMessage.RequestReservations(sender, reservations),
+                new RentARoomMessage.Booked("h1", new ArrayList<>(Arrays.asList(new Reservation(
+                        "3e7f1b2a-5c6d-4e8f-9a0b-1c2d3e4f5a6b", "c1", 1, date, date.plusDays(1), 1640995200000L))),
+                        new ArrayList<>(Collections.singletonList(null))),
+                new RentARoomMessage.SendHotelSummary(new HotelSummary("h1", 100, 12, date, 3, 88)),
+                new HotelEvent.ReservationAdded(new Reservation(
+                        "3e7f1b2a-5c6d-4e8f-9a0b-1c2d3e4f5a6b", "c1", 2, date, date.plusDays(3), 1640995200000L)));
+
+        serializers = new Serializer[messages.size()];
+        manifests = new String[messages.size()];
+        serialized = new byte[messages.size()][];
+        for (int i = 0; i < messages.size(); i++) {
+            Object message = messages.get(i);
+            serializers[i] = serialization.findSerializerFor(message);
+            manifests[i] = Serializers.manifestFor(serializers[i], message);
+            serialized[i] = serializers[i].toBinary(message);
+            System.out.printf("%n%s %s: %d bytes", serializer, message.getClass().getSimpleName(), serialized[i].length);
+        }
+        System.out.println();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+    }
+
+
+    @Benchmark
+    public void serialize(Blackhole blackhole) {
+        for (int i = 0; i < serializers.length; i++) {
+            blackhole.consume(serializers[i].toBinary(messages.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void deserialize(Blackhole blackhole) {
+        for (int i = 0; i < serializers.length; i++) {
+            blackhole.consume(serialization.deserialize(serialized[i], serializers[i].identifier(), manifests[i]).get());
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import nl.saxion.concurrency.persistence.WriteAheadLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures durable writes of a reservation-sized record by 8 threads, like 8 hotels persisting at once.
+ * Compares an fsync per commit with group commit, where the commits during an fsync share the next one.
+ * Run with: mvn -Pbenchmarks compile exec:exec -Dbenchmark=WriteAheadLogBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(8)
+@Fork(1)
+public class WriteAheadLogBenchmark {
+
+    @Param({"false", "true"})
+    public boolean groupCommit;
+
+    private WriteAheadLog log;
+    private final byte[] record = new byte[300];
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path dir = Files.createTempDirectory("wal-benchmark");
+        log = new WriteAheadLog(dir, 64 * 1024 * 1024, groupCommit);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        log.close();
+    }
+
+
+    /**
+     * Appends one record and waits until it's on disk.
+     */
+    @Benchmark
+    public void appendAndCommit() {
+        log.append(record);
+        log.commit().join();
+    }
+
+}
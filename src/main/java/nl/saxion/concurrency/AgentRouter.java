@@ -0,0 +1,121 @@
+package nl.saxion.concurrency;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.japi.function.Function;
+import akka.routing.ConsistentHash;
+import nl.saxion.concurrency.actors.AgentActor;
+import nl.saxion.concurrency.actors.RentARoomActor;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Sends the requests of a client straight to the AgentActors, instead of through the RentARoomActor.
+ * The AgentActor is picked on the thread of the caller, with the same routing keys and hash ring as the router
+ * of the RentARoomActor, so requests don't queue in the mailbox of one actor before they reach the agents.
+ * Can be used by multiple threads.
+ * <p>
+ * Admin commands like AddAgent still go to the RentARoomActor, the guardian of the system.
+ * @see RentARoomActor#getRoutingKey(RentARoomMessage)
+ */
+public class AgentRouter {
+
+    /**
+     * The AgentActors in the cluster and their hash ring, replaced as a whole when the receptionist lists them.
+     */
+    private static class Agents {
+        final ConsistentHash<String> ring;
+        /**
+         * The AgentActors by their place on the ring <Full path, AgentActor>.
+         */
+        final HashMap<String, ActorRef<RentARoomMessage>> byPath;
+
+        Agents(ConsistentHash<String> ring, HashMap<String, ActorRef<RentARoomMessage>> byPath) {
+            this.ring = ring;
+            this.byPath = byPath;
+        }
+    }
+
+    private final ActorSystem<RentARoomMessage> system;
+    private final int virtualNodes;
+    /**
+     * Null until the receptionist listed an AgentActor. Until then requests go through the RentARoomActor.
+     */
+    private volatile Agents agents;
+
+
+    /**
+     * Starts following the AgentActors in the receptionist.
+     */
+    public AgentRouter(ActorSystem<RentARoomMessage> system) {
+        this.system = system;
+        this.virtualNodes = system.settings().config().getInt("rent-a-room.agent.virtual-nodes");
+
+        system.systemActorOf(Behaviors.<Receptionist.Listing>setup(context -> {
+            context.getSystem().receptionist().tell(
+                    Receptionist.subscribe(AgentActor.AGENT_ACTOR_SERVICE_KEY, context.getSelf()));
+            return Behaviors.receiveMessage(listing -> {
+                update(listing.getServiceInstances(AgentActor.AGENT_ACTOR_SERVICE_KEY));
+                return Behaviors.same();
+            });
+        }), "AgentRouter-" + UUID.randomUUID(), Props.empty());
+    }
+
+
+    /**
+     * Sends the message to the AgentActor of its routing key.
+     */
+    public void tell(RentARoomMessage message) {
+        getAgent(message).tell(message);
+    }
+
+    /**
+     * Asks the AgentActor of the routing key of the message.
+     * @param message Makes the message with the given sender. Called twice, the routing key doesn't depend on the sender.
+     */
+    public CompletionStage<RentARoomMessage> ask(Function<ActorRef<RentARoomMessage>, RentARoomMessage> message,
+                                                 Duration timeout) {
+        ActorRef<RentARoomMessage> agent;
+        try {
+            agent = getAgent(message.apply(system.ignoreRef()));
+        } catch (Exception ex) {
+            throw new IllegalArgumentException(ex);
+        }
+        return AskPattern.ask(agent, message, timeout, system.scheduler());
+    }
+
+
+    private ActorRef<RentARoomMessage> getAgent(RentARoomMessage message) {
+        Agents current = agents;
+        if (current == null) {
+            return system;
+        }
+        return current.byPath.get(current.ring.nodeFor(RentARoomActor.getRoutingKey(message)));
+    }
+
+    /**
+     * Builds a new ring, the threads that are routing keep using the one they have.
+     */
+    private void update(Set<ActorRef<RentARoomMessage>> instances) {
+        if (instances.isEmpty()) {
+            agents = null;
+            return;
+        }
+        HashMap<String, ActorRef<RentARoomMessage>> byPath = new HashMap<>();
+        for (ActorRef<RentARoomMessage> agent : instances) {
+            // With the address, so the ring is the same on every node.
+            byPath.put(agent.path().toStringWithAddress(system.address()), agent);
+        }
+        agents = new Agents(ConsistentHash.create(byPath.keySet(), virtualNodes), byPath);
+    }
+
+}
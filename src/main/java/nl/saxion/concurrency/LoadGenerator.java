@@ -0,0 +1,318 @@
+package nl.saxion.concurrency;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.japi.function.Function;
+import com.typesafe.config.Config;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a mix of requests to the system at a fixed rate, and reports the latency and throughput per request type.
+ * <p>
+ * The load is open-loop: every request has a planned send time, and its latency is measured from that time.
+ * A slow response doesn't delay the next requests, and if the generator itself falls behind,
+ * the time a request waited to be sent counts as latency. So a stall shows up in the latencies of all
+ * requests it delayed, instead of only in the one request that was waiting during it.
+ * <p>
+ * Configured by rent-a-room.load in application.conf. Start with: mvn exec:java -Dexec.args="2551 load"
+ */
+public class LoadGenerator {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    /**
+     * Reservations are spread over this many days from today.
+     */
+    private static final int DAYS = 365;
+    /**
+     * Stays and searches are between 1 and this many nights.
+     */
+    private static final int MAX_NIGHTS = 14;
+
+    private enum RequestType {
+        ADD_HOTEL("add-hotel"),
+        REQUEST_RESERVATIONS("request-reservations"),
+        CONFIRM_RESERVATION("confirm-reservation"),
+        CANCEL_RESERVATION("cancel-reservation"),
+        LIST_AVAILABLE_ROOMS("list-available-rooms");
+
+        final String configName;
+
+        RequestType(String configName) {
+            this.configName = configName;
+        }
+    }
+
+    /**
+     * The requests go straight to the agents, so the load isn't limited by the mailbox of the RentARoomActor.
+     */
+    private final AgentRouter agents;
+    private final int hotelCount;
+    private final int roomsPerHotel;
+    private final int rate;
+    private final Duration duration;
+    private final Path reportDir;
+    /**
+     * The share of every request type, as cumulative weights for picking one.
+     */
+    private final EnumMap<RequestType, Integer> cumulativeWeights = new EnumMap<>(RequestType.class);
+    private final int totalWeight;
+
+    /**
+     * Latency in microseconds, from the planned send time to the response.
+     * A request that failed or timed out counts with the time until it failed, so timeouts aren't left out.
+     */
+    private final EnumMap<RequestType, Histogram> latencies = new EnumMap<>(RequestType.class);
+    /**
+     * Requests that didn't get a response within TIMEOUT, or failed.
+     */
+    private final EnumMap<RequestType, AtomicLong> errors = new EnumMap<>(RequestType.class);
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final CopyOnWriteArrayList<String> hotelNames = new CopyOnWriteArrayList<>();
+    /**
+     * Ids of reservations that can still be confirmed or cancelled.
+     */
+    private final ConcurrentLinkedQueue<String> reservationIds = new ConcurrentLinkedQueue<>();
+
+
+    /**
+     * @param config The rent-a-room.load part of the configuration.
+     * @throws IllegalArgumentException If the configuration can't make a load, like when there are no hotels.
+     */
+    public LoadGenerator(ActorSystem<RentARoomMessage> system, Config config) {
+        hotelCount = config.getInt("hotels");
+        roomsPerHotel = config.getInt("rooms-per-hotel");
+        rate = config.getInt("rate");
+        duration = config.getDuration("duration");
+        reportDir = Paths.get(config.getString("report-dir"));
+        // Reservations are requested in one of the hotels, and the interval between requests is in whole nanoseconds.
+        if (hotelCount <= 0 || roomsPerHotel <= 0) {
+            throw new IllegalArgumentException("The load needs at least 1 hotel with at least 1 room.");
+        }
+        if (rate <= 0 || rate > TimeUnit.SECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("The rate has to be between 1 and 1000000000 requests per second.");
+        }
+        if (duration.getSeconds() <= 0) {
+            throw new IllegalArgumentException("The duration has to be at least 1 second.");
+        }
+
+        int weight = 0;
+        for (RequestType type : RequestType.values()) {
+            int typeWeight = config.getInt("mix." + type.configName);
+            if (typeWeight < 0) {
+                throw new IllegalArgumentException("The share of " + type.configName + " can't be negative.");
+            }
+            weight += typeWeight;
+            cumulativeWeights.put(type, weight);
+            latencies.put(type, new ConcurrentHistogram(3));
+            errors.put(type, new AtomicLong());
+        }
+        if (weight == 0) {
+            throw new IllegalArgumentException("The mix needs at least 1 request type with a share.");
+        }
+        totalWeight = weight;
+        agents = new AgentRouter(system);
+    }
+
+
+    /**
+     * Adds the hotels, sends the load and prints the report.
+     */
+    public void run() {
+        System.out.println("Adding " + hotelCount + " hotels.");
+        for (int i = 0; i < hotelCount; i++) {
+            String name = "load-h" + i;
+            // The first asks time out while the cluster is starting.
+            while (true) {
+                try {
+                    ask(sender -> new RentARoomMessage.AddHotel(sender, name, roomsPerHotel)).toCompletableFuture().join();
+                    break;
+                } catch (CompletionException ex) {
+                    System.out.println("The system isn't ready yet, trying again.");
+                }
+            }
+            hotelNames.add(name);
+        }
+
+        System.out.printf("Sending %d requests per second for %d seconds.%n", rate, duration.getSeconds());
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long requestCount = duration.getSeconds() * rate;
+        long start = System.nanoTime();
+        for (long i = 0; i < requestCount; i++) {
+            long plannedTime = start + i * interval;
+            // parkNanos can return early, so park until the planned time has passed.
+            for (long wait = plannedTime - System.nanoTime(); wait > 0; wait = plannedTime - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            send(pickRequestType(), plannedTime);
+        }
+        long sendTime = System.nanoTime() - start;
+
+        // Waits for the last responses. Every request times out after TIMEOUT.
+        long deadline = System.nanoTime() + TIMEOUT.toNanos() * 2;
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        report(sendTime);
+    }
+
+
+    private RequestType pickRequestType() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (RequestType type : RequestType.values()) {
+            if (pick < cumulativeWeights.get(type)) {
+                return type;
+            }
+        }
+        throw new IllegalStateException("The weights of the request types don't add up.");
+    }
+
+    /**
+     * Sends a request of the given type without waiting for its response.
+     * Confirming and cancelling need a reservation, without one a reservation is requested instead.
+     */
+    private void send(RequestType type, long plannedTime) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompletionStage<RentARoomMessage> stage;
+        switch (type) {
+            case ADD_HOTEL:
+                String name = "load-h" + random.nextLong(Long.MAX_VALUE);
+                stage = ask(sender -> new RentARoomMessage.AddHotel(sender, name, roomsPerHotel))
+                        .thenApply(response -> {
+                            hotelNames.add(name);
+                            return response;
+                        });
+                break;
+            case CONFIRM_RESERVATION:
+                String confirmId = reservationIds.poll();
+                if (confirmId == null) {
+                    send(RequestType.REQUEST_RESERVATIONS, plannedTime);
+                    return;
+                }
+                stage = ask(sender -> new RentARoomMessage.ConfirmReservation(sender, confirmId))
+                        .thenApply(response -> {
+                            // Can still be cancelled.
+                            reservationIds.offer(confirmId);
+                            return response;
+                        });
+                break;
+            case CANCEL_RESERVATION:
+                String cancelId = reservationIds.poll();
+                if (cancelId == null) {
+                    send(RequestType.REQUEST_RESERVATIONS, plannedTime);
+                    return;
+                }
+                stage = ask(sender -> new RentARoomMessage.CancelReservation(sender, cancelId));
+                break;
+            case LIST_AVAILABLE_ROOMS:
+                LocalDate date = LocalDate.now().plusDays(random.nextInt(DAYS));
+                int nights = 1 + random.nextInt(MAX_NIGHTS);
+                stage = ask(sender -> new RentARoomMessage.ListAvailableRooms(sender, 1, date, nights));
+                break;
+            default:
+                HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+                LocalDate checkIn = LocalDate.now().plusDays(random.nextInt(DAYS));
+                reservations.put(hotelNames.get(random.nextInt(hotelNames.size())), new ArrayList<>(Arrays.asList(
+                        new Reservation("c" + random.nextInt(1000), 1, checkIn, checkIn.plusDays(1 + random.nextInt(MAX_NIGHTS))))));
+                stage = ask(sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations))
+                        .thenApply(response -> {
+                            addReservationIds(response);
+                            return response;
+                        });
+                break;
+        }
+
+        inFlight.incrementAndGet();
+        stage.whenComplete((response, ex) -> {
+            if (ex != null) {
+                errors.get(type).incrementAndGet();
+            }
+            latencies.get(type).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - plannedTime));
+            inFlight.decrementAndGet();
+        });
+    }
+
+    /**
+     * Keeps the ids of the made reservations in a response to RequestReservationsMultiHotels.
+     */
+    private void addReservationIds(RentARoomMessage response) {
+        if (!(response instanceof RentARoomMessage.BookingResult)) {
+            return;
+        }
+        for (RentARoomMessage.Booked booked : ((RentARoomMessage.BookingResult) response).hotels) {
+            for (int i = 0; i < booked.reservations.size(); i++) {
+                if (booked.rejections.get(i) == null) {
+                    reservationIds.offer(booked.reservations.get(i).id);
+                }
+            }
+        }
+    }
+
+    private CompletionStage<RentARoomMessage> ask(Function<ActorRef<RentARoomMessage>, RentARoomMessage> message) {
+        return agents.ask(message, TIMEOUT);
+    }
+
+    /**
+     * Prints the throughput and latency percentiles per request type,
+     * and writes the full histogram of every type to reportDir, in milliseconds.
+     * The count and the latencies include the errors.
+     * @param sendTime The time in nanoseconds it took to send all requests.
+     */
+    private void report(long sendTime) {
+        double seconds = sendTime / 1e9;
+        System.out.printf("%n%-22s %8s %8s %10s %9s %9s %9s %9s %9s%n",
+                "Request", "Count", "Errors", "Per sec", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "Max ms");
+
+        try {
+            Files.createDirectories(reportDir);
+        } catch (Exception ex) {
+            System.err.println("Can't create " + reportDir + ": " + ex.getMessage());
+        }
+        for (RequestType type : RequestType.values()) {
+            Histogram histogram = latencies.get(type);
+            System.out.printf("%-22s %8d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    type.configName,
+                    histogram.getTotalCount(),
+                    errors.get(type).get(),
+                    histogram.getTotalCount() / seconds,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0);
+
+            try (PrintStream out = new PrintStream(reportDir.resolve(type.configName + ".hgrm").toFile())) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            } catch (FileNotFoundException ex) {
+                System.err.println("Can't write the histogram of " + type.configName + ": " + ex.getMessage());
+            }
+        }
+        System.out.println("\nThe histograms are written to " + reportDir.toAbsolutePath() + ".");
+    }
+
+}
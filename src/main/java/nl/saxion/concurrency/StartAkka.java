@@ -1,33 +1,90 @@
 package nl.saxion.concurrency;
 
+import akka.actor.Address;
+import akka.NotUsed;
+import akka.actor.ActorRef;
 import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Adapter;
 import akka.actor.typed.javadsl.AskPattern;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import akka.japi.Pair;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 import nl.saxion.concurrency.actors.RentARoomActor;
+import nl.saxion.concurrency.domain.HotelSummary;
+import nl.saxion.concurrency.domain.Rejection;
 import nl.saxion.concurrency.domain.Reservation;
 import nl.saxion.concurrency.messages.RentARoomMessage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
 import java.util.Scanner;
 import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 
 public class StartAkka {
 
+    /**
+     * The port of the node that hosts the journal.
+     */
+    private static final int FIRST_PORT = 2551;
+    /**
+     * Amount of streamed answers that can wait to be printed. A stream gets at most one answer per hotel.
+     */
+    private static final int STREAM_BUFFER_SIZE = 10_000;
+    /**
+     * How long a search waits for the hotels, slow hotels are left out of the answer.
+     */
+    private static final Duration SEARCH_BUDGET = Duration.ofSeconds(1);
+
     private ActorSystem<RentARoomMessage> system;
+    /**
+     * Sends the requests of the user straight to the agents. Only AddAgent goes to the system.
+     */
+    private AgentRouter agents;
 
 
+    /**
+     * @param args Optional. The port of this node, 2551 by default.
+     *             And "headless" to run a node without the command loop, that only hosts hotels and agents.
+     *             Or "load" to send the load of the LoadGenerator instead of running the command loop.
+     */
     public static void main(String[] args) {
-        new StartAkka().run();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : FIRST_PORT;
+        String mode = args.length > 1 ? args[1] : "";
+        new StartAkka().run(port, mode);
     }
 
-    private void run() {
-        system = ActorSystem.create(RentARoomActor.create(), "RentARoomSystem");
-        System.out.println("System has been started.\n");
+    private void run(int port, String mode) {
+        Config config = ConfigFactory.parseString("akka.remote.artery.canonical.port = " + port)
+                .withFallback(getJournalConfig(port == FIRST_PORT ? null : "akka://RentARoomSystem@127.0.0.1:" + FIRST_PORT))
+                .withFallback(ConfigFactory.load());
+        system = ActorSystem.create(RentARoomActor.create(), "RentARoomSystem", config);
+        agents = new AgentRouter(system);
+        System.out.println("System has been started on port " + port + ".\n");
+
+        if (mode.equals("headless")) {
+            system.getWhenTerminated().toCompletableFuture().join();
+            return;
+        }
 
-        commandLoop();
+        if (mode.equals("load")) {
+            new LoadGenerator(system, system.settings().config().getConfig("rent-a-room.load")).run();
+        } else {
+            commandLoop();
+        }
 
         system.terminate();
         // Tell the user when AKKA has terminated successfully
@@ -36,14 +93,64 @@ public class StartAkka {
 
     /**
      * A second way to start AKKA.
-     * For unit tests.
+     * For unit tests. Starts a cluster with only this node, that stores its hotels in a new directory.
      */
     public ActorSystem<RentARoomMessage> test() {
-        system = ActorSystem.create(RentARoomActor.create(), "RentARoomSystem");
+        try {
+            return test(Files.createTempDirectory("rent-a-room"), null);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Starts a node on a random port, so multiple nodes can run in one test.
+     * For unit tests.
+     * @param persistenceDir The directory to store the hotels in. Nodes of one cluster need to share it.
+     * @param joinAddress The address of a node in the cluster to join. Null to start a new cluster.
+     */
+    public ActorSystem<RentARoomMessage> test(Path persistenceDir, Address joinAddress) {
+        return test(persistenceDir, joinAddress, ConfigFactory.empty());
+    }
+
+    /**
+     * Like test(Path, Address), with settings that overwrite those of application.conf.
+     */
+    public ActorSystem<RentARoomMessage> test(Path persistenceDir, Address joinAddress, Config overrides) {
+        Config config = overrides.withFallback(ConfigFactory.parseString(
+                "akka.remote.artery.canonical.port = 0\n" +
+                "akka.cluster.seed-nodes = []\n" +
+                "rent-a-room.journal.dir = \"" + persistenceDir.resolve("journal").toUri().getPath() + "\"\n" +
+                "akka.persistence.snapshot-store.local.dir = \"" + persistenceDir.resolve("snapshots").toUri().getPath() + "\"\n" +
+                "rent-a-room.hotel.archive-dir = \"" + persistenceDir.resolve("archive").toUri().getPath() + "\"")
+                .withFallback(getJournalConfig(joinAddress != null ? joinAddress.toString() : null))
+                .withFallback(ConfigFactory.load()));
+        system = ActorSystem.create(RentARoomActor.create(), "RentARoomSystem", config);
+        agents = new AgentRouter(system);
+
+        Cluster cluster = Cluster.get(system);
+        cluster.manager().tell(Join.create(joinAddress != null ? joinAddress : cluster.selfMember().address()));
         return system;
     }
 
 
+    /**
+     * Only one node can write the journal files. The other nodes write to that node's journal through the proxy.
+     * The snapshot store is on the same node, so the snapshots and the events that follow them are in one place.
+     * @param journalAddress The address of the node with the journal. Null to host it on this node.
+     */
+    private static Config getJournalConfig(String journalAddress) {
+        if (journalAddress == null) {
+            return ConfigFactory.parseString(
+                    "akka.persistence.journal.proxy.start-target-journal = on\n" +
+                    "akka.persistence.snapshot-store.proxy.start-target-snapshot-store = on");
+        }
+        return ConfigFactory.parseString(
+                "akka.persistence.journal.proxy.target-journal-address = \"" + journalAddress + "\"\n" +
+                "akka.persistence.snapshot-store.proxy.target-snapshot-store-address = \"" + journalAddress + "\"");
+    }
+
+
     /**
      * The main loop of the program.
      * Lets the user choose a command.
@@ -56,10 +163,13 @@ public class StartAkka {
                 "H: Add hotel\n" +
                 "D: Delete hotel\n" +
                 "F: List available rooms\n" +
+                "S: Search the hotels with the most available rooms\n" +
                 "E: List reservations\n" +
+                "M: List my reservations in all hotels\n" +
                 "R: Request reservations\n" +
                 "C: Confirm reservation\n" +
                 "X: Cancel reservation\n" +
+                "G: Look up a reservation\n" +
                 "?: This menu\n" +
                 "Q: Quit\n";
         System.out.println(help);
@@ -83,9 +193,15 @@ public class StartAkka {
                 case "f":
                     listAvailableRooms();
                     break;
+                case "s":
+                    searchAvailableRooms();
+                    break;
                 case "e":
                     listReservations();
                     break;
+                case "m":
+                    listCustomerReservations();
+                    break;
                 case "r":
                     requestReservations();
                     break;
@@ -95,6 +211,9 @@ public class StartAkka {
                 case "x":
                     cancelReservation();
                     break;
+                case "g":
+                    getReservation();
+                    break;
                 case "?":
                     System.out.println(help);
                     break;
@@ -114,11 +233,9 @@ public class StartAkka {
     }
 
     private void listHotels() {
-        CompletionStage<RentARoomMessage> stage = AskPattern.ask(
-                system,
+        CompletionStage<RentARoomMessage> stage = agents.ask(
                 RentARoomMessage.ListHotels::new,
-                Duration.ofSeconds(10),
-                system.scheduler()
+                Duration.ofSeconds(10)
         );
         awaitAndHandleStage(stage);
     }
@@ -126,22 +243,18 @@ public class StartAkka {
     private void addHotel() {
         String name = askString("Give the name of the hotel:", 2, 100);
         int roomCount = askInt("Give the number of rooms:", 1, 10_000);
-        CompletionStage<RentARoomMessage> stage = AskPattern.ask(
-                system,
+        CompletionStage<RentARoomMessage> stage = agents.ask(
                 sender -> new RentARoomMessage.AddHotel(sender, name, roomCount),
-                Duration.ofSeconds(10),
-                system.scheduler()
+                Duration.ofSeconds(10)
         );
         awaitAndHandleStage(stage);
     }
 
     private void deleteHotel() {
         String name = askString("Give the name of the hotel:", 2, 100);
-        CompletionStage<RentARoomMessage> stage = AskPattern.ask(
-                system,
+        CompletionStage<RentARoomMessage> stage = agents.ask(
                 sender -> new RentARoomMessage.DeleteHotel(sender, name),
-                Duration.ofSeconds(10),
-                system.scheduler()
+                Duration.ofSeconds(10)
         );
         awaitAndHandleStage(stage);
     }
@@ -149,11 +262,22 @@ public class StartAkka {
     private void listAvailableRooms() {
         int minRoomCount = askInt("Give the minimal amount of rooms that need to be available:", 1, 1_000);
         LocalDate date = askDate("Give the date on which to find available rooms:");
-        CompletionStage<RentARoomMessage> stage = AskPattern.ask(
-                system,
-                sender -> new RentARoomMessage.ListAvailableRooms(sender, minRoomCount, date),
-                Duration.ofSeconds(10),
-                system.scheduler()
+        int nights = askInt("Give the number of nights:", 1, 365);
+        CompletionStage<RentARoomMessage> stage = agents.ask(
+                sender -> new RentARoomMessage.ListAvailableRooms(sender, minRoomCount, date, nights),
+                Duration.ofSeconds(10)
+        );
+        awaitAndHandleStage(stage);
+    }
+
+    private void searchAvailableRooms() {
+        int minRoomCount = askInt("Give the minimal amount of rooms that need to be available:", 1, 1_000);
+        LocalDate date = askDate("Give the date on which to find available rooms:");
+        int nights = askInt("Give the number of nights:", 1, 365);
+        int limit = askInt("Give the maximum number of hotels to show:", 1, 100);
+        CompletionStage<RentARoomMessage> stage = agents.ask(
+                sender -> new RentARoomMessage.SearchAvailableRooms(sender, minRoomCount, date, nights, limit, SEARCH_BUDGET),
+                Duration.ofSeconds(10)
         );
         awaitAndHandleStage(stage);
     }
@@ -161,15 +285,54 @@ public class StartAkka {
     private void listReservations() {
         String customer = askString("Give your name:", 2, 50);
         String hotelName = askString("Give the name of the hotel:", 2, 100);
-        CompletionStage<RentARoomMessage> stage = AskPattern.ask(
-                system,
+        CompletionStage<RentARoomMessage> stage = agents.ask(
                 sender -> new RentARoomMessage.ListReservations(sender, hotelName, customer),
-                Duration.ofSeconds(10),
-                system.scheduler()
+                Duration.ofSeconds(10)
         );
         awaitAndHandleStage(stage);
     }
 
+    /**
+     * Prints the reservations of every hotel as soon as that hotel answers.
+     */
+    private void listCustomerReservations() {
+        String customer = askString("Give your name:", 2, 50);
+        streamCustomerReservations(system, agents::tell, customer)
+                .runForeach(msg -> System.out.println(render(msg)), system)
+                .toCompletableFuture().join();
+        System.out.println();
+    }
+
+    /**
+     * Sends ListCustomerReservations to the system.
+     * @return The answers: a SendCustomerReservations per hotel with reservations, in the order the hotels answer,
+     * and the SendCustomerReservationTotals as last element.
+     */
+    public static Source<RentARoomMessage, NotUsed> streamCustomerReservations(ActorSystem<RentARoomMessage> system,
+                                                                               String customer) {
+        return streamCustomerReservations(system, system::tell, customer);
+    }
+
+    /**
+     * Like streamCustomerReservations(ActorSystem, String), with the ListCustomerReservations sent by the given client.
+     */
+    public static Source<RentARoomMessage, NotUsed> streamCustomerReservations(ActorSystem<RentARoomMessage> system,
+                                                                               Consumer<RentARoomMessage> send,
+                                                                               String customer) {
+        // The source completes itself after the totals, so it doesn't need a completion message.
+        Pair<ActorRef, Source<RentARoomMessage, NotUsed>> refAndSource = Source.<RentARoomMessage>actorRef(
+                        msg -> Optional.empty(),
+                        msg -> Optional.empty(),
+                        STREAM_BUFFER_SIZE,
+                        OverflowStrategy.fail())
+                .preMaterialize(system);
+
+        send.accept(new RentARoomMessage.ListCustomerReservations(Adapter.toTyped(refAndSource.first()), customer));
+        return refAndSource.second()
+                .takeWhile(msg -> !(msg instanceof RentARoomMessage.SendCustomerReservationTotals), true)
+                .idleTimeout(Duration.ofSeconds(10));
+    }
+
     private void requestReservations() {
         String customer = askString("Give your name:", 2, 50);
 
@@ -183,22 +346,23 @@ public class StartAkka {
             if (!reservations.containsKey(hotelName))
                 reservations.put(hotelName, new ArrayList<>());
 
+            int roomCount = askInt("Give the number of rooms you want to reserve:", 1, 1_000);
+            LocalDate checkIn = askDate("Give the date you want to check in:");
+            int nights = askInt("Give the number of nights you want to stay:", 1, 365);
             reservations.get(hotelName).add(
-                    new Reservation(
-                            customer,
-                            askInt("Give the number of rooms you want to reserve:", 1, 1_000),
-                            askDate("Give the date you want to reserve:")
-                    )
+                    new Reservation(customer, roomCount, checkIn, checkIn.plusDays(nights))
             );
 
             addReservation = askBool("Do you want to add another reservation?");
         }
 
-        CompletionStage<RentARoomMessage> stage = AskPattern.ask(
-                system,
-                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
-                Duration.ofSeconds(10),
-                system.scheduler()
+        // With a single hotel, the hotel makes all reservations or none anyway.
+        boolean allOrNothing = reservations.size() > 1 &&
+                askBool("Do you want all reservations to be made or none of them?");
+
+        CompletionStage<RentARoomMessage> stage = agents.ask(
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations, allOrNothing),
+                Duration.ofSeconds(10)
         );
 
         awaitAndHandleStage(stage);
@@ -206,22 +370,27 @@ public class StartAkka {
 
     private void confirmReservation() {
         String id = askString("Give the id of the reservation:", 36, 36);
-        CompletionStage<RentARoomMessage> stage = AskPattern.ask(
-                system,
+        CompletionStage<RentARoomMessage> stage = agents.ask(
                 sender -> new RentARoomMessage.ConfirmReservation(sender, id),
-                Duration.ofSeconds(10),
-                system.scheduler()
+                Duration.ofSeconds(10)
         );
         awaitAndHandleStage(stage);
     }
 
     private void cancelReservation() {
         String id = askString("Give the id of the reservation:", 36, 36);
-        CompletionStage<RentARoomMessage> stage = AskPattern.ask(
-                system,
+        CompletionStage<RentARoomMessage> stage = agents.ask(
                 sender -> new RentARoomMessage.CancelReservation(sender, id),
-                Duration.ofSeconds(10),
-                system.scheduler()
+                Duration.ofSeconds(10)
+        );
+        awaitAndHandleStage(stage);
+    }
+
+    private void getReservation() {
+        String id = askString("Give the id of the reservation:", 36, 36);
+        CompletionStage<RentARoomMessage> stage = agents.ask(
+                sender -> new RentARoomMessage.GetReservation(sender, id),
+                Duration.ofSeconds(10)
         );
         awaitAndHandleStage(stage);
     }
@@ -232,15 +401,146 @@ public class StartAkka {
      */
     private void awaitAndHandleStage(CompletionStage<RentARoomMessage> stage) {
         RentARoomMessage msg = stage.toCompletableFuture().join();
-        // Check if the msg is of type Response. Should always be the case.
-        if (msg instanceof RentARoomMessage.Response) {
-            System.out.println(((RentARoomMessage.Response) msg).status);
-        } else {
+        try {
+            System.out.println(render(msg));
+        } catch (IllegalArgumentException ex) {
             System.err.println("StartAkka awaitAndHandleStage() wrong message type: " + msg);
         }
         System.out.println();
     }
 
+    /**
+     * Makes the text for the user of an answer of the system.
+     * The actors answer with data, so they don't spend time on text nobody reads, like the answers to the load.
+     * @throws IllegalArgumentException If the message isn't an answer to the user.
+     */
+    public static String render(RentARoomMessage msg) {
+        if (msg instanceof RentARoomMessage.Done) {
+            RentARoomMessage.Done done = (RentARoomMessage.Done) msg;
+            switch (done.action) {
+                case AGENT_ADDED:
+                    return "A new agent has been added.";
+                case HOTEL_ADDED:
+                    return done.hotelName + " has been added.";
+                case HOTEL_DELETED:
+                    return done.hotelName + " has been deleted.";
+                case RESERVATION_CONFIRMED:
+                    return "The reservation has been confirmed.";
+                default:
+                    return "The reservation has been cancelled.";
+            }
+        } else if (msg instanceof RentARoomMessage.Rejected) {
+            return render(((RentARoomMessage.Rejected) msg).rejection);
+        } else if (msg instanceof RentARoomMessage.SendHotels) {
+            ArrayList<String> lines = new ArrayList<>();
+            for (HotelSummary summary : ((RentARoomMessage.SendHotels) msg).hotels) {
+                lines.add(summary.toString());
+            }
+            return "The following hotels are in our system:\n" + String.join("\n", lines);
+        } else if (msg instanceof RentARoomMessage.SendHotelsWithRooms) {
+            return "The following hotels have enough rooms:\n" +
+                    String.join("\n", renderAvailableRooms(((RentARoomMessage.SendHotelsWithRooms) msg).hotels));
+        } else if (msg instanceof RentARoomMessage.SendBestHotels) {
+            RentARoomMessage.SendBestHotels best = (RentARoomMessage.SendBestHotels) msg;
+            ArrayList<String> lines = renderAvailableRooms(best.hotels);
+            if (best.answered < best.hotelCount) {
+                lines.add(String.format("Only %d of %d hotels answered in time.", best.answered, best.hotelCount));
+            }
+            return "The hotels with the most available rooms:\n" + String.join("\n", lines);
+        } else if (msg instanceof RentARoomMessage.SendReservations) {
+            RentARoomMessage.SendReservations reservations = (RentARoomMessage.SendReservations) msg;
+            return "You have the following reservations in " + reservations.hotelName + ":\n" +
+                    String.join("\n", renderReservations(reservations.reservations));
+        } else if (msg instanceof RentARoomMessage.SendCustomerReservations) {
+            RentARoomMessage.SendCustomerReservations reservations = (RentARoomMessage.SendCustomerReservations) msg;
+            return "In " + reservations.hotelName + ":\n" +
+                    String.join("\n", renderReservations(reservations.reservations));
+        } else if (msg instanceof RentARoomMessage.SendCustomerReservationTotals) {
+            RentARoomMessage.SendCustomerReservationTotals totals = (RentARoomMessage.SendCustomerReservationTotals) msg;
+            return String.format("You have %d reservations in %d hotels.", totals.reservationCount, totals.hotelCount);
+        } else if (msg instanceof RentARoomMessage.SendReservation) {
+            return renderReservation(((RentARoomMessage.SendReservation) msg).reservation);
+        } else if (msg instanceof RentARoomMessage.Booked) {
+            return renderBooked((RentARoomMessage.Booked) msg);
+        } else if (msg instanceof RentARoomMessage.BookingResult) {
+            RentARoomMessage.BookingResult result = (RentARoomMessage.BookingResult) msg;
+            ArrayList<String> lines = new ArrayList<>();
+            for (Rejection rejection : result.rejections) {
+                lines.add(render(rejection));
+            }
+            if (result.aborted) {
+                return "No reservations were made, because:\n" + String.join("\n", lines);
+            }
+            for (RentARoomMessage.Booked booked : result.hotels) {
+                lines.add(renderBooked(booked));
+            }
+            return String.join("\n", lines);
+        }
+        throw new IllegalArgumentException("Can't render " + msg + ".");
+    }
+
+    private static String render(Rejection rejection) {
+        switch (rejection.reason) {
+            case HOTEL_UNKNOWN:
+                return rejection.subject + " is not in our system.";
+            case HOTEL_EXISTS:
+                return rejection.subject + " is in our system already.";
+            case HOTEL_NAME_TAKEN:
+                return rejection.subject + " can't be used as hotel name.";
+            case HOTEL_NO_ANSWER:
+                return rejection.subject + " didn't answer in time.";
+            case HOLD_GONE:
+                return rejection.subject + " doesn't hold the reservations anymore.";
+            case NOT_ENOUGH_ROOMS:
+                return rejection.subject + " doesn't have " + rejection.roomCount + " rooms available.";
+            case DATE_NOT_TAKEN:
+                return rejection.subject + " doesn't take reservations on " + rejection.date + ".";
+            case RESERVATION_UNKNOWN:
+                return "There is no reservation with Id: " + rejection.subject + " in our system.";
+            default:
+                return "The reservation with Id: " + rejection.subject + " is in the past, " +
+                        "it can't be changed anymore.";
+        }
+    }
+
+    /**
+     * A line per made reservation, or why it wasn't made.
+     */
+    private static String renderBooked(RentARoomMessage.Booked booked) {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("Reservations for " + booked.hotelName + ":");
+        for (int i = 0; i < booked.reservations.size(); i++) {
+            Rejection rejection = booked.rejections.get(i);
+            lines.add(rejection == null
+                    ? "The reservation: \"" + booked.reservations.get(i) + "\" was received."
+                    : render(rejection));
+        }
+        return String.join("\n", lines);
+    }
+
+    private static ArrayList<String> renderAvailableRooms(List<RentARoomMessage.SendAvailableRooms> hotels) {
+        ArrayList<String> lines = new ArrayList<>();
+        for (RentARoomMessage.SendAvailableRooms hotel : hotels) {
+            lines.add(hotel.hotelName + ": Available rooms: " + hotel.availableRooms);
+        }
+        return lines;
+    }
+
+    /**
+     * A line per reservation, with whether it's confirmed.
+     */
+    private static ArrayList<String> renderReservations(List<Reservation> reservations) {
+        ArrayList<String> lines = new ArrayList<>();
+        for (Reservation reservation : reservations) {
+            lines.add(renderReservation(reservation));
+        }
+        return lines;
+    }
+
+    private static String renderReservation(Reservation reservation) {
+        return reservation.toString() + ", Confirmed: " + (reservation.getConfirmed() ? "Yes" : "No");
+    }
+
 
     /**
      * Asks the given question and lets the user input a string until it's valid.
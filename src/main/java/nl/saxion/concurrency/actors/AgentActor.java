@@ -2,20 +2,36 @@ package nl.saxion.concurrency.actors;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.Signal;
 import akka.actor.typed.javadsl.*;
+import akka.actor.typed.pubsub.Topic;
 import akka.actor.typed.receptionist.Receptionist;
 import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.javadsl.EntityRef;
+import nl.saxion.concurrency.domain.AvailabilityCache;
 import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.HotelSummary;
+import nl.saxion.concurrency.domain.Rejection;
 import nl.saxion.concurrency.domain.Reservation;
-import nl.saxion.concurrency.domain.ReservationException;
 import nl.saxion.concurrency.messages.RentARoomMessage;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.time.Duration;
+import java.time.LocalDate;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.CompletionStage;
+import java.util.PriorityQueue;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 public class AgentActor extends AbstractBehavior<RentARoomMessage> {
 
@@ -26,12 +42,79 @@ public class AgentActor extends AbstractBehavior<RentARoomMessage> {
             RentARoomMessage.class,
             "AgentActorService");
 
-    private final HashMap<String, ActorRef<RentARoomMessage>> hotelManagerActors;
+    /**
+     * For the reply handlers of the aggregators, which run on the thread of the aggregator.
+     * The logger of the context may only be used by the AgentActor itself.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(AgentActor.class);
+    /**
+     * How long to wait for the replies of the HotelManagerActors before answering with the replies that did arrive.
+     * Shorter than the 10 seconds StartAkka waits, so the user always gets an answer.
+     */
+    private static final Duration HOTEL_REPLY_TIMEOUT = Duration.ofSeconds(5);
+    /**
+     * How long to wait for the hotels in each of the two phases of an all or nothing booking.
+     * Both phases together are shorter than the 10 seconds StartAkka waits.
+     */
+    private static final Duration BOOKING_PHASE_TIMEOUT = Duration.ofSeconds(3);
+    /**
+     * Orders hotels from least to most available rooms, and by name in reverse for the same amount.
+     * The head of a PriorityQueue with this order is the hotel that's dropped first from the top.
+     */
+    private static final Comparator<RentARoomMessage.SendAvailableRooms> AVAILABILITY_ORDER =
+            Comparator.<RentARoomMessage.SendAvailableRooms>comparingInt(hotel -> hotel.availableRooms)
+                    .thenComparing(hotel -> hotel.hotelName, Comparator.reverseOrder());
 
+    /**
+     * All hotels in the system <Hotel name, HotelManagerActor>.
+     * The HotelManagerActors are sharded over the cluster, these references reach them on any node.
+     */
+    private final HashMap<String, EntityRef<RentARoomMessage>> hotelManagerActors;
+    /**
+     * The same actors as hotelManagerActors with the hotel keys as key <Hotel key, HotelManagerActor>.
+     * Used to find the hotel of a reservation by its id.
+     * @see Hotel#getKey(String)
+     */
+    private final HashMap<Long, EntityRef<RentARoomMessage>> hotelManagerActorsByKey;
+    /**
+     * Hotels added by this AgentActor that the receptionist hasn't listed yet.
+     * They stay in hotelManagerActors when a listing without them arrives.
+     */
+    private final HashSet<String> unlistedHotels;
+    /**
+     * Summaries of the hotels for the recently searched stays. Null if rent-a-room.agent.cache-size is 0,
+     * then every search asks the hotels.
+     */
+    private final AvailabilityCache cache;
+    /**
+     * How long to keep handling messages after leaving the group, when stopped by a StopAgent.
+     */
+    private final Duration drainTime;
+    /**
+     * Messages handled since the last ProbeLoad, for the autoscaler of the RentARoomActor.
+     */
+    private int handled;
+    /**
+     * True after the first StopAgent, when the AgentActor isn't in the group of the routers anymore.
+     */
+    private boolean draining;
 
-    public AgentActor(ActorContext<RentARoomMessage> context) {
+
+    public AgentActor(ActorContext<RentARoomMessage> context, ActorRef<Topic.Command<RentARoomMessage>> hotelChanges) {
         super(context);
         hotelManagerActors = new HashMap<>();
+        hotelManagerActorsByKey = new HashMap<>();
+        unlistedHotels = new HashSet<>();
+        drainTime = context.getSystem().settings().config().getDuration("rent-a-room.agent.autoscaler.drain-time");
+
+        int cacheSize = context.getSystem().settings().config().getInt("rent-a-room.agent.cache-size");
+        if (cacheSize > 0) {
+            cache = new AvailabilityCache(cacheSize);
+            // The HotelManagerActors publish their changes, so the cache knows which summaries are outdated.
+            hotelChanges.tell(Topic.subscribe(context.getSelf()));
+        } else {
+            cache = null;
+        }
 
         // Make an adapter to convert messages from AGENT_ACTOR_SERVICE_KEY to UpdateHotelManagerActors messages.
         ActorRef<Receptionist.Listing> adapter = context.messageAdapter(
@@ -45,233 +128,606 @@ public class AgentActor extends AbstractBehavior<RentARoomMessage> {
         context.getSystem().receptionist().tell(Receptionist.register(AGENT_ACTOR_SERVICE_KEY, context.getSelf()));
     }
 
-    public static Behavior<RentARoomMessage> create() {
-        return Behaviors.setup(AgentActor::new);
+    /**
+     * @param hotelChanges The topic on this node the HotelManagerActors publish their changes to.
+     */
+    public static Behavior<RentARoomMessage> create(ActorRef<Topic.Command<RentARoomMessage>> hotelChanges) {
+        return Behaviors.setup(context -> new AgentActor(context, hotelChanges));
     }
 
 
     @Override
     public Receive<RentARoomMessage> createReceive() {
-        return newReceiveBuilder()
+        Receive<RentARoomMessage> receive = newReceiveBuilder()
                 .onMessage(RentARoomMessage.ListHotels.class, this::listHotels)
                 .onMessage(RentARoomMessage.AddHotel.class, this::addHotel)
                 .onMessage(RentARoomMessage.DeleteHotel.class, this::deleteHotel)
                 .onMessage(RentARoomMessage.ListAvailableRooms.class, this::listAvailableRooms)
+                .onMessage(RentARoomMessage.SearchAvailableRooms.class, this::searchAvailableRooms)
                 .onMessage(RentARoomMessage.ListReservations.class, this::listReservations)
+                .onMessage(RentARoomMessage.ListCustomerReservations.class, this::listCustomerReservations)
                 .onMessage(RentARoomMessage.RequestReservationsMultiHotels.class, this::requestReservationsMultiHotels)
                 .onMessage(RentARoomMessage.ConfirmReservation.class, this::confirmReservation)
                 .onMessage(RentARoomMessage.CancelReservation.class, this::cancelReservation)
+                .onMessage(RentARoomMessage.GetReservation.class, this::getReservation)
                 .onMessage(RentARoomMessage.UpdateHotelManagerActors.class, this::updateHotelManagerActors)
+                .onMessage(RentARoomMessage.HotelChanged.class, this::hotelChanged)
+                .onMessage(RentARoomMessage.SummariesFetched.class, this::summariesFetched)
+                .onMessage(RentARoomMessage.ProbeLoad.class, this::probeLoad)
+                .onMessage(RentARoomMessage.StopAgent.class, this::stopAgent)
                 .build();
+
+        // Counts every message but the probes, so the probes can tell how busy this AgentActor is.
+        return new Receive<RentARoomMessage>() {
+            @Override
+            public Behavior<RentARoomMessage> receiveMessage(RentARoomMessage message) throws Exception {
+                if (!(message instanceof RentARoomMessage.ProbeLoad)) {
+                    handled++;
+                }
+                return receive.receiveMessage(message);
+            }
+
+            @Override
+            public Behavior<RentARoomMessage> receiveSignal(Signal signal) throws Exception {
+                return receive.receiveSignal(signal);
+            }
+        };
+    }
+
+
+    /**
+     * Spawns an AggregatorActor that requests a summary of the hotels of all HotelManagerActors.
+     * The aggregator hands the received summaries to handleSummaries and sends the result to replyTo.
+     * Doesn't wait for the summaries, so the AgentActor can keep handling messages in the meantime.
+     * @param date The check-in date of the stay to include the availability of in the summaries.
+     * @param nights The amount of nights of the stay.
+     */
+    private void requestHotelSummaries(LocalDate date, int nights,
+                                       ActorRef<RentARoomMessage> replyTo,
+                                       Function<List<HotelSummary>, RentARoomMessage> handleSummaries) {
+        // Copy the actors because the aggregator sends the requests from its own thread.
+        ArrayList<EntityRef<RentARoomMessage>> actors = new ArrayList<>(hotelManagerActors.values());
+        String name = getContext().getSelf().path().name();
+
+        getContext().spawnAnonymous(AggregatorActor.create(
+                aggregator -> {
+                    for (EntityRef<RentARoomMessage> actor : actors) {
+                        actor.tell(new RentARoomMessage.RequestHotelSummary(aggregator, date, nights));
+                    }
+                },
+                actors.size(),
+                replyTo,
+                replies -> {
+                    // Add the summaries in the replies to a list.
+                    ArrayList<HotelSummary> summaries = new ArrayList<>();
+                    for (RentARoomMessage msg : replies) {
+                        if (msg instanceof RentARoomMessage.SendHotelSummary) {
+                            summaries.add(((RentARoomMessage.SendHotelSummary) msg).summary);
+                        } else {
+                            LOG.error("[{}] requestHotelSummaries() wrong message type: {}", name, msg);
+                        }
+                    }
+                    // Replies arrive in any order, sort them so the output is the same every time.
+                    summaries.sort(Comparator.comparing(summary -> summary.name));
+                    return handleSummaries.apply(summaries);
+                },
+                HOTEL_REPLY_TIMEOUT
+        ));
+    }
+
+
+    /**
+     * Spawns an AggregatorActor that asks all HotelManagerActors which of their hotels have at least minRoomCount
+     * available on every night of the stay. Only the hotels with enough rooms send their name back.
+     * The aggregator keeps the limit hotels with the most available rooms in a heap,
+     * and hands them to handleHotels, with the most available first, when all hotels answered or the budget is over.
+     * @param handleHotels Gets the best hotels and the amount of hotels that answered.
+     */
+    private void requestAvailableRooms(int minRoomCount, LocalDate date, int nights, int limit, Duration budget,
+                                       ActorRef<RentARoomMessage> replyTo,
+                                       BiFunction<List<RentARoomMessage.SendAvailableRooms>, Integer, RentARoomMessage> handleHotels) {
+        // Copy the actors because the aggregator sends the requests from its own thread.
+        ArrayList<EntityRef<RentARoomMessage>> actors = new ArrayList<>(hotelManagerActors.values());
+        String name = getContext().getSelf().path().name();
+
+        getContext().spawnAnonymous(Behaviors.<RentARoomMessage>setup(context -> {
+            PriorityQueue<RentARoomMessage.SendAvailableRooms> best = new PriorityQueue<>(AVAILABILITY_ORDER);
+            int[] answered = new int[1];
+            return AggregatorActor.createReducing(
+                    aggregator -> {
+                        for (EntityRef<RentARoomMessage> actor : actors) {
+                            actor.tell(new RentARoomMessage.RequestAvailableRooms(aggregator, minRoomCount, date, nights));
+                        }
+                    },
+                    actors.size(),
+                    replyTo,
+                    reply -> {
+                        if (!(reply instanceof RentARoomMessage.SendAvailableRooms)) {
+                            LOG.error("[{}] requestAvailableRooms() wrong message type: {}", name, reply);
+                            return;
+                        }
+                        answered[0]++;
+                        RentARoomMessage.SendAvailableRooms hotel = (RentARoomMessage.SendAvailableRooms) reply;
+                        if (hotel.hotelName != null) {
+                            addBest(best, hotel, limit);
+                        }
+                    },
+                    () -> handleHotels.apply(getBest(best), answered[0]),
+                    budget);
+        }));
     }
 
 
-    private ArrayList<Hotel> getHotels() {
-        // Request the hotels of all HotelManagerActors.
-        ArrayList<CompletionStage<RentARoomMessage>> stages = new ArrayList<>();
-        for (ActorRef<RentARoomMessage> actor : hotelManagerActors.values()) {
-            stages.add(AskPattern.ask(
-                    actor,
-                    RentARoomMessage.RequestHotel::new,
-                    Duration.ofSeconds(10),
-                    getContext().getSystem().scheduler()
-            ));
+    /**
+     * Answers the query with the cached summaries of the stay.
+     * Only asks the hotels that are missing in the cache, and answers when they replied.
+     * @param date The check-in date of the stay. Null for ListHotels, which doesn't show availability.
+     * @param timeout How long to wait for the missing hotels.
+     */
+    private void querySummaries(RentARoomMessage query, LocalDate date, int nights, Duration timeout) {
+        Map<String, HotelSummary> known = cache.get(date, nights);
+        ArrayList<EntityRef<RentARoomMessage>> missing = new ArrayList<>();
+        for (Map.Entry<String, EntityRef<RentARoomMessage>> entry : hotelManagerActors.entrySet()) {
+            if (!known.containsKey(entry.getKey())) {
+                missing.add(entry.getValue());
+            }
+        }
+        if (missing.isEmpty()) {
+            answerQuery(query, known);
+            return;
         }
 
-        // Wait for responses and add the hotels in the responses to a list.
-        ArrayList<Hotel> hotels = new ArrayList<>();
-        for (CompletionStage<RentARoomMessage> stage : stages) {
-            RentARoomMessage msg = stage.toCompletableFuture().join();
-            if (msg instanceof RentARoomMessage.SendHotel) {
-                hotels.add(((RentARoomMessage.SendHotel) msg).hotel);
-            } else {
-                getContext().getLog().error(
-                        "[{}] getHotels() wrong message type: {}",
-                        getContext().getSelf().path().name(),
-                        msg);
+        long requestedAt = cache.getVersion();
+        LocalDate summaryDate = date == null ? LocalDate.now() : date;
+        String name = getContext().getSelf().path().name();
+
+        getContext().spawnAnonymous(AggregatorActor.create(
+                aggregator -> {
+                    for (EntityRef<RentARoomMessage> actor : missing) {
+                        actor.tell(new RentARoomMessage.RequestHotelSummary(aggregator, summaryDate, nights));
+                    }
+                },
+                missing.size(),
+                getContext().getSelf(),
+                replies -> {
+                    ArrayList<HotelSummary> summaries = new ArrayList<>();
+                    for (RentARoomMessage msg : replies) {
+                        if (msg instanceof RentARoomMessage.SendHotelSummary) {
+                            summaries.add(((RentARoomMessage.SendHotelSummary) msg).summary);
+                        } else {
+                            LOG.error("[{}] querySummaries() wrong message type: {}", name, msg);
+                        }
+                    }
+                    return new RentARoomMessage.SummariesFetched(query, date, nights, summaries, requestedAt);
+                },
+                timeout
+        ));
+    }
+
+    /**
+     * Adds the summaries that were missing to the cache and answers the query.
+     */
+    private Behavior<RentARoomMessage> summariesFetched(RentARoomMessage.SummariesFetched message) {
+        cache.put(message.date, message.nights, message.summaries, message.requestedAt);
+
+        // The cache leaves out summaries of hotels that changed in the meantime, the query still uses them.
+        HashMap<String, HotelSummary> summaries = new HashMap<>(cache.get(message.date, message.nights));
+        for (HotelSummary summary : message.summaries) {
+            summaries.put(summary.name, summary);
+        }
+        answerQuery(message.query, summaries);
+        return Behaviors.same();
+    }
+
+    /**
+     * Answers a ListHotels, ListAvailableRooms or SearchAvailableRooms with the given summaries <Hotel name, Summary>.
+     */
+    private void answerQuery(RentARoomMessage query, Map<String, HotelSummary> summaries) {
+        // Leave out hotels that were deleted after their summary was cached.
+        ArrayList<HotelSummary> current = new ArrayList<>();
+        for (HotelSummary summary : summaries.values()) {
+            if (hotelManagerActors.containsKey(summary.name)) {
+                current.add(summary);
             }
         }
 
-        return hotels;
+        if (query instanceof RentARoomMessage.ListHotels) {
+            current.sort(Comparator.comparing(summary -> summary.name));
+            ((RentARoomMessage.ListHotels) query).sender.tell(getHotelsResponse(current));
+        } else if (query instanceof RentARoomMessage.ListAvailableRooms) {
+            RentARoomMessage.ListAvailableRooms list = (RentARoomMessage.ListAvailableRooms) query;
+            ArrayList<RentARoomMessage.SendAvailableRooms> hotels = new ArrayList<>();
+            for (HotelSummary summary : current) {
+                if (summary.availableRooms >= list.minRoomCount) {
+                    hotels.add(new RentARoomMessage.SendAvailableRooms(summary.name, summary.availableRooms));
+                }
+            }
+            list.sender.tell(getAvailableRoomsResponse(hotels));
+        } else if (query instanceof RentARoomMessage.SearchAvailableRooms) {
+            RentARoomMessage.SearchAvailableRooms search = (RentARoomMessage.SearchAvailableRooms) query;
+            PriorityQueue<RentARoomMessage.SendAvailableRooms> best = new PriorityQueue<>(AVAILABILITY_ORDER);
+            for (HotelSummary summary : current) {
+                if (summary.availableRooms >= search.minRoomCount) {
+                    addBest(best, new RentARoomMessage.SendAvailableRooms(summary.name, summary.availableRooms), search.limit);
+                }
+            }
+            search.sender.tell(getSearchResponse(getBest(best), current.size(), hotelManagerActors.size()));
+        } else {
+            getContext().getLog().error("[{}] answerQuery() wrong message type: {}",
+                    getContext().getSelf().path().name(), query);
+        }
     }
 
+    /**
+     * Answers with the messages handled since the previous probe.
+     * The probe waited behind the messages in the mailbox, so the sender knows how long requests wait.
+     */
+    private Behavior<RentARoomMessage> probeLoad(RentARoomMessage.ProbeLoad message) {
+        message.sender.tell(new RentARoomMessage.SendLoad(getContext().getSelf(), message.sentAt, handled));
+        handled = 0;
+        return Behaviors.same();
+    }
 
-    private Behavior<RentARoomMessage> listHotels(RentARoomMessage.ListHotels message) {
-        ArrayList<String> responses = new ArrayList<>();
-        for (Hotel hotel : getHotels()) {
-            responses.add(hotel.toString());
+    /**
+     * Leaves the group, so the routers stop sending messages to this AgentActor.
+     * Routers on other nodes hear of it later, so it keeps handling messages for the drain time,
+     * and until its aggregators and bookings are done, before it stops.
+     */
+    private Behavior<RentARoomMessage> stopAgent(RentARoomMessage.StopAgent message) {
+        if (!draining) {
+            draining = true;
+            getContext().getSystem().receptionist().tell(
+                    Receptionist.deregister(AGENT_ACTOR_SERVICE_KEY, getContext().getSelf()));
+            getContext().scheduleOnce(drainTime, getContext().getSelf(), message);
+            return Behaviors.same();
+        }
+        if (!getContext().getChildren().isEmpty()) {
+            getContext().scheduleOnce(HOTEL_REPLY_TIMEOUT, getContext().getSelf(), message);
+            return Behaviors.same();
         }
+        getContext().getLog().info("[{}] Stopped", getContext().getSelf().path().name());
+        return Behaviors.stopped();
+    }
+
+    private Behavior<RentARoomMessage> hotelChanged(RentARoomMessage.HotelChanged message) {
+        cache.invalidate(message.hotelName, message.from, message.to);
+        return Behaviors.same();
+    }
 
-        message.sender.tell(new RentARoomMessage.Response(
-                        "The following hotels are in our system:\n" +
-                        String.join("\n", responses)));
 
+    private Behavior<RentARoomMessage> listHotels(RentARoomMessage.ListHotels message) {
+        if (cache != null) {
+            querySummaries(message, null, 1, HOTEL_REPLY_TIMEOUT);
+        } else {
+            requestHotelSummaries(LocalDate.now(), 1, message.sender, AgentActor::getHotelsResponse);
+        }
         return Behaviors.same();
     }
 
     private Behavior<RentARoomMessage> addHotel(RentARoomMessage.AddHotel message) {
-        if (hotelManagerActors.containsKey(message.name)) {
-            message.sender.tell(new RentARoomMessage.Response(message.name + " is in our system already."));
+        // Two hotels with the same key would make their reservation ids ambiguous.
+        if (!hotelManagerActors.containsKey(message.name) && hotelManagerActorsByKey.containsKey(Hotel.getKey(message.name))) {
+            message.sender.tell(new RentARoomMessage.Rejected(
+                    new Rejection(Rejection.Reason.HOTEL_NAME_TAKEN, message.name)));
             return Behaviors.same();
         }
 
-        Hotel hotel = new Hotel(message.name, message.roomCount);
-        // Spawn a HotelManagerActor to manage the hotel.
-        getContext().spawn(HotelManagerActor.create(hotel), message.name);
-        message.sender.tell(new RentARoomMessage.Response(message.name + " has been added."));
+        // Sharding starts the HotelManagerActor on the node that owns the hotel.
+        // It answers the sender, also when the hotel is in our system already.
+        EntityRef<RentARoomMessage> actor = HotelManagerActor.getEntityRef(getContext().getSystem(), message.name);
+        actor.tell(message);
+
+        // Use the hotel right away instead of waiting for the receptionist.
+        hotelManagerActors.put(message.name, actor);
+        hotelManagerActorsByKey.put(Hotel.getKey(message.name), actor);
+        unlistedHotels.add(message.name);
         return Behaviors.same();
     }
 
     private Behavior<RentARoomMessage> deleteHotel(RentARoomMessage.DeleteHotel message) {
-        ActorRef<RentARoomMessage> actor = hotelManagerActors.remove(message.name);
+        EntityRef<RentARoomMessage> actor = hotelManagerActors.remove(message.name);
         // HashMap.remove returns the removed object if successful.
         if (actor == null) {
-            message.sender.tell(new RentARoomMessage.Response(message.name + " is not in our system."));
+            message.sender.tell(new RentARoomMessage.Rejected(new Rejection(Rejection.Reason.HOTEL_UNKNOWN, message.name)));
         } else {
-            message.sender.tell(new RentARoomMessage.Response(message.name + " has been deleted."));
+            hotelManagerActorsByKey.remove(Hotel.getKey(message.name));
+            unlistedHotels.remove(message.name);
+            // The HotelManagerActor stops itself and answers the sender.
+            actor.tell(message);
         }
         return Behaviors.same();
     }
 
     private Behavior<RentARoomMessage> listAvailableRooms(RentARoomMessage.ListAvailableRooms message) {
-        ArrayList<String> responses = new ArrayList<>();
-        for (Hotel hotel : getHotels()) {
-            int availableRooms = hotel.getAvailableRooms(message.date);
-            if (availableRooms >= message.minRoomCount) {
-                responses.add(hotel.name + ": Available rooms: " + availableRooms);
-            }
+        if (cache != null) {
+            querySummaries(message, message.date, message.nights, HOTEL_REPLY_TIMEOUT);
+        } else {
+            requestAvailableRooms(message.minRoomCount, message.date, message.nights, Integer.MAX_VALUE,
+                    HOTEL_REPLY_TIMEOUT, message.sender, (hotels, answered) -> getAvailableRoomsResponse(hotels));
         }
+        return Behaviors.same();
+    }
 
-        message.sender.tell(new RentARoomMessage.Response(
-                        "The following hotels have enough rooms:\n" +
-                        String.join("\n", responses)));
+    /**
+     * Like listAvailableRooms, but only answers with the hotels with the most available rooms,
+     * and doesn't wait longer than the budget for slow hotels.
+     */
+    private Behavior<RentARoomMessage> searchAvailableRooms(RentARoomMessage.SearchAvailableRooms message) {
+        int hotelCount = hotelManagerActors.size();
+        Duration budget = message.budget.compareTo(HOTEL_REPLY_TIMEOUT) < 0 ? message.budget : HOTEL_REPLY_TIMEOUT;
+        if (cache != null) {
+            querySummaries(message, message.date, message.nights, budget);
+        } else {
+            requestAvailableRooms(message.minRoomCount, message.date, message.nights, message.limit, budget,
+                    message.sender, (hotels, answered) -> getSearchResponse(hotels, answered, hotelCount));
+        }
         return Behaviors.same();
     }
 
     private Behavior<RentARoomMessage> listReservations(RentARoomMessage.ListReservations message) {
-        ActorRef<RentARoomMessage> actor = hotelManagerActors.get(message.hotelName);
+        EntityRef<RentARoomMessage> actor = hotelManagerActors.get(message.hotelName);
         if (actor == null) {
-            message.sender.tell(new RentARoomMessage.Response(message.hotelName + " is not in our system."));
+            message.sender.tell(new RentARoomMessage.Rejected(
+                    new Rejection(Rejection.Reason.HOTEL_UNKNOWN, message.hotelName)));
         } else {
             actor.tell(message);
         }
         return Behaviors.same();
     }
 
+    /**
+     * Asks all hotels for the reservations of the customer.
+     * Every hotel with reservations is passed on to the sender as soon as it answers,
+     * so the sender doesn't have to wait for the slowest hotel to see the first ones.
+     */
+    private Behavior<RentARoomMessage> listCustomerReservations(RentARoomMessage.ListCustomerReservations message) {
+        // Copy the actors because the aggregator sends the requests from its own thread.
+        ArrayList<EntityRef<RentARoomMessage>> actors = new ArrayList<>(hotelManagerActors.values());
+
+        getContext().spawnAnonymous(AggregatorActor.create(
+                aggregator -> {
+                    for (EntityRef<RentARoomMessage> actor : actors) {
+                        actor.tell(new RentARoomMessage.RequestCustomerReservations(aggregator, message.customer));
+                    }
+                },
+                actors.size(),
+                message.sender,
+                reply -> reply instanceof RentARoomMessage.SendCustomerReservations &&
+                        !((RentARoomMessage.SendCustomerReservations) reply).reservations.isEmpty() ? reply : null,
+                replies -> {
+                    int reservationCount = 0;
+                    int hotelCount = 0;
+                    for (RentARoomMessage msg : replies) {
+                        if (msg instanceof RentARoomMessage.SendCustomerReservations) {
+                            int count = ((RentARoomMessage.SendCustomerReservations) msg).reservations.size();
+                            reservationCount += count;
+                            hotelCount += count > 0 ? 1 : 0;
+                        }
+                    }
+                    return new RentARoomMessage.SendCustomerReservationTotals(reservationCount, hotelCount);
+                },
+                HOTEL_REPLY_TIMEOUT
+        ));
+
+        return Behaviors.same();
+    }
+
     private Behavior<RentARoomMessage> requestReservationsMultiHotels(RentARoomMessage.RequestReservationsMultiHotels message) {
-        ArrayList<String> responses = new ArrayList<>();
+        if (message.allOrNothing) {
+            return bookAllOrNothing(message);
+        }
+        ArrayList<Rejection> unknown = new ArrayList<>();
 
-        ArrayList<CompletionStage<RentARoomMessage>> stages = new ArrayList<>();
+        // <HotelManagerActor, Reservations for its hotel>
+        ArrayList<Map.Entry<EntityRef<RentARoomMessage>, ArrayList<Reservation>>> requests = new ArrayList<>();
         // message.reservations is filtered by hotel. Loop over all reservations (value) per hotel (key).
         for (Map.Entry<String, ArrayList<Reservation>> entry : message.reservations.entrySet()) {
-            ActorRef<RentARoomMessage> actor = hotelManagerActors.get(entry.getKey());
+            EntityRef<RentARoomMessage> actor = hotelManagerActors.get(entry.getKey());
             if (actor == null) {
-                responses.add(entry.getKey() + " is not in our system.");
+                unknown.add(new Rejection(Rejection.Reason.HOTEL_UNKNOWN, entry.getKey()));
             } else {
-                // Request the reservations at the hotel
-                stages.add(AskPattern.ask(
-                        actor,
-                        sender -> new RentARoomMessage.RequestReservations(sender, entry.getValue()),
-                        Duration.ofSeconds(10),
-                        getContext().getSystem().scheduler()
-                ));
+                requests.add(new AbstractMap.SimpleEntry<>(actor, entry.getValue()));
             }
         }
 
-        // Wait for all responses and save them in a list as info for the user.
-        for (CompletionStage<RentARoomMessage> stage : stages) {
-            RentARoomMessage msg = stage.toCompletableFuture().join();
-            if (msg instanceof RentARoomMessage.Response) {
-                responses.add(((RentARoomMessage.Response) msg).status);
+        String name = getContext().getSelf().path().name();
+
+        getContext().spawnAnonymous(AggregatorActor.create(
+                aggregator -> {
+                    // Request the reservations at the hotels
+                    for (Map.Entry<EntityRef<RentARoomMessage>, ArrayList<Reservation>> entry : requests) {
+                        entry.getKey().tell(new RentARoomMessage.RequestReservations(aggregator, entry.getValue()));
+                    }
+                },
+                requests.size(),
+                message.sender,
+                replies -> {
+                    ArrayList<RentARoomMessage.Booked> hotels = new ArrayList<>();
+                    for (RentARoomMessage msg : replies) {
+                        if (msg instanceof RentARoomMessage.Booked) {
+                            hotels.add((RentARoomMessage.Booked) msg);
+                        // A hotel that was deleted in the meantime.
+                        } else if (msg instanceof RentARoomMessage.Rejected) {
+                            unknown.add(((RentARoomMessage.Rejected) msg).rejection);
+                        } else {
+                            LOG.error("[{}] requestReservationsMultiHotels() wrong message type: {}", name, msg);
+                        }
+                    }
+                    return new RentARoomMessage.BookingResult(unknown, hotels, false);
+                },
+                HOTEL_REPLY_TIMEOUT
+        ));
+
+        return Behaviors.same();
+    }
+
+    /**
+     * Spawns a BookingCoordinatorActor that makes all reservations or none.
+     */
+    private Behavior<RentARoomMessage> bookAllOrNothing(RentARoomMessage.RequestReservationsMultiHotels message) {
+        HashMap<String, EntityRef<RentARoomMessage>> hotels = new HashMap<>();
+        ArrayList<Rejection> unknown = new ArrayList<>();
+        for (String hotelName : message.reservations.keySet()) {
+            EntityRef<RentARoomMessage> actor = hotelManagerActors.get(hotelName);
+            if (actor == null) {
+                unknown.add(new Rejection(Rejection.Reason.HOTEL_UNKNOWN, hotelName));
             } else {
-                getContext().getLog().error(
-                        "[{}] requestReservationsMultiHotels() wrong message type: {}",
-                        getContext().getSelf().path().name(),
-                        msg);
+                hotels.put(hotelName, actor);
             }
         }
+        // Don't hold anything if a hotel is unknown, the booking can't succeed.
+        if (!unknown.isEmpty()) {
+            unknown.sort(Comparator.comparing(rejection -> rejection.subject));
+            message.sender.tell(new RentARoomMessage.BookingResult(unknown, new ArrayList<>(), true));
+            return Behaviors.same();
+        }
 
-        message.sender.tell(new RentARoomMessage.Response(String.join("\n", responses)));
-
+        getContext().spawnAnonymous(BookingCoordinatorActor.create(
+                hotels, message.reservations, message.sender, BOOKING_PHASE_TIMEOUT));
         return Behaviors.same();
     }
 
     private Behavior<RentARoomMessage> confirmReservation(RentARoomMessage.ConfirmReservation message) {
-        boolean confirmed = false;
-        for (Hotel hotel : getHotels()) {
-            if (hotel.hasReservation(message.id)) {
-                // No error will throw because we checked if it exists in the if statement above.
-                try {
-                    hotel.confirmReservation(message.id);
-                } catch (ReservationException ignored) { }
-
-                confirmed = true;
-                break;
-            }
+        EntityRef<RentARoomMessage> actor = getHotelManagerActor(message.id);
+        if (actor == null) {
+            message.sender.tell(new RentARoomMessage.Rejected(
+                    new Rejection(Rejection.Reason.RESERVATION_UNKNOWN, message.id)));
+            return Behaviors.same();
         }
 
-        if (confirmed) {
-            message.sender.tell(new RentARoomMessage.Response("The reservation has been confirmed."));
-        } else {
-            message.sender.tell(new RentARoomMessage.Response("There is no reservation with Id: " +
-                    message.id +
-                    " in our system."));
-        }
+        // Only the HotelManagerActor that owns the reservation may change it.
+        actor.tell(message);
         return Behaviors.same();
     }
 
     private Behavior<RentARoomMessage> cancelReservation(RentARoomMessage.CancelReservation message) {
-        boolean cancelled = false;
-        for (Hotel hotel : getHotels()) {
-            if (hotel.hasReservation(message.id)) {
-                // No error will throw because we checked if it exists in the if statement above.
-                try {
-                    hotel.deleteReservation(message.id);
-                } catch (ReservationException ignored) { }
-
-                cancelled = true;
-                break;
-            }
+        EntityRef<RentARoomMessage> actor = getHotelManagerActor(message.id);
+        if (actor == null) {
+            message.sender.tell(new RentARoomMessage.Rejected(
+                    new Rejection(Rejection.Reason.RESERVATION_UNKNOWN, message.id)));
+            return Behaviors.same();
         }
 
-        if (cancelled) {
-            message.sender.tell(new RentARoomMessage.Response("The reservation has been cancelled."));
-        } else {
-            message.sender.tell(new RentARoomMessage.Response("There is no reservation with Id: " +
-                    message.id +
-                    " in our system."));
+        // Only the HotelManagerActor that owns the reservation may change it.
+        actor.tell(message);
+        return Behaviors.same();
+    }
+
+    private Behavior<RentARoomMessage> getReservation(RentARoomMessage.GetReservation message) {
+        EntityRef<RentARoomMessage> actor = getHotelManagerActor(message.id);
+        if (actor == null) {
+            message.sender.tell(new RentARoomMessage.Rejected(
+                    new Rejection(Rejection.Reason.RESERVATION_UNKNOWN, message.id)));
+            return Behaviors.same();
         }
+
+        // Only the HotelManagerActor knows where the reservation is, in memory or in its archive.
+        actor.tell(message);
         return Behaviors.same();
     }
 
 
+    private static RentARoomMessage getHotelsResponse(List<HotelSummary> summaries) {
+        return new RentARoomMessage.SendHotels(new ArrayList<>(summaries));
+    }
+
+    private static RentARoomMessage getAvailableRoomsResponse(List<RentARoomMessage.SendAvailableRooms> hotels) {
+        // Replies arrive in any order, sort them so the output is the same every time.
+        ArrayList<RentARoomMessage.SendAvailableRooms> sorted = new ArrayList<>(hotels);
+        sorted.sort(Comparator.comparing(hotel -> hotel.hotelName));
+        return new RentARoomMessage.SendHotelsWithRooms(sorted);
+    }
+
+    /**
+     * @param best The hotels with the most available rooms, the most available first.
+     * @param answered Amount of hotels that answered in time.
+     */
+    private static RentARoomMessage getSearchResponse(List<RentARoomMessage.SendAvailableRooms> best,
+                                                      int answered,
+                                                      int hotelCount) {
+        return new RentARoomMessage.SendBestHotels(new ArrayList<>(best), answered, hotelCount);
+    }
+
+    /**
+     * Adds the hotel to the heap, and drops the hotel with the least available rooms if it holds more than limit.
+     */
+    private static void addBest(PriorityQueue<RentARoomMessage.SendAvailableRooms> best,
+                                RentARoomMessage.SendAvailableRooms hotel,
+                                int limit) {
+        best.add(hotel);
+        if (best.size() > limit) {
+            best.poll();
+        }
+    }
+
+    /**
+     * @return The hotels in the heap, the most available rooms first.
+     */
+    private static List<RentARoomMessage.SendAvailableRooms> getBest(PriorityQueue<RentARoomMessage.SendAvailableRooms> best) {
+        ArrayList<RentARoomMessage.SendAvailableRooms> hotels = new ArrayList<>(best);
+        hotels.sort(AVAILABILITY_ORDER.reversed());
+        return hotels;
+    }
+
+
+    /**
+     * @return The HotelManagerActor of the hotel that owns the reservation with the given id.
+     * Null if the id is invalid or the hotel is not in our system.
+     */
+    private EntityRef<RentARoomMessage> getHotelManagerActor(String reservationId) {
+        Long hotelKey = Reservation.getHotelKey(reservationId);
+        if (hotelKey == null) {
+            return null;
+        }
+        return hotelManagerActorsByKey.get(hotelKey);
+    }
+
+
+    /**
+     * @return The name of the hotel of the given HotelManagerActor.
+     * Sharding names the actor after the URL encoded entity id, which is the hotel name.
+     */
+    private static String getHotelName(ActorRef<RentARoomMessage> hotelManagerActor) {
+        try {
+            return URLDecoder.decode(hotelManagerActor.path().name(), "utf-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
     /**
      * Update hotelManagerActors with the Receptionist.Listing in the given message.
      */
     private Behavior<RentARoomMessage> updateHotelManagerActors(RentARoomMessage.UpdateHotelManagerActors message) {
-        // Get references to all HotelManagerActors (everything registered to HOTEL_MANAGER_SERVICE_KEY).
-        Set<ActorRef<RentARoomMessage>> actorSet = message.hotelManagerActors.getServiceInstances(
-                HotelManagerActor.HOTEL_MANAGER_SERVICE_KEY);
-        for (ActorRef<RentARoomMessage> actor : actorSet) {
-            // hotelManagerActors uses the actor names as key.
-            String actorName = actor.path().name();
+        // Get the names of all hotels (everything registered to HOTEL_MANAGER_SERVICE_KEY).
+        HashSet<String> listedHotels = new HashSet<>();
+        for (ActorRef<RentARoomMessage> actor : message.hotelManagerActors.getServiceInstances(
+                HotelManagerActor.HOTEL_MANAGER_SERVICE_KEY)) {
+            listedHotels.add(getHotelName(actor));
+        }
+
+        for (String hotelName : listedHotels) {
+            unlistedHotels.remove(hotelName);
             // Add the HotelManagerActor if it's new to the AgentActor
-            if (!hotelManagerActors.containsKey(actorName)) {
+            if (!hotelManagerActors.containsKey(hotelName)) {
                 getContext().getLog().info(
                         "[{}] New HotelManager found: {}",
                         getContext().getSelf().path().name(),
-                        actorName);
-                hotelManagerActors.put(actorName, actor);
+                        hotelName);
+                EntityRef<RentARoomMessage> actor = HotelManagerActor.getEntityRef(getContext().getSystem(), hotelName);
+                hotelManagerActors.put(hotelName, actor);
+                hotelManagerActorsByKey.put(Hotel.getKey(hotelName), actor);
             }
         }
 
-        // Remove all actors from hotelManagerActors that aren't listed in actorSet.
+        // Remove all actors from hotelManagerActors that aren't listed, unless they were just added.
         hotelManagerActors.entrySet().removeIf(entry -> {
-            if (!actorSet.contains(entry.getValue())) {
+            if (!listedHotels.contains(entry.getKey()) && !unlistedHotels.contains(entry.getKey())) {
                 getContext().getLog().info(
                         "[{}] HotelManager no longer exists: {}",
                         getContext().getSelf().path().name(),
                         entry.getKey());
+                hotelManagerActorsByKey.remove(Hotel.getKey(entry.getKey()));
                 return true;
             }
             return false;
@@ -0,0 +1,152 @@
+package nl.saxion.concurrency.actors;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.*;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived actor that collects the replies of a scatter-gather request.
+ * It sends the requests with itself as sender, waits for the expected amount of replies or the deadline,
+ * sends the aggregated result to replyTo and stops.
+ * Lets an AgentActor fan out to all HotelManagerActors without blocking its own thread.
+ */
+public class AggregatorActor extends AbstractBehavior<RentARoomMessage> {
+
+    private final int expectedReplies;
+    private final ActorRef<RentARoomMessage> replyTo;
+    private final Consumer<RentARoomMessage> handleReply;
+    private final Supplier<RentARoomMessage> result;
+    private int receivedReplies;
+
+
+    private AggregatorActor(ActorContext<RentARoomMessage> context,
+                            TimerScheduler<RentARoomMessage> timers,
+                            Consumer<ActorRef<RentARoomMessage>> sendRequests,
+                            int expectedReplies,
+                            ActorRef<RentARoomMessage> replyTo,
+                            Consumer<RentARoomMessage> handleReply,
+                            Supplier<RentARoomMessage> result,
+                            Duration timeout) {
+        super(context);
+        this.expectedReplies = expectedReplies;
+        this.replyTo = replyTo;
+        this.handleReply = handleReply;
+        this.result = result;
+        this.receivedReplies = 0;
+
+        timers.startSingleTimer(new RentARoomMessage.AggregatorTimeout(), timeout);
+        sendRequests.accept(context.getSelf());
+    }
+
+    /**
+     * @param sendRequests Sends the requests with the given ActorRef as sender.
+     * @param expectedReplies Amount of replies to wait for.
+     * @param replyTo Receives the aggregated result.
+     * @param aggregateReplies Turns the replies into the result. Gets the partial replies if the deadline passed.
+     * @param timeout The deadline for all replies.
+     */
+    public static Behavior<RentARoomMessage> create(Consumer<ActorRef<RentARoomMessage>> sendRequests,
+                                                    int expectedReplies,
+                                                    ActorRef<RentARoomMessage> replyTo,
+                                                    Function<List<RentARoomMessage>, RentARoomMessage> aggregateReplies,
+                                                    Duration timeout) {
+        return create(sendRequests, expectedReplies, replyTo, reply -> null, aggregateReplies, timeout);
+    }
+
+    /**
+     * Like create(), but also passes every reply on to replyTo as soon as it arrives,
+     * so replyTo receives a stream of messages that ends with the aggregated result.
+     * @param forwardReply Turns a reply into the message for replyTo. Null to not pass the reply on.
+     */
+    public static Behavior<RentARoomMessage> create(Consumer<ActorRef<RentARoomMessage>> sendRequests,
+                                                    int expectedReplies,
+                                                    ActorRef<RentARoomMessage> replyTo,
+                                                    Function<RentARoomMessage, RentARoomMessage> forwardReply,
+                                                    Function<List<RentARoomMessage>, RentARoomMessage> aggregateReplies,
+                                                    Duration timeout) {
+        return Behaviors.setup(context -> {
+            ArrayList<RentARoomMessage> replies = new ArrayList<>(expectedReplies);
+            return createReducing(
+                    sendRequests,
+                    expectedReplies,
+                    replyTo,
+                    reply -> {
+                        replies.add(reply);
+                        RentARoomMessage forward = forwardReply.apply(reply);
+                        if (forward != null) {
+                            replyTo.tell(forward);
+                        }
+                    },
+                    () -> aggregateReplies.apply(replies),
+                    timeout);
+        });
+    }
+
+    /**
+     * Like create(), but hands every reply to handleReply as soon as it arrives instead of keeping it.
+     * For results that can be built up reply by reply, so the aggregator doesn't hold on to all of them.
+     * @param handleReply Adds a reply to the result.
+     * @param result Gives the result of the replies handled so far.
+     */
+    public static Behavior<RentARoomMessage> createReducing(Consumer<ActorRef<RentARoomMessage>> sendRequests,
+                                                            int expectedReplies,
+                                                            ActorRef<RentARoomMessage> replyTo,
+                                                            Consumer<RentARoomMessage> handleReply,
+                                                            Supplier<RentARoomMessage> result,
+                                                            Duration timeout) {
+        // Nothing to wait for, answer right away.
+        if (expectedReplies == 0) {
+            return Behaviors.setup(context -> {
+                replyTo.tell(result.get());
+                return Behaviors.stopped();
+            });
+        }
+
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new AggregatorActor(
+                context, timers, sendRequests, expectedReplies, replyTo, handleReply, result, timeout)));
+    }
+
+
+    @Override
+    public Receive<RentARoomMessage> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(RentARoomMessage.AggregatorTimeout.class, this::timeout)
+                .onMessage(RentARoomMessage.class, this::reply)
+                .build();
+    }
+
+
+    private Behavior<RentARoomMessage> reply(RentARoomMessage message) {
+        receivedReplies++;
+        handleReply.accept(message);
+        if (receivedReplies < expectedReplies) {
+            return Behaviors.same();
+        }
+
+        replyTo.tell(result.get());
+        return Behaviors.stopped();
+    }
+
+    /**
+     * Not all replies arrived before the deadline. Answer with the replies that did.
+     */
+    private Behavior<RentARoomMessage> timeout(RentARoomMessage.AggregatorTimeout message) {
+        getContext().getLog().warn(
+                "[{}] Only received {} of {} replies before the deadline.",
+                getContext().getSelf().path().name(),
+                receivedReplies,
+                expectedReplies);
+
+        replyTo.tell(result.get());
+        return Behaviors.stopped();
+    }
+
+}
@@ -0,0 +1,196 @@
+package nl.saxion.concurrency.actors;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.RecipientRef;
+import akka.actor.typed.javadsl.*;
+import nl.saxion.concurrency.domain.Rejection;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Short-lived actor that makes the reservations in multiple hotels all or nothing, in two phases.
+ * First every hotel holds its reservations. If all hotels hold them, the holds are committed.
+ * If a hotel can't hold its reservations or doesn't answer in time, all holds are released.
+ * If a hotel can't commit its hold, because the hotel was deleted or the hold expired, or doesn't answer in time,
+ * the holds are released and the committed reservations are cancelled again.
+ * The hotels keep handling other bookings while they hold reservations, the held rooms are just not available to them.
+ */
+public class BookingCoordinatorActor extends AbstractBehavior<RentARoomMessage> {
+
+    private enum Phase { HOLD, COMMIT }
+
+    /**
+     * Key of the one timer for the deadline of the current phase, so starting the next phase replaces it.
+     */
+    private static final String TIMEOUT_TIMER = "timeout";
+
+    private final TimerScheduler<RentARoomMessage> timers;
+    private final ActorRef<RentARoomMessage> replyTo;
+    private final Duration phaseTimeout;
+    private final String holdId;
+    /**
+     * The hotels of the booking <Hotel name, HotelManagerActor>.
+     */
+    private final Map<String, RecipientRef<RentARoomMessage>> hotels;
+    /**
+     * The answers of the hotels in the current phase <Hotel name, Answer>, sorted so the output is the same every time.
+     */
+    private final TreeMap<String, RentARoomMessage.HoldResponse> responses;
+    /**
+     * The held reservations per hotel, the answer to the customer when the booking succeeds.
+     */
+    private final TreeMap<String, RentARoomMessage.Booked> held;
+    private Phase phase;
+
+
+    private BookingCoordinatorActor(ActorContext<RentARoomMessage> context,
+                                    TimerScheduler<RentARoomMessage> timers,
+                                    Map<String, RecipientRef<RentARoomMessage>> hotels,
+                                    Map<String, ArrayList<Reservation>> reservations,
+                                    ActorRef<RentARoomMessage> replyTo,
+                                    Duration phaseTimeout) {
+        super(context);
+        this.timers = timers;
+        this.replyTo = replyTo;
+        this.phaseTimeout = phaseTimeout;
+        // Not UUID.randomUUID(), its SecureRandom is shared by all threads.
+        this.holdId = new UUID(ThreadLocalRandom.current().nextLong(), ThreadLocalRandom.current().nextLong()).toString();
+        this.hotels = hotels;
+        this.responses = new TreeMap<>();
+        this.held = new TreeMap<>();
+        this.phase = Phase.HOLD;
+
+        timers.startSingleTimer(TIMEOUT_TIMER, new RentARoomMessage.BookingTimeout(), phaseTimeout);
+        for (Map.Entry<String, RecipientRef<RentARoomMessage>> hotel : hotels.entrySet()) {
+            hotel.getValue().tell(new RentARoomMessage.HoldReservations(
+                    context.getSelf(), holdId, reservations.get(hotel.getKey())));
+        }
+    }
+
+    /**
+     * @param hotels The HotelManagerActors of the hotels in reservations <Hotel name, HotelManagerActor>.
+     * @param reservations The reservations per hotel <Hotel name, Reservations>.
+     * @param replyTo Receives a BookingResult with the made reservations, or why none were made.
+     * @param phaseTimeout How long to wait for the hotels in each phase.
+     */
+    public static Behavior<RentARoomMessage> create(Map<String, ? extends RecipientRef<RentARoomMessage>> hotels,
+                                                    Map<String, ArrayList<Reservation>> reservations,
+                                                    ActorRef<RentARoomMessage> replyTo,
+                                                    Duration phaseTimeout) {
+        // Nothing to book, answer right away.
+        if (hotels.isEmpty()) {
+            return Behaviors.setup(context -> {
+                replyTo.tell(new RentARoomMessage.BookingResult(new ArrayList<>(), new ArrayList<>(), false));
+                return Behaviors.stopped();
+            });
+        }
+
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new BookingCoordinatorActor(
+                context, timers, new HashMap<>(hotels), reservations, replyTo, phaseTimeout)));
+    }
+
+
+    @Override
+    public Receive<RentARoomMessage> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(RentARoomMessage.HoldResponse.class, this::holdResponse)
+                .onMessage(RentARoomMessage.BookingTimeout.class, this::timeout)
+                .build();
+    }
+
+
+    private Behavior<RentARoomMessage> holdResponse(RentARoomMessage.HoldResponse message) {
+        // Answers to an earlier phase can't arrive anymore, but check in case a hotel answers twice.
+        if (!message.holdId.equals(holdId) || responses.containsKey(message.hotelName)) {
+            return Behaviors.same();
+        }
+        responses.put(message.hotelName, message);
+
+        if (!message.isSuccess()) {
+            // No need to wait for the other hotels, the booking can't succeed anymore.
+            return abort(new ArrayList<>(Collections.singletonList(message.rejection)));
+        }
+        if (phase == Phase.HOLD) {
+            ArrayList<Rejection> rejections = new ArrayList<>(Collections.nCopies(message.reservations.size(), null));
+            held.put(message.hotelName, new RentARoomMessage.Booked(message.hotelName, message.reservations, rejections));
+            if (responses.size() < hotels.size()) {
+                return Behaviors.same();
+            }
+            return commit();
+        }
+
+        if (responses.size() < hotels.size()) {
+            return Behaviors.same();
+        }
+        return finish();
+    }
+
+    /**
+     * All hotels hold their reservations, commit them.
+     */
+    private Behavior<RentARoomMessage> commit() {
+        phase = Phase.COMMIT;
+        responses.clear();
+        timers.startSingleTimer(TIMEOUT_TIMER, new RentARoomMessage.BookingTimeout(), phaseTimeout);
+        for (RecipientRef<RentARoomMessage> hotel : hotels.values()) {
+            hotel.tell(new RentARoomMessage.CommitHold(getContext().getSelf(), holdId));
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * Releases the holds in all hotels, also in those that didn't answer yet, and tells the customer why.
+     * Releasing a hold a hotel doesn't have does nothing.
+     * <p>
+     * In the commit phase some hotels may have committed their hold, so their reservations are cancelled too.
+     * A hotel handles the messages of this actor in the order they were sent, so a commit that is still on its way
+     * is made before it's cancelled. Cancelling a reservation a hotel doesn't have does nothing either.
+     */
+    private Behavior<RentARoomMessage> abort(ArrayList<Rejection> reasons) {
+        getContext().getLog().info("[{}] Booking {} aborted in the {} phase: {}",
+                getContext().getSelf().path().name(), holdId, phase, reasons);
+        // Nobody waits for the answers.
+        ActorRef<RentARoomMessage> ignore = getContext().getSystem().ignoreRef();
+        for (Map.Entry<String, RecipientRef<RentARoomMessage>> hotel : hotels.entrySet()) {
+            hotel.getValue().tell(new RentARoomMessage.ReleaseHold(ignore, holdId));
+            if (phase == Phase.COMMIT) {
+                for (Reservation reservation : held.get(hotel.getKey()).reservations) {
+                    hotel.getValue().tell(new RentARoomMessage.CancelReservation(ignore, reservation.id));
+                }
+            }
+        }
+        replyTo.tell(new RentARoomMessage.BookingResult(reasons, new ArrayList<>(), true));
+        return Behaviors.stopped();
+    }
+
+    /**
+     * Every hotel committed its hold.
+     */
+    private Behavior<RentARoomMessage> finish() {
+        replyTo.tell(new RentARoomMessage.BookingResult(new ArrayList<>(), new ArrayList<>(held.values()), false));
+        return Behaviors.stopped();
+    }
+
+    private Behavior<RentARoomMessage> timeout(RentARoomMessage.BookingTimeout message) {
+        ArrayList<Rejection> late = new ArrayList<>();
+        for (String hotelName : hotels.keySet()) {
+            if (!responses.containsKey(hotelName)) {
+                late.add(new Rejection(Rejection.Reason.HOTEL_NO_ANSWER, hotelName));
+            }
+        }
+        late.sort(Comparator.comparing(rejection -> rejection.subject));
+        return abort(late);
+    }
+
+}
@@ -1,20 +1,62 @@
 package nl.saxion.concurrency.actors;
 
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
 import akka.actor.typed.Behavior;
-import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.PostStop;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
-import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.pubsub.Topic;
 import akka.actor.typed.receptionist.Receptionist;
 import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.cluster.sharding.typed.javadsl.EntityRef;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import akka.persistence.typed.PersistenceId;
+import akka.persistence.typed.RecoveryCompleted;
+import akka.persistence.typed.SnapshotAdapter;
+import akka.persistence.typed.javadsl.*;
 import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.Rejection;
 import nl.saxion.concurrency.domain.Reservation;
 import nl.saxion.concurrency.domain.ReservationException;
+import nl.saxion.concurrency.domain.ReservationIdGenerator;
+import nl.saxion.concurrency.messages.HotelEvent;
 import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.persistence.HotelSnapshot;
+import nl.saxion.concurrency.persistence.ReservationArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
-public class HotelManagerActor extends AbstractBehavior<RentARoomMessage> {
+/**
+ * Manages one hotel. Every change to the hotel is stored as a HotelEvent before it's answered,
+ * so the hotel survives restarts and moves to other nodes.
+ * The state is null as long as the hotel isn't added.
+ * <p>
+ * Unconfirmed reservations and holds are released when their time to live passes.
+ * The hotel keeps them in the order they expire, and one timer goes off when the first of them expires.
+ * <p>
+ * Every compaction interval the reservations that have checked out are moved to a ReservationArchive on disk,
+ * so the hotel only keeps the current and future reservations in memory. They can still be looked up by id.
+ * The archive is read and written on the blocking dispatcher, the results come back to the actor as messages.
+ */
+public class HotelManagerActor extends EventSourcedBehavior<RentARoomMessage, HotelEvent, Hotel> {
 
     /**
      * ServiceKey to notify AgentActors of HotelManagerActor constructions and deconstructions.
@@ -23,63 +65,707 @@ public class HotelManagerActor extends AbstractBehavior<RentARoomMessage> {
             RentARoomMessage.class,
             "AccountManagerService");
 
-    private final Hotel hotel;
+    /**
+     * Key of the HotelManagerActors in cluster sharding. The entity id is the name of the hotel.
+     * Every hotel lives on exactly one node, the one that owns its shard.
+     */
+    public static final EntityTypeKey<RentARoomMessage> ENTITY_TYPE_KEY = EntityTypeKey.create(
+            RentARoomMessage.class,
+            "HotelManager");
 
+    /**
+     * Amount of events after which a snapshot of the hotel is saved.
+     * Recovery starts at the latest snapshot, so it replays at most this many events.
+     */
+    private static final int SNAPSHOT_EVERY = 100;
+    /**
+     * Key of the one timer for the first reservation or hold to expire.
+     */
+    private static final String EXPIRY_TIMER = "expiry";
+    private static final String ARCHIVE_TIMER = "archive";
+    private static final Logger LOG = LoggerFactory.getLogger(HotelManagerActor.class);
 
-    public HotelManagerActor(ActorContext<RentARoomMessage> context, Hotel hotel) {
-        super(context);
-        this.hotel = hotel;
+    /**
+     * Something to do with the archive on the blocking dispatcher.
+     */
+    private interface ArchiveTask<T> {
+        T run() throws IOException;
+    }
 
-        context.getSystem().receptionist().tell(Receptionist.register(HOTEL_MANAGER_SERVICE_KEY, context.getSelf()));
+    private final ActorContext<RentARoomMessage> context;
+    private final ActorRef<ClusterSharding.ShardCommand> shard;
+    private final String hotelName;
+    private final ActorRef<Topic.Command<RentARoomMessage>> hotelChanges;
+    private final TimerScheduler<RentARoomMessage> timers;
+    /**
+     * Time to live in milliseconds of unconfirmed reservations and of holds. 0 if they don't expire.
+     */
+    private final long unconfirmedTtl;
+    private final long holdTtl;
+    /**
+     * Time in epoch milliseconds the expiry timer goes off. 0 if it isn't started.
+     */
+    private long expiryScheduledAt;
+    /**
+     * 0 if past reservations aren't archived.
+     */
+    private final Duration compactionInterval;
+    private final Path archiveDir;
+    /**
+     * The type of ReservationIdGenerator of the hotel.
+     */
+    private final String idGenerator;
+    /**
+     * Runs the archive tasks.
+     */
+    private final Executor blockingExecutor;
+    /**
+     * The last archive task. Every task waits for the one before it, so one thread at a time uses the archive,
+     * and it's closed or deleted after the tasks that came before.
+     */
+    private CompletableFuture<?> archiveTasks;
+    /**
+     * True while past reservations are written, so the next ArchiveReservations doesn't write them again.
+     */
+    private boolean archiving;
+    /**
+     * Opened on first use. Only used by the archive tasks.
+     */
+    private ReservationArchive archive;
+
+
+    private HotelManagerActor(ActorContext<RentARoomMessage> context,
+                              TimerScheduler<RentARoomMessage> timers,
+                              ActorRef<ClusterSharding.ShardCommand> shard,
+                              String hotelName,
+                              ActorRef<Topic.Command<RentARoomMessage>> hotelChanges) {
+        super(PersistenceId.of(ENTITY_TYPE_KEY.name(), hotelName));
+        this.context = context;
+        this.timers = timers;
+        this.shard = shard;
+        this.hotelName = hotelName;
+        this.hotelChanges = hotelChanges;
+        this.unconfirmedTtl = context.getSystem().settings().config()
+                .getDuration("rent-a-room.hotel.unconfirmed-ttl").toMillis();
+        this.holdTtl = context.getSystem().settings().config()
+                .getDuration("rent-a-room.hotel.hold-ttl").toMillis();
+        this.expiryScheduledAt = 0;
+        this.compactionInterval = context.getSystem().settings().config()
+                .getDuration("rent-a-room.hotel.compaction-interval");
+        this.archiveDir = Paths.get(context.getSystem().settings().config().getString("rent-a-room.hotel.archive-dir"));
+        this.idGenerator = context.getSystem().settings().config().getString("rent-a-room.hotel.id-generator");
+        this.blockingExecutor = context.getSystem().dispatchers().lookup(DispatcherSelector.blocking());
+        this.archiveTasks = CompletableFuture.completedFuture(null);
+        this.archiving = false;
+    }
+
+    /**
+     * Starts cluster sharding of HotelManagerActors on this node.
+     * Needs to be called on every node, so every node can host and reach hotels.
+     * @param hotelChanges The topic on this node to publish a HotelChanged to after every change.
+     */
+    public static void initSharding(ActorSystem<?> system, ActorRef<Topic.Command<RentARoomMessage>> hotelChanges) {
+        ClusterSharding.get(system).init(Entity.of(
+                ENTITY_TYPE_KEY,
+                entityContext -> create(entityContext.getShard(), entityContext.getEntityId(), hotelChanges)));
     }
 
-    public static Behavior<RentARoomMessage> create(Hotel hotel) {
-        return Behaviors.setup(context -> new HotelManagerActor(context, hotel));
+    /**
+     * @return A reference to the HotelManagerActor of the given hotel, wherever in the cluster it lives.
+     */
+    public static EntityRef<RentARoomMessage> getEntityRef(ActorSystem<?> system, String hotelName) {
+        return ClusterSharding.get(system).entityRefFor(ENTITY_TYPE_KEY, hotelName);
+    }
+
+    /**
+     * Sharding starts the actor on the first message for the hotel.
+     * @param shard The shard the actor runs in. Used to stop the actor when it has no hotel.
+     */
+    public static Behavior<RentARoomMessage> create(ActorRef<ClusterSharding.ShardCommand> shard,
+                                                    String hotelName,
+                                                    ActorRef<Topic.Command<RentARoomMessage>> hotelChanges) {
+        return Behaviors.setup(context -> Behaviors.withTimers(
+                timers -> new HotelManagerActor(context, timers, shard, hotelName, hotelChanges)));
     }
 
 
     @Override
-    public Receive<RentARoomMessage> createReceive() {
-        return newReceiveBuilder()
-                .onMessage(RentARoomMessage.ListReservations.class, this::listReservations)
-                .onMessage(RentARoomMessage.RequestReservations.class, this::requestReservations)
-                .onMessage(RentARoomMessage.RequestHotel.class, this::requestHotel)
+    public Hotel emptyState() {
+        return null;
+    }
+
+    @Override
+    public CommandHandler<RentARoomMessage, HotelEvent, Hotel> commandHandler() {
+        CommandHandlerBuilder<RentARoomMessage, HotelEvent, Hotel> builder = newCommandHandlerBuilder();
+
+        // The hotel doesn't exist. Any other message than AddHotel is answered as such, after which the actor stops.
+        builder.forNullState()
+                .onCommand(RentARoomMessage.AddHotel.class, this::addHotel)
+                .onCommand(RentARoomMessage.DeleteHotel.class, message -> {
+                    message.sender.tell(new RentARoomMessage.Rejected(new Rejection(Rejection.Reason.HOTEL_UNKNOWN, hotelName)));
+                    return passivate();
+                })
+                .onCommand(RentARoomMessage.ListReservations.class, message -> {
+                    message.sender.tell(new RentARoomMessage.Rejected(new Rejection(Rejection.Reason.HOTEL_UNKNOWN, hotelName)));
+                    return passivate();
+                })
+                .onCommand(RentARoomMessage.RequestReservations.class, message -> {
+                    message.sender.tell(new RentARoomMessage.Rejected(new Rejection(Rejection.Reason.HOTEL_UNKNOWN, hotelName)));
+                    return passivate();
+                })
+                .onCommand(RentARoomMessage.ConfirmReservation.class, message -> {
+                    message.sender.tell(new RentARoomMessage.Rejected(
+                            new Rejection(Rejection.Reason.RESERVATION_UNKNOWN, message.id)));
+                    return passivate();
+                })
+                .onCommand(RentARoomMessage.CancelReservation.class, message -> {
+                    message.sender.tell(new RentARoomMessage.Rejected(
+                            new Rejection(Rejection.Reason.RESERVATION_UNKNOWN, message.id)));
+                    return passivate();
+                })
+                .onCommand(RentARoomMessage.GetReservation.class, message -> {
+                    message.sender.tell(new RentARoomMessage.Rejected(
+                            new Rejection(Rejection.Reason.RESERVATION_UNKNOWN, message.id)));
+                    return passivate();
+                })
+                // The aggregator of the AgentActor waits for an answer of every hotel.
+                .onCommand(RentARoomMessage.RequestCustomerReservations.class, message -> {
+                    message.sender.tell(new RentARoomMessage.SendCustomerReservations(hotelName, new ArrayList<>()));
+                    return passivate();
+                })
+                .onCommand(RentARoomMessage.RequestAvailableRooms.class, message -> {
+                    message.sender.tell(new RentARoomMessage.SendAvailableRooms(null, 0));
+                    return passivate();
+                })
+                .onCommand(RentARoomMessage.HoldReservations.class, message -> {
+                    message.sender.tell(new RentARoomMessage.HoldResponse(hotelName, message.holdId, new ArrayList<>(),
+                            new Rejection(Rejection.Reason.HOTEL_UNKNOWN, hotelName)));
+                    return passivate();
+                })
+                .onCommand(RentARoomMessage.CommitHold.class, message -> {
+                    message.sender.tell(new RentARoomMessage.HoldResponse(hotelName, message.holdId, new ArrayList<>(),
+                            new Rejection(Rejection.Reason.HOTEL_UNKNOWN, hotelName)));
+                    return passivate();
+                })
+                // Nothing to release.
+                .onCommand(RentARoomMessage.ReleaseHold.class, message -> {
+                    message.sender.tell(new RentARoomMessage.HoldResponse(hotelName, message.holdId, new ArrayList<>(), null));
+                    return passivate();
+                })
+                // The hotel was deleted while the archive was read.
+                .onCommand(RentARoomMessage.ArchiveLookedUp.class, this::archiveLookedUp)
+                // Other messages come from AgentActors that haven't heard the hotel is gone yet.
+                .onAnyCommand(message -> passivate());
+
+        builder.forNonNullState()
+                .onCommand(RentARoomMessage.AddHotel.class, (hotel, message) -> {
+                    message.sender.tell(new RentARoomMessage.Rejected(new Rejection(Rejection.Reason.HOTEL_EXISTS, hotel.name)));
+                    return Effect().none();
+                })
+                .onCommand(RentARoomMessage.DeleteHotel.class, this::deleteHotel)
+                .onCommand(RentARoomMessage.ListReservations.class, this::listReservations)
+                .onCommand(RentARoomMessage.RequestCustomerReservations.class, this::requestCustomerReservations)
+                .onCommand(RentARoomMessage.RequestReservations.class, this::requestReservations)
+                .onCommand(RentARoomMessage.ConfirmReservation.class, this::confirmReservation)
+                .onCommand(RentARoomMessage.CancelReservation.class, this::cancelReservation)
+                .onCommand(RentARoomMessage.GetReservation.class, this::getReservation)
+                .onCommand(RentARoomMessage.RequestHotelSummary.class, this::requestHotelSummary)
+                .onCommand(RentARoomMessage.RequestAvailableRooms.class, this::requestAvailableRooms)
+                .onCommand(RentARoomMessage.HoldReservations.class, this::holdReservations)
+                .onCommand(RentARoomMessage.CommitHold.class, this::commitHold)
+                .onCommand(RentARoomMessage.ReleaseHold.class, this::releaseHold)
+                .onCommand(RentARoomMessage.ExpireReservations.class, this::expireReservations)
+                .onCommand(RentARoomMessage.ArchiveReservations.class, this::archiveReservations)
+                .onCommand(RentARoomMessage.ReservationsWritten.class, this::reservationsWritten)
+                .onCommand(RentARoomMessage.ArchiveLookedUp.class, (hotel, message) -> archiveLookedUp(message));
+
+        return builder.build();
+    }
+
+    /**
+     * Not made with newEventHandlerBuilder(), its handlers can't return null and HotelDeleted removes the hotel.
+     */
+    @Override
+    public EventHandler<Hotel, HotelEvent> eventHandler() {
+        return this::applyEvent;
+    }
+
+    /**
+     * Registers the recovered hotel, so the AgentActors know it's here, and starts the expiry and archive timers.
+     */
+    @Override
+    public SignalHandler<Hotel> signalHandler() {
+        return newSignalHandlerBuilder()
+                .onSignal(RecoveryCompleted.instance(), hotel -> {
+                    if (hotel != null) {
+                        register();
+                        scheduleExpiry(hotel);
+                        scheduleArchiving();
+                    }
+                })
+                .onSignal(PostStop.instance(), hotel -> closeArchive())
                 .build();
     }
 
+    /**
+     * Saves a snapshot every SNAPSHOT_EVERY events and removes the events before the second to last snapshot.
+     */
+    @Override
+    public RetentionCriteria retentionCriteria() {
+        return RetentionCriteria.snapshotEvery(SNAPSHOT_EVERY, 2).withDeleteEventsOnSnapshot();
+    }
 
-    private Behavior<RentARoomMessage> listReservations(RentARoomMessage.ListReservations message) {
-        ArrayList<String> responses = new ArrayList<>();
-        // Loop over all reservations with the customer specified in the message
-        for (Reservation reservation : hotel.getReservations(message.customer).values()) {
-            responses.add(reservation.toString() + ", Confirmed: " + (reservation.getConfirmed() ? "Yes" : "No"));
-        }
+    /**
+     * The events change the hotel in place, so the snapshot store gets a HotelSnapshot instead of the hotel.
+     * toJournal is called on the thread of this actor, before the next event changes the hotel.
+     */
+    @Override
+    public SnapshotAdapter<Hotel> snapshotAdapter() {
+        return new SnapshotAdapter<Hotel>() {
+            @Override
+            public Object toJournal(Hotel hotel) {
+                return HotelSnapshot.of(hotel);
+            }
 
-        message.sender.tell(new RentARoomMessage.Response(
-                        "You have the following reservations in " + hotel.name + ":\n" +
-                        String.join("\n", responses)));
-        return Behaviors.same();
+            @Override
+            public Hotel fromJournal(Object from) {
+                return ((HotelSnapshot) from).toHotel();
+            }
+        };
+    }
+
+
+    private Effect<HotelEvent, Hotel> addHotel(RentARoomMessage.AddHotel message) {
+        return Effect().persist(new HotelEvent.HotelAdded(message.roomCount))
+                .thenRun(hotel -> {
+                    register();
+                    scheduleArchiving();
+                    publishChange(null, null);
+                    message.sender.tell(new RentARoomMessage.Done(RentARoomMessage.Done.Action.HOTEL_ADDED, hotelName));
+                });
     }
 
-    private Behavior<RentARoomMessage> requestReservations(RentARoomMessage.RequestReservations message) {
-        ArrayList<String> responses = new ArrayList<>();
-        responses.add("Reservations for " + hotel.name + ":");
+    /**
+     * Stops the actor. The receptionist removes it from its list, so the AgentActors forget the hotel.
+     */
+    private Effect<HotelEvent, Hotel> deleteHotel(Hotel hotel, RentARoomMessage.DeleteHotel message) {
+        return Effect().persist(new HotelEvent.HotelDeleted())
+                .thenRun(deleted -> {
+                    deleteArchive();
+                    publishChange(null, null);
+                    message.sender.tell(new RentARoomMessage.Done(RentARoomMessage.Done.Action.HOTEL_DELETED, hotelName));
+                    shard.tell(new ClusterSharding.Passivate<>(context.getSelf()));
+                });
+    }
+
+    private Effect<HotelEvent, Hotel> listReservations(Hotel hotel, RentARoomMessage.ListReservations message) {
+        message.sender.tell(new RentARoomMessage.SendReservations(
+                hotel.name, hotel.getReservations(message.customer)));
+        return Effect().none();
+    }
+
+    private Effect<HotelEvent, Hotel> requestCustomerReservations(Hotel hotel,
+                                                                  RentARoomMessage.RequestCustomerReservations message) {
+        message.sender.tell(new RentARoomMessage.SendCustomerReservations(
+                hotel.name,
+                hotel.getReservations(message.customer)));
+        return Effect().none();
+    }
+
+    private Effect<HotelEvent, Hotel> requestReservations(Hotel hotel, RentARoomMessage.RequestReservations message) {
+        // The made reservations, and the requested ones that were rejected.
+        ArrayList<Reservation> reservations = new ArrayList<>();
+        ArrayList<Rejection> rejections = new ArrayList<>();
+        // The reservations that fit. They're added to the hotel after they've been stored.
+        ArrayList<Reservation> created = new ArrayList<>();
+        ArrayList<HotelEvent> events = new ArrayList<>();
+        long expiresAt = getExpiresAt(unconfirmedTtl);
         for (Reservation reservation : message.reservations) {
             try {
-                hotel.addReservation(reservation);
-                responses.add("The reservation: \"" + reservation + "\" was received.");
+                Reservation added = hotel.createReservation(reservation, created, expiresAt);
+                created.add(added);
+                events.add(new HotelEvent.ReservationAdded(added));
+                reservations.add(added);
+                rejections.add(null);
             // Throws when the hotel doesn't have enough rooms for the reservation
             } catch (ReservationException ex) {
-                responses.add(ex.getMessage());
+                reservations.add(reservation);
+                rejections.add(ex.getRejection());
             }
         }
-        message.sender.tell(new RentARoomMessage.Response(String.join("\n", responses)));
-        return Behaviors.same();
+
+        return Effect().persist(events)
+                .thenRun(updated -> {
+                    publishChange(created);
+                    scheduleExpiry(updated);
+                })
+                .thenReply(message.sender, updated -> new RentARoomMessage.Booked(hotel.name, reservations, rejections));
     }
 
-    private Behavior<RentARoomMessage> requestHotel(RentARoomMessage.RequestHotel message) {
-        message.sender.tell(new RentARoomMessage.SendHotel(hotel));
-        return Behaviors.same();
+    /**
+     * Holds all reservations, or none if one of them doesn't fit.
+     * Other messages are handled as usual while the hold waits to be committed or released.
+     */
+    private Effect<HotelEvent, Hotel> holdReservations(Hotel hotel, RentARoomMessage.HoldReservations message) {
+        ArrayList<Reservation> created = new ArrayList<>();
+        long expiresAt = getExpiresAt(unconfirmedTtl);
+        for (Reservation reservation : message.reservations) {
+            try {
+                created.add(hotel.createReservation(reservation, created, expiresAt));
+            } catch (ReservationException ex) {
+                message.sender.tell(new RentARoomMessage.HoldResponse(
+                        hotel.name, message.holdId, new ArrayList<>(), ex.getRejection()));
+                return Effect().none();
+            }
+        }
+
+        return Effect().persist(new HotelEvent.ReservationsHeld(message.holdId, created, getExpiresAt(holdTtl)))
+                .thenRun(updated -> {
+                    publishChange(created);
+                    scheduleExpiry(updated);
+                })
+                .thenReply(message.sender, updated -> new RentARoomMessage.HoldResponse(
+                        hotel.name, message.holdId, created, null));
+    }
+
+    /**
+     * The held rooms were taken already when they were held, so the availability doesn't change and isn't published.
+     */
+    private Effect<HotelEvent, Hotel> commitHold(Hotel hotel, RentARoomMessage.CommitHold message) {
+        if (hotel.getHold(message.holdId) == null) {
+            message.sender.tell(new RentARoomMessage.HoldResponse(hotel.name, message.holdId, new ArrayList<>(),
+                    new Rejection(Rejection.Reason.HOLD_GONE, hotel.name)));
+            return Effect().none();
+        }
+
+        return Effect().persist(new HotelEvent.HoldCommitted(message.holdId))
+                .thenRun(this::scheduleExpiry)
+                .thenReply(message.sender, updated -> new RentARoomMessage.HoldResponse(
+                        hotel.name, message.holdId, new ArrayList<>(), null));
+    }
+
+    private Effect<HotelEvent, Hotel> releaseHold(Hotel hotel, RentARoomMessage.ReleaseHold message) {
+        List<Reservation> held = hotel.getHold(message.holdId);
+        // Released already, or never held.
+        if (held == null) {
+            message.sender.tell(new RentARoomMessage.HoldResponse(hotel.name, message.holdId, new ArrayList<>(), null));
+            return Effect().none();
+        }
+
+        return Effect().persist(new HotelEvent.HoldReleased(message.holdId))
+                .thenRun(updated -> publishChange(held))
+                .thenReply(message.sender, updated -> new RentARoomMessage.HoldResponse(
+                        hotel.name, message.holdId, new ArrayList<>(), null));
+    }
+
+    private Effect<HotelEvent, Hotel> confirmReservation(Hotel hotel, RentARoomMessage.ConfirmReservation message) {
+        if (!hotel.hasReservation(message.id)) {
+            replyMissingReservation(message.id, message.sender);
+            return Effect().none();
+        }
+
+        return Effect().persist(new HotelEvent.ReservationConfirmed(message.id))
+                .thenReply(message.sender, updated -> new RentARoomMessage.Done(
+                        RentARoomMessage.Done.Action.RESERVATION_CONFIRMED, hotel.name));
+    }
+
+    private Effect<HotelEvent, Hotel> cancelReservation(Hotel hotel, RentARoomMessage.CancelReservation message) {
+        Reservation reservation = hotel.getReservation(message.id);
+        if (reservation == null) {
+            replyMissingReservation(message.id, message.sender);
+            return Effect().none();
+        }
+
+        return Effect().persist(new HotelEvent.ReservationCancelled(message.id))
+                .thenRun(updated -> publishChange(reservation.date, reservation.checkOut))
+                .thenReply(message.sender, updated -> new RentARoomMessage.Done(
+                        RentARoomMessage.Done.Action.RESERVATION_CANCELLED, hotel.name));
+    }
+
+    /**
+     * Looks in the archive when the hotel doesn't have the reservation anymore.
+     */
+    private Effect<HotelEvent, Hotel> getReservation(Hotel hotel, RentARoomMessage.GetReservation message) {
+        Reservation reservation = hotel.getReservation(message.id);
+        if (reservation != null) {
+            message.sender.tell(new RentARoomMessage.SendReservation(reservation));
+            return Effect().none();
+        }
+
+        context.pipeToSelf(getArchivedReservation(message.id), (archived, ex) -> {
+            if (ex != null) {
+                context.getLog().error("[{}] Can't read the archive.", hotelName, ex);
+            }
+            return new RentARoomMessage.ArchiveLookedUp(message.sender, archived == null
+                    ? new RentARoomMessage.Rejected(new Rejection(Rejection.Reason.RESERVATION_UNKNOWN, message.id))
+                    : new RentARoomMessage.SendReservation(archived));
+        });
+        return Effect().none();
+    }
+
+    private Effect<HotelEvent, Hotel> archiveLookedUp(RentARoomMessage.ArchiveLookedUp message) {
+        message.sender.tell(message.response);
+        return Effect().none();
+    }
+
+    /**
+     * Writes the reservations that have checked out to the archive. The hotel forgets them when they're written.
+     * The reservations are copies, changes to them while they're written don't end up in the archive.
+     */
+    private Effect<HotelEvent, Hotel> archiveReservations(Hotel hotel, RentARoomMessage.ArchiveReservations message) {
+        LocalDate today = LocalDate.now();
+        List<Reservation> past = hotel.getPastReservations(today);
+        if (archiving || past.isEmpty()) {
+            return Effect().none();
+        }
+
+        archiving = true;
+        context.pipeToSelf(runArchiveTask(() -> {
+            getArchive().append(past);
+            return past.size();
+        }), (count, ex) -> {
+            if (ex != null) {
+                context.getLog().error("[{}] Can't archive the past reservations.", hotelName, ex);
+                return new RentARoomMessage.ReservationsWritten(today, 0);
+            }
+            return new RentARoomMessage.ReservationsWritten(today, count);
+        });
+        return Effect().none();
+    }
+
+    /**
+     * Lets the hotel forget the archived reservations. If writing failed they stay in the hotel until the next time.
+     * A crash before this is persisted archives them again the next time, a lookup finds the first copy.
+     */
+    private Effect<HotelEvent, Hotel> reservationsWritten(Hotel hotel, RentARoomMessage.ReservationsWritten message) {
+        archiving = false;
+        if (message.count == 0) {
+            return Effect().none();
+        }
+
+        return Effect().persist(new HotelEvent.ReservationsArchived(message.date))
+                .thenRun(updated -> context.getLog().info(
+                        "[{}] Archived {} past reservations.", hotelName, message.count));
+    }
+
+    /**
+     * Releases the unconfirmed reservations and holds that expired, and starts the timer for the next one.
+     */
+    private Effect<HotelEvent, Hotel> expireReservations(Hotel hotel, RentARoomMessage.ExpireReservations message) {
+        expiryScheduledAt = 0;
+        long now = System.currentTimeMillis();
+        List<Reservation> expired = hotel.getExpired(now);
+        if (expired.isEmpty()) {
+            scheduleExpiry(hotel);
+            return Effect().none();
+        }
+
+        return Effect().persist(new HotelEvent.ReservationsExpired(now))
+                .thenRun(updated -> {
+                    context.getLog().info("[{}] Released {} expired reservations.", hotelName, expired.size());
+                    publishChange(expired);
+                    scheduleExpiry(updated);
+                });
+    }
+
+    private Effect<HotelEvent, Hotel> requestHotelSummary(Hotel hotel, RentARoomMessage.RequestHotelSummary message) {
+        message.sender.tell(new RentARoomMessage.SendHotelSummary(hotel.getSummary(message.date, message.nights)));
+        return Effect().none();
+    }
+
+    /**
+     * Checks the availability here, so only the hotels with enough rooms send their name back.
+     */
+    private Effect<HotelEvent, Hotel> requestAvailableRooms(Hotel hotel, RentARoomMessage.RequestAvailableRooms message) {
+        int availableRooms = hotel.getAvailableRooms(message.date, message.date.plusDays(message.nights));
+        if (availableRooms >= message.minRoomCount) {
+            message.sender.tell(new RentARoomMessage.SendAvailableRooms(hotel.name, availableRooms));
+        } else {
+            message.sender.tell(new RentARoomMessage.SendAvailableRooms(null, 0));
+        }
+        return Effect().none();
+    }
+
+
+    private Hotel applyEvent(Hotel hotel, HotelEvent event) {
+        try {
+            if (event instanceof HotelEvent.HotelAdded) {
+                return new Hotel(hotelName, ((HotelEvent.HotelAdded) event).roomCount,
+                        ReservationIdGenerator.create(idGenerator));
+            } else if (event instanceof HotelEvent.HotelDeleted) {
+                return null;
+            } else if (event instanceof HotelEvent.ReservationAdded) {
+                hotel.addReservation(((HotelEvent.ReservationAdded) event).reservation);
+            } else if (event instanceof HotelEvent.ReservationConfirmed) {
+                hotel.confirmReservation(((HotelEvent.ReservationConfirmed) event).id);
+            } else if (event instanceof HotelEvent.ReservationCancelled) {
+                hotel.deleteReservation(((HotelEvent.ReservationCancelled) event).id);
+            } else if (event instanceof HotelEvent.ReservationsHeld) {
+                HotelEvent.ReservationsHeld held = (HotelEvent.ReservationsHeld) event;
+                hotel.hold(held.holdId, held.reservations, held.expiresAt);
+            } else if (event instanceof HotelEvent.HoldCommitted) {
+                hotel.commitHold(((HotelEvent.HoldCommitted) event).holdId);
+            } else if (event instanceof HotelEvent.HoldReleased) {
+                hotel.releaseHold(((HotelEvent.HoldReleased) event).holdId);
+            } else if (event instanceof HotelEvent.ReservationsExpired) {
+                hotel.expire(((HotelEvent.ReservationsExpired) event).time);
+            } else if (event instanceof HotelEvent.ReservationsArchived) {
+                hotel.archive(((HotelEvent.ReservationsArchived) event).date);
+            }
+        // Can't throw, the command handler checked the reservation or hold exists.
+        } catch (ReservationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return hotel;
+    }
+
+    /**
+     * Answers a change of a reservation the hotel doesn't have, after looking in the archive.
+     * Archived reservations can't be changed.
+     */
+    private void replyMissingReservation(String id, ActorRef<RentARoomMessage> sender) {
+        context.pipeToSelf(getArchivedReservation(id), (archived, ex) -> {
+            if (ex != null) {
+                context.getLog().error("[{}] Can't read the archive.", hotelName, ex);
+            }
+            return new RentARoomMessage.ArchiveLookedUp(sender, new RentARoomMessage.Rejected(new Rejection(
+                    archived == null ? Rejection.Reason.RESERVATION_UNKNOWN : Rejection.Reason.RESERVATION_PAST, id)));
+        });
+    }
+
+    /**
+     * Lets the AgentActors know the availability of the hotel changed on the nights in [from, to).
+     * Null dates for a change to the whole hotel.
+     */
+    private void publishChange(LocalDate from, LocalDate to) {
+        hotelChanges.tell(Topic.publish(new RentARoomMessage.HotelChanged(hotelName, from, to)));
+    }
+
+    /**
+     * Publishes a change of the nights from the first check-in to the last check-out of the reservations.
+     */
+    private void publishChange(List<Reservation> reservations) {
+        if (reservations.isEmpty()) {
+            return;
+        }
+        LocalDate from = reservations.get(0).date;
+        LocalDate to = reservations.get(0).checkOut;
+        for (Reservation reservation : reservations) {
+            from = reservation.date.isBefore(from) ? reservation.date : from;
+            to = reservation.checkOut.isAfter(to) ? reservation.checkOut : to;
+        }
+        publishChange(from, to);
+    }
+
+    /**
+     * @return The time in epoch milliseconds at which something made now expires. 0 if it doesn't expire.
+     */
+    private static long getExpiresAt(long ttl) {
+        return ttl == 0 ? 0 : System.currentTimeMillis() + ttl;
+    }
+
+    /**
+     * Starts the expiry timer for the first reservation or hold of the hotel to expire,
+     * unless the timer goes off before that already.
+     * One timer for the whole hotel, however many reservations wait to be confirmed.
+     */
+    private void scheduleExpiry(Hotel hotel) {
+        long next = hotel.getNextExpiry();
+        if (next == 0 || (expiryScheduledAt != 0 && expiryScheduledAt <= next)) {
+            return;
+        }
+        expiryScheduledAt = next;
+        timers.startSingleTimer(EXPIRY_TIMER, new RentARoomMessage.ExpireReservations(),
+                Duration.ofMillis(Math.max(0, next - System.currentTimeMillis())));
+    }
+
+    private void scheduleArchiving() {
+        if (!compactionInterval.isZero()) {
+            timers.startTimerWithFixedDelay(ARCHIVE_TIMER, new RentARoomMessage.ArchiveReservations(), compactionInterval);
+        }
+    }
+
+    /**
+     * Runs the task on the blocking dispatcher after the archive tasks that came before it.
+     * @return Completes with the result of the task, or with its exception.
+     */
+    private <T> CompletionStage<T> runArchiveTask(ArchiveTask<T> task) {
+        CompletableFuture<T> result = archiveTasks.handleAsync((previous, ex) -> {
+            try {
+                return task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, blockingExecutor);
+        archiveTasks = result;
+        return result;
+    }
+
+    /**
+     * Only called by archive tasks.
+     */
+    private ReservationArchive getArchive() throws IOException {
+        if (archive == null) {
+            archive = new ReservationArchive(ReservationArchive.getFile(archiveDir, hotelName));
+        }
+        return archive;
+    }
+
+    /**
+     * @return Completes with the archived reservation, null if it isn't archived.
+     */
+    private CompletionStage<Reservation> getArchivedReservation(String id) {
+        return runArchiveTask(() -> {
+            // Nothing archived yet, don't create the file for it.
+            if (archive == null && !Files.exists(ReservationArchive.getFile(archiveDir, hotelName))) {
+                return null;
+            }
+            return getArchive().get(id);
+        });
+    }
+
+    /**
+     * Called when the actor stops, so the result is logged on the thread of the task.
+     */
+    private void closeArchive() {
+        runArchiveTask(() -> {
+            if (archive != null) {
+                ReservationArchive closing = archive;
+                archive = null;
+                closing.close();
+            }
+            return null;
+        }).whenComplete((result, ex) -> {
+            if (ex != null) {
+                LOG.warn("[{}] Can't close the archive.", hotelName, ex);
+            }
+        });
+    }
+
+    /**
+     * The archive of a deleted hotel would be found by a new hotel with the same name.
+     */
+    private void deleteArchive() {
+        closeArchive();
+        runArchiveTask(() -> Files.deleteIfExists(ReservationArchive.getFile(archiveDir, hotelName)))
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        LOG.warn("[{}] Can't delete the archive.", hotelName, ex);
+                    }
+                });
+    }
+
+    private void register() {
+        context.getSystem().receptionist().tell(Receptionist.register(HOTEL_MANAGER_SERVICE_KEY, context.getSelf()));
+    }
+
+    /**
+     * Asks sharding to stop this actor, used when it doesn't have a hotel.
+     * Sharding would restart an actor that stops by itself, because it remembers the running actors.
+     */
+    private Effect<HotelEvent, Hotel> passivate() {
+        shard.tell(new ClusterSharding.Passivate<>(context.getSelf()));
+        return Effect().none();
     }
 
 }
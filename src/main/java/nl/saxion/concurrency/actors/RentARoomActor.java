@@ -3,27 +3,98 @@ package nl.saxion.concurrency.actors;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.*;
+import akka.actor.typed.pubsub.Topic;
+import com.typesafe.config.Config;
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.Reservation;
 import nl.saxion.concurrency.messages.RentARoomMessage;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public class RentARoomActor extends AbstractBehavior<RentARoomMessage> {
 
+    /**
+     * What the autoscaler knows of an AgentActor, from its last answer to a ProbeLoad.
+     */
+    private static class AgentLoad {
+        /**
+         * System.nanoTime() of the probe that hasn't been answered yet. 0 if there is none.
+         */
+        long probeSentAt;
+        /**
+         * Nanoseconds the last answered probe took, most of it waiting in the mailbox.
+         */
+        long wait;
+        /**
+         * Messages handled between the last two probes.
+         */
+        int handled;
+    }
+
     private final ActorRef<RentARoomMessage> agentActorGroup;
+    /**
+     * The running AgentActors of this node, the ones that are being stopped are left out.
+     */
+    private final LinkedHashMap<ActorRef<RentARoomMessage>, AgentLoad> agents;
+    private final int minAgents;
+    private final int maxAgents;
+    /**
+     * An agent is added when a probe waits longer than this in the mailbox of one of the agents.
+     */
+    private final long scaleUpWait;
+    /**
+     * An agent is stopped when the agents handle fewer messages than this per agent, for idleIntervals in a row.
+     */
+    private final int idleMessages;
+    private final int idleIntervals;
+    /**
+     * The intervals in a row the agents were idle.
+     */
+    private int idleCount;
+    /**
+     * This node's part of the topic the HotelManagerActors publish their changes to.
+     * It passes the changes on to the subscribed AgentActors on all nodes.
+     */
+    private final ActorRef<Topic.Command<RentARoomMessage>> hotelChanges;
 
 
-    public RentARoomActor(ActorContext<RentARoomMessage> context) {
+    public RentARoomActor(ActorContext<RentARoomMessage> context, TimerScheduler<RentARoomMessage> timers) {
         super(context);
 
-        GroupRouter<RentARoomMessage> group = Routers.group(AgentActor.AGENT_ACTOR_SERVICE_KEY).withRoundRobinRouting();
+        hotelChanges = context.spawn(Topic.create(RentARoomMessage.class, "HotelChanges"), "HotelChanges");
+
+        // Every node hosts a part of the hotels.
+        HotelManagerActor.initSharding(context.getSystem(), hotelChanges);
+
+        // Messages with the same routing key go to the same AgentActor, so it can answer them from its cache.
+        // Every AgentActor gets virtual-nodes places on the hash ring, so a new one only takes over about 1/N of the keys.
+        int virtualNodes = context.getSystem().settings().config().getInt("rent-a-room.agent.virtual-nodes");
+        GroupRouter<RentARoomMessage> group = Routers.group(AgentActor.AGENT_ACTOR_SERVICE_KEY)
+                .withConsistentHashingRouting(virtualNodes, RentARoomActor::getRoutingKey);
         agentActorGroup = context.spawn(group, "AgentActorGroup");
 
-        // Spawn the first AgentActor
-        context.spawn(AgentActor.create(), "AgentActor-" + UUID.randomUUID());
+        Config autoscaler = context.getSystem().settings().config().getConfig("rent-a-room.agent.autoscaler");
+        minAgents = autoscaler.getInt("min-agents");
+        maxAgents = autoscaler.getInt("max-agents");
+        scaleUpWait = autoscaler.getDuration("scale-up-wait").toNanos();
+        idleMessages = autoscaler.getInt("idle-messages");
+        idleIntervals = autoscaler.getInt("idle-intervals");
+
+        // Spawn the first AgentActors
+        agents = new LinkedHashMap<>();
+        for (int i = 0; i < Math.max(1, minAgents); i++) {
+            spawnAgent();
+        }
+        if (autoscaler.getBoolean("enabled")) {
+            timers.startTimerWithFixedDelay(new RentARoomMessage.Autoscale(), autoscaler.getDuration("interval"));
+        }
     }
 
     public static Behavior<RentARoomMessage> create() {
-        return Behaviors.setup(RentARoomActor::new);
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new RentARoomActor(context, timers)));
     }
 
 
@@ -31,23 +102,155 @@ public class RentARoomActor extends AbstractBehavior<RentARoomMessage> {
     public Receive<RentARoomMessage> createReceive() {
         return newReceiveBuilder()
                 .onMessage(RentARoomMessage.AddAgent.class, this::addAgent)
+                .onMessage(RentARoomMessage.Autoscale.class, this::autoscale)
+                .onMessage(RentARoomMessage.SendLoad.class, this::sendLoad)
+                .onMessage(RentARoomMessage.AgentStopped.class, this::agentStopped)
                 .onMessage(RentARoomMessage.class, this::routeToAgentActor)
                 .build();
     }
 
 
     private Behavior<RentARoomMessage> addAgent(RentARoomMessage.AddAgent message) {
-        getContext().spawn(AgentActor.create(), "AgentActor-" + UUID.randomUUID());
-        message.sender.tell(new RentARoomMessage.Response("A new agent has been added."));
+        spawnAgent();
+        message.sender.tell(new RentARoomMessage.Done(RentARoomMessage.Done.Action.AGENT_ADDED, null));
         return Behaviors.same();
     }
 
     /**
-     * Sends the given message to one of the AgentActors in the agentActorGroup.
+     * Adds an agent when requests wait too long in the mailbox of an agent, or stops the least busy agent
+     * when the agents were idle for long enough. Then probes the agents for the next interval.
+     * Only one agent is added or stopped per interval, so the probes can show the effect first.
+     */
+    private Behavior<RentARoomMessage> autoscale(RentARoomMessage.Autoscale message) {
+        long now = System.nanoTime();
+        long maxWait = 0;
+        int handled = 0;
+        ActorRef<RentARoomMessage> leastBusy = null;
+        for (Map.Entry<ActorRef<RentARoomMessage>, AgentLoad> entry : agents.entrySet()) {
+            AgentLoad load = entry.getValue();
+            // A probe that isn't answered yet has been waiting since it was sent.
+            maxWait = Math.max(maxWait, load.probeSentAt != 0 ? now - load.probeSentAt : load.wait);
+            handled += load.handled;
+            if (leastBusy == null || load.handled < agents.get(leastBusy).handled) {
+                leastBusy = entry.getKey();
+            }
+        }
+
+        if (maxWait > scaleUpWait && agents.size() < maxAgents) {
+            getContext().getLog().info("[{}] Requests wait {} ms, adding an agent",
+                    getContext().getSelf().path().name(), maxWait / 1_000_000);
+            spawnAgent();
+            idleCount = 0;
+        } else if (agents.size() > minAgents && handled < idleMessages * agents.size()) {
+            if (++idleCount >= idleIntervals) {
+                getContext().getLog().info("[{}] Agents handled {} messages, stopping {}",
+                        getContext().getSelf().path().name(), handled, leastBusy.path().name());
+                agents.remove(leastBusy);
+                leastBusy.tell(new RentARoomMessage.StopAgent());
+                idleCount = 0;
+            }
+        } else {
+            idleCount = 0;
+        }
+
+        for (Map.Entry<ActorRef<RentARoomMessage>, AgentLoad> entry : agents.entrySet()) {
+            // Don't queue another probe behind one that's still waiting.
+            if (entry.getValue().probeSentAt == 0) {
+                entry.getValue().probeSentAt = now;
+                entry.getKey().tell(new RentARoomMessage.ProbeLoad(getContext().getSelf(), now));
+            }
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<RentARoomMessage> sendLoad(RentARoomMessage.SendLoad message) {
+        AgentLoad load = agents.get(message.agent);
+        // Null if the agent is being stopped.
+        if (load != null && load.probeSentAt == message.sentAt) {
+            load.probeSentAt = 0;
+            load.wait = System.nanoTime() - message.sentAt;
+            load.handled = message.handled;
+        }
+        return Behaviors.same();
+    }
+
+    private Behavior<RentARoomMessage> agentStopped(RentARoomMessage.AgentStopped message) {
+        agents.remove(message.agent);
+        return Behaviors.same();
+    }
+
+    /**
+     * Sends the given message to the AgentActor in the agentActorGroup that handles its routing key.
+     * Clients send their requests to the agents with an AgentRouter, this is for the requests that are sent
+     * to the system before the AgentRouter knows the agents, and for clients without one, like the tests.
+     * @see #getRoutingKey(RentARoomMessage)
+     * @see nl.saxion.concurrency.AgentRouter
      */
     private Behavior<RentARoomMessage> routeToAgentActor(RentARoomMessage message) {
         agentActorGroup.tell(message);
         return Behaviors.same();
     }
 
+
+    /**
+     * Spawns an AgentActor, it joins the agentActorGroup itself.
+     */
+    private void spawnAgent() {
+        ActorRef<RentARoomMessage> agent = getContext().spawn(
+                AgentActor.create(hotelChanges), "AgentActor-" + UUID.randomUUID());
+        getContext().watchWith(agent, new RentARoomMessage.AgentStopped(agent));
+        agents.put(agent, new AgentLoad());
+    }
+
+    /**
+     * @return The key that decides which AgentActor handles the message:
+     * the hotel key for messages about a hotel or one of its reservations,
+     * the stay for searches, which the AgentActors cache, and the customer for the reservations of a customer.
+     * @see nl.saxion.concurrency.domain.Hotel#getKey(String)
+     */
+    public static String getRoutingKey(RentARoomMessage message) {
+        if (message instanceof RentARoomMessage.AddHotel) {
+            return getHotelRoutingKey(((RentARoomMessage.AddHotel) message).name);
+        } else if (message instanceof RentARoomMessage.DeleteHotel) {
+            return getHotelRoutingKey(((RentARoomMessage.DeleteHotel) message).name);
+        } else if (message instanceof RentARoomMessage.ListReservations) {
+            return getHotelRoutingKey(((RentARoomMessage.ListReservations) message).hotelName);
+        } else if (message instanceof RentARoomMessage.ConfirmReservation) {
+            return getReservationRoutingKey(((RentARoomMessage.ConfirmReservation) message).id);
+        } else if (message instanceof RentARoomMessage.CancelReservation) {
+            return getReservationRoutingKey(((RentARoomMessage.CancelReservation) message).id);
+        } else if (message instanceof RentARoomMessage.GetReservation) {
+            return getReservationRoutingKey(((RentARoomMessage.GetReservation) message).id);
+        } else if (message instanceof RentARoomMessage.ListAvailableRooms) {
+            RentARoomMessage.ListAvailableRooms list = (RentARoomMessage.ListAvailableRooms) message;
+            return "stay:" + list.date + "/" + list.nights;
+        } else if (message instanceof RentARoomMessage.SearchAvailableRooms) {
+            RentARoomMessage.SearchAvailableRooms search = (RentARoomMessage.SearchAvailableRooms) message;
+            return "stay:" + search.date + "/" + search.nights;
+        } else if (message instanceof RentARoomMessage.ListCustomerReservations) {
+            return "customer:" + ((RentARoomMessage.ListCustomerReservations) message).customer;
+        } else if (message instanceof RentARoomMessage.RequestReservationsMultiHotels) {
+            for (ArrayList<Reservation> reservations
+                    : ((RentARoomMessage.RequestReservationsMultiHotels) message).reservations.values()) {
+                if (!reservations.isEmpty()) {
+                    return "customer:" + reservations.get(0).customer;
+                }
+            }
+        }
+        // ListHotels and the rest have nothing to spread on, they all go to the same AgentActor.
+        return message.getClass().getSimpleName();
+    }
+
+    private static String getHotelRoutingKey(String hotelName) {
+        return hotelName == null ? "hotel" : "hotel:" + Hotel.getKey(hotelName);
+    }
+
+    /**
+     * The id starts with the key of its hotel, so it goes to the same AgentActor as the messages with the hotel name.
+     */
+    private static String getReservationRoutingKey(String reservationId) {
+        Long hotelKey = reservationId == null ? null : Reservation.getHotelKey(reservationId);
+        return hotelKey == null ? "reservation:" + reservationId : "hotel:" + hotelKey;
+    }
+
 }
@@ -0,0 +1,125 @@
+package nl.saxion.concurrency.domain;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Summaries of hotels per stay, so an AgentActor can answer repeated searches without asking all hotels.
+ * Holds at most maxStays stays, the least recently used stay is dropped first.
+ * <p>
+ * A change to a hotel only drops that hotel from the stays that overlap the change,
+ * so the next search for such a stay only has to ask the changed hotels.
+ * Summaries of a null date are used for their room and reservation counts, they're dropped on every change.
+ * <p>
+ * Not thread-safe, it's used by one actor.
+ */
+public class AvailabilityCache {
+
+    private final int maxStays;
+    /**
+     * <Stay, <Hotel name, Summary>> in least recently used order.
+     */
+    private final LinkedHashMap<Stay, HashMap<String, HotelSummary>> stays;
+    /**
+     * The version at which every hotel last changed <Hotel name, Version>.
+     * Summaries that were requested before that version are outdated.
+     */
+    private final HashMap<String, Long> changedAt;
+    private long version;
+
+
+    public AvailabilityCache(int maxStays) {
+        this.maxStays = maxStays;
+        // Access order, so the eldest entry is the least recently used stay.
+        this.stays = new LinkedHashMap<Stay, HashMap<String, HotelSummary>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Stay, HashMap<String, HotelSummary>> eldest) {
+                return size() > AvailabilityCache.this.maxStays;
+            }
+        };
+        this.changedAt = new HashMap<>();
+        this.version = 0;
+    }
+
+
+    /**
+     * @return The version to pass to put() with the summaries that are requested now.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return A read-only view of the known summaries of the stay <Hotel name, Summary>. Hotels that changed are missing.
+     */
+    public Map<String, HotelSummary> get(LocalDate date, int nights) {
+        HashMap<String, HotelSummary> summaries = stays.get(new Stay(date, nights));
+        if (summaries == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(summaries);
+    }
+
+    /**
+     * Adds the summaries of the stay, except those of hotels that changed after they were requested.
+     * @param requestedAt The version when the summaries were requested.
+     */
+    public void put(LocalDate date, int nights, Collection<HotelSummary> summaries, long requestedAt) {
+        HashMap<String, HotelSummary> known = stays.computeIfAbsent(new Stay(date, nights), stay -> new HashMap<>());
+        for (HotelSummary summary : summaries) {
+            if (changedAt.getOrDefault(summary.name, 0L) <= requestedAt) {
+                known.put(summary.name, summary);
+            }
+        }
+    }
+
+    /**
+     * Drops the hotel from every stay with a night in [from, to). Null dates drop it from every stay.
+     */
+    public void invalidate(String hotelName, LocalDate from, LocalDate to) {
+        version++;
+        changedAt.put(hotelName, version);
+        for (Map.Entry<Stay, HashMap<String, HotelSummary>> entry : stays.entrySet()) {
+            if (from == null || to == null || entry.getKey().overlaps(from, to)) {
+                entry.getValue().remove(hotelName);
+            }
+        }
+    }
+
+
+    /**
+     * A check-in date with an amount of nights.
+     */
+    private static class Stay {
+        final LocalDate date;
+        final int nights;
+
+        Stay(LocalDate date, int nights) {
+            this.date = date;
+            this.nights = nights;
+        }
+
+        boolean overlaps(LocalDate from, LocalDate to) {
+            return date == null || (date.isBefore(to) && from.isBefore(date.plusDays(nights)));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Stay)) {
+                return false;
+            }
+            return Objects.equals(date, ((Stay) other).date) && nights == ((Stay) other).nights;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(date, nights);
+        }
+    }
+
+}
@@ -1,80 +1,496 @@
 package nl.saxion.concurrency.domain;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
 
-public class Hotel implements Serializable {
+public class Hotel {
 
     public final String name;
     /**
      * Amount of rooms the hotel can reserve
      */
     public final int roomCount;
-    private final HashMap<String, Reservation> reservations;
+    /**
+     * Hash of the name. The first half of the ids of the hotel's reservations.
+     * @see #getKey(String)
+     */
+    public final long key;
+    /**
+     * The added reservations, as rows of primitives. Reservation objects are only made for the callers of Hotel.
+     */
+    private final ReservationTable reservations;
+    /**
+     * Amount of reserved rooms per night.
+     * Kept up to date on every change to reservations so getAvailableRooms doesn't have to loop over them.
+     */
+    private final RoomCalendar reservedRooms;
+    /**
+     * Reservations that are held for a booking over multiple hotels <Hold id, Hold>.
+     * Their rooms count as reserved, but they're only added to reservations when the hold is committed.
+     */
+    private final HashMap<String, Hold> holds;
+    /**
+     * The holds that expire, the first to expire first.
+     */
+    private final TreeSet<Hold> holdExpiries;
+    private final ReservationIdGenerator idGenerator;
 
 
     public Hotel(String name, int roomCount) {
+        this(name, roomCount, new ReservationIdGenerator.Snowflake());
+    }
+
+    /**
+     * @param idGenerator Makes the last 64 bits of the ids of the reservations.
+     */
+    public Hotel(String name, int roomCount, ReservationIdGenerator idGenerator) {
         this.name = name;
         this.roomCount = roomCount;
+        this.key = getKey(name);
+        this.idGenerator = idGenerator;
 
-        this.reservations = new HashMap<>();
+        this.reservations = new ReservationTable();
+        this.reservedRooms = new RoomCalendar();
+        this.holds = new HashMap<>();
+        this.holdExpiries = new TreeSet<>();
     }
 
 
-    public HashMap<String, Reservation> getReservations(String customer) {
-        // Clone the class reservation list so it doesn't get modified on the next line.
-        HashMap<String, Reservation> filtered = (HashMap<String, Reservation>) reservations.clone();
-        // Remove all reservations that don't have the given customer.
-        filtered.entrySet().removeIf(entry -> !entry.getValue().customer.equals(customer));
-        return filtered;
+    /**
+     * @return The reservations of the given customer, in the order they were added.
+     */
+    public ArrayList<Reservation> getReservations(String customer) {
+        ArrayList<Reservation> customerReservations = new ArrayList<>();
+        for (int row = reservations.getFirstOfCustomer(customer);
+             row != ReservationTable.NONE;
+             row = reservations.getNextOfCustomer(row)) {
+            customerReservations.add(toReservation(row));
+        }
+        return customerReservations;
+    }
+
+    /**
+     * @return The reservation with the given id, null if the hotel doesn't have it.
+     */
+    public Reservation getReservation(String reservationId) {
+        int row = findRow(reservationId);
+        return row == ReservationTable.NONE ? null : toReservation(row);
     }
 
     public boolean hasReservation(String reservationId) {
-        return reservations.containsKey(reservationId);
+        return findRow(reservationId) != ReservationTable.NONE;
+    }
+
+    /**
+     * Checks if the hotel has enough rooms for the reservation and gives it an id. Doesn't add it.
+     * @param pending Reservations that are created but not added yet. Their rooms count as reserved.
+     * @return A copy of the reservation with an id that contains the key of this hotel.
+     * @throws ReservationException With the Rejection, if the reservation doesn't fit.
+     * @see #addReservation(Reservation)
+     */
+    public Reservation createReservation(Reservation reservation, List<Reservation> pending) throws ReservationException {
+        return createReservation(reservation, pending, 0);
     }
 
-    public void addReservation(Reservation reservation) throws ReservationException {
-        // Check if the reservation asks for more rooms than is available on its date.
-        if (getAvailableRooms(reservation.date) - reservation.roomCount < 0) {
-            throw new ReservationException(name + " doesn't have " + reservation.roomCount + " rooms available.");
+    /**
+     * Like createReservation(Reservation, List), for a reservation that's released if it isn't confirmed in time.
+     * @param expiresAt Time in epoch milliseconds after which the reservation is released. 0 if it doesn't expire.
+     */
+    public Reservation createReservation(Reservation reservation, List<Reservation> pending, long expiresAt)
+            throws ReservationException {
+        if (!RoomCalendar.covers(reservation.date, reservation.checkOut)) {
+            throw new ReservationException(new Rejection(Rejection.Reason.DATE_NOT_TAKEN, name, 0, reservation.date));
+        }
+
+        // Counts the pending reservations in the calendar for the check, and takes them out again afterwards.
+        for (Reservation other : pending) {
+            reservedRooms.add(other.date, other.checkOut, other.roomCount);
         }
-        reservations.put(reservation.id, reservation);
+        int availableRooms = getAvailableRooms(reservation.date, reservation.checkOut);
+        for (Reservation other : pending) {
+            reservedRooms.add(other.date, other.checkOut, -other.roomCount);
+        }
+        // Check if the reservation asks for more rooms than is available on any night of its stay.
+        if (availableRooms - reservation.roomCount < 0) {
+            throw new ReservationException(
+                    new Rejection(Rejection.Reason.NOT_ENOUGH_ROOMS, name, reservation.roomCount, null));
+        }
+
+        long id;
+        do {
+            id = idGenerator.nextId();
+        } while (reservations.find(id) != ReservationTable.NONE);
+        // The only time the id is formatted, the hotel itself keeps it as a number.
+        return new Reservation(
+                new UUID(key, id).toString(),
+                reservation.customer,
+                reservation.roomCount,
+                reservation.date,
+                reservation.checkOut,
+                expiresAt);
+    }
+
+    /**
+     * Adds a reservation made by createReservation.
+     * @see #createReservation(Reservation, List)
+     */
+    public void addReservation(Reservation reservation) {
+        putReservation(reservation);
+        reservedRooms.add(reservation.date, reservation.checkOut, reservation.roomCount);
+    }
+
+    /**
+     * Holds reservations made by createReservation until the hold is committed or released.
+     * The held rooms can't be reserved by others in the meantime.
+     * @param expiresAt Time in epoch milliseconds after which the hold is released. 0 if it doesn't expire.
+     * @see #commitHold(String)
+     * @see #releaseHold(String)
+     */
+    public void hold(String holdId, List<Reservation> held, long expiresAt) {
+        Hold hold = new Hold(holdId, new ArrayList<>(held), expiresAt);
+        holds.put(holdId, hold);
+        if (expiresAt != 0) {
+            holdExpiries.add(hold);
+        }
+        for (Reservation reservation : held) {
+            reservedRooms.add(reservation.date, reservation.checkOut, reservation.roomCount);
+        }
+    }
+
+    /**
+     * @return The reservations of the hold, null if the hotel doesn't have the hold.
+     */
+    public List<Reservation> getHold(String holdId) {
+        Hold hold = holds.get(holdId);
+        return hold == null ? null : Collections.unmodifiableList(hold.reservations);
+    }
+
+    /**
+     * Adds the reservations of the hold. Their rooms are reserved already.
+     */
+    public void commitHold(String holdId) throws ReservationException {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            throw new ReservationException(name + " doesn't hold " + holdId + ".");
+        }
+        holdExpiries.remove(hold);
+        for (Reservation reservation : hold.reservations) {
+            putReservation(reservation);
+        }
+    }
+
+    /**
+     * Frees the rooms of the hold. Does nothing if the hotel doesn't have the hold.
+     */
+    public void releaseHold(String holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold == null) {
+            return;
+        }
+        holdExpiries.remove(hold);
+        for (Reservation reservation : hold.reservations) {
+            reservedRooms.add(reservation.date, reservation.checkOut, -reservation.roomCount);
+        }
+    }
+
+    private void putReservation(Reservation reservation) {
+        reservations.add(
+                UUID.fromString(reservation.id).getLeastSignificantBits(),
+                reservation.customer,
+                reservation.roomCount,
+                (int) reservation.date.toEpochDay(),
+                (int) reservation.checkOut.toEpochDay(),
+                reservation.expiresAt,
+                reservation.getConfirmed());
     }
 
     public void deleteReservation(String reservationId) throws ReservationException {
-        Reservation reservation = reservations.get(reservationId);
-        if (reservation == null) {
+        int row = findRow(reservationId);
+        if (row == ReservationTable.NONE) {
             throw new ReservationException(String.format(
                     "There is no reservation with Id: %s in %s.",
                     reservationId, name));
         }
-        reservations.remove(reservationId);
+        deleteRow(row);
     }
 
 
     public void confirmReservation(String reservationId) throws ReservationException {
-        Reservation reservation = reservations.get(reservationId);
-        if (reservation == null)
+        int row = findRow(reservationId);
+        if (row == ReservationTable.NONE)
             throw new ReservationException(String.format(
                     "There is no reservation with Id: %s in %s.",
                     reservationId, name));
 
-        reservation.setConfirmed(true);
+        reservations.confirm(row);
+    }
+
+
+    /**
+     * @return The reservations that check out on the given date or before, in no particular order.
+     */
+    public List<Reservation> getPastReservations(LocalDate date) {
+        ArrayList<Reservation> past = new ArrayList<>();
+        int day = (int) date.toEpochDay();
+        for (int row = 0; row < reservations.getRowCount(); row++) {
+            if (reservations.isUsed(row) && reservations.getCheckOut(row) <= day) {
+                past.add(toReservation(row));
+            }
+        }
+        return past;
     }
 
+    /**
+     * Forgets the reservations that check out on the given date or before, after they've been archived.
+     * Their nights stay reserved, so the availability of past dates doesn't change.
+     * @see #getPastReservations(LocalDate)
+     */
+    public void archive(LocalDate date) {
+        int day = (int) date.toEpochDay();
+        for (int row = 0; row < reservations.getRowCount(); row++) {
+            if (reservations.isUsed(row) && reservations.getCheckOut(row) <= day) {
+                reservations.remove(row);
+            }
+        }
+    }
 
     /**
-     * @return Amount of rooms that don't have a reservation on the given date.
+     * @return The unconfirmed reservations and the held reservations that expire at the given time or before.
+     */
+    public List<Reservation> getExpired(long time) {
+        ArrayList<Reservation> expired = new ArrayList<>();
+        reservations.forEachUnconfirmed(time, row -> expired.add(toReservation(row)));
+        for (Hold hold : holdExpiries) {
+            if (hold.expiresAt > time) {
+                break;
+            }
+            expired.addAll(hold.reservations);
+        }
+        return expired;
+    }
+
+    /**
+     * Deletes the unconfirmed reservations and releases the holds that expire at the given time or before.
+     * Both are kept in the order they expire, so only the expired ones and the first that doesn't expire yet are looked at.
+     * That order doesn't depend on when they were added, a committed hold keeps the expiry its reservations got
+     * when they were held, and the time to live may have been changed since.
+     * @see #getExpired(long)
+     */
+    public void expire(long time) {
+        int row = reservations.getFirstUnconfirmed();
+        while (row != ReservationTable.NONE && reservations.getExpiresAt(row) <= time) {
+            deleteRow(row);
+            row = reservations.getFirstUnconfirmed();
+        }
+
+        while (!holdExpiries.isEmpty() && holdExpiries.first().expiresAt <= time) {
+            releaseHold(holdExpiries.first().id);
+        }
+    }
+
+    /**
+     * @return Time in epoch milliseconds of the first reservation or hold to expire. 0 if none of them expire.
+     */
+    public long getNextExpiry() {
+        long next = 0;
+        if (reservations.getFirstUnconfirmed() != ReservationTable.NONE) {
+            next = reservations.getExpiresAt(reservations.getFirstUnconfirmed());
+        }
+        if (!holdExpiries.isEmpty()) {
+            long hold = holdExpiries.first().expiresAt;
+            if (next == 0 || hold < next) {
+                next = hold;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return The row of the reservation, NONE if the id isn't a reservation of this hotel.
+     */
+    private int findRow(String reservationId) {
+        UUID id;
+        try {
+            id = UUID.fromString(reservationId);
+        } catch (IllegalArgumentException ex) {
+            return ReservationTable.NONE;
+        }
+        if (id.getMostSignificantBits() != key) {
+            return ReservationTable.NONE;
+        }
+        return reservations.find(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Removes the reservation and frees its rooms.
+     */
+    private void deleteRow(int row) {
+        reservedRooms.add(
+                LocalDate.ofEpochDay(reservations.getCheckIn(row)),
+                LocalDate.ofEpochDay(reservations.getCheckOut(row)),
+                -reservations.getRoomCount(row));
+        reservations.remove(row);
+    }
+
+    /**
+     * Makes a Reservation of a row, for the callers of Hotel. Changing it doesn't change the hotel.
+     */
+    private Reservation toReservation(int row) {
+        Reservation reservation = new Reservation(
+                new UUID(key, reservations.getId(row)).toString(),
+                reservations.getCustomer(row),
+                reservations.getRoomCount(row),
+                LocalDate.ofEpochDay(reservations.getCheckIn(row)),
+                LocalDate.ofEpochDay(reservations.getCheckOut(row)),
+                reservations.getExpiresAt(row));
+        reservation.setConfirmed(reservations.isConfirmed(row));
+        return reservation;
+    }
+
+
+    /**
+     * @return Amount of rooms that don't have a reservation on the night of the given date.
      */
     public int getAvailableRooms(LocalDate date) {
-        int availableRooms = this.roomCount;
-        for (Reservation reservation : reservations.values()) {
-            if (reservation.date == date) {
-                availableRooms -= reservation.roomCount;
+        return getAvailableRooms(date, date.plusDays(1));
+    }
+
+    /**
+     * @return Amount of rooms that don't have a reservation on any of the nights from checkIn until checkOut.
+     */
+    public int getAvailableRooms(LocalDate checkIn, LocalDate checkOut) {
+        return roomCount - reservedRooms.getMaxReserved(checkIn, checkOut);
+    }
+
+
+    /**
+     * @return A 64 bit FNV-1a hash of the given hotel name.
+     * It's part of every reservation id, so the hotel of a reservation can be found without asking all hotels.
+     * @see Reservation#getHotelKey(String)
+     */
+    public static long getKey(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+
+    /**
+     * @return A snapshot of this hotel with its availability for the given amount of nights from date.
+     */
+    public HotelSummary getSummary(LocalDate date, int nights) {
+        return new HotelSummary(name, roomCount, reservations.size(), date, nights,
+                getAvailableRooms(date, date.plusDays(nights)));
+    }
+
+
+    /**
+     * Writes everything of the hotel, so readFrom makes a hotel that behaves the same.
+     * The reservations are written per customer, in the order they were added.
+     * @see #readFrom(DataInput)
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        writeString(name, out);
+        out.writeInt(roomCount);
+        idGenerator.writeTo(out);
+        reservations.writeTo(out);
+        reservedRooms.writeTo(out);
+        out.writeInt(holds.size());
+        for (Hold hold : holds.values()) {
+            writeString(hold.id, out);
+            out.writeLong(hold.expiresAt);
+            out.writeInt(hold.reservations.size());
+            for (Reservation reservation : hold.reservations) {
+                writeString(reservation.id, out);
+                writeString(reservation.customer, out);
+                out.writeInt(reservation.roomCount);
+                out.writeLong(reservation.date.toEpochDay());
+                out.writeLong(reservation.checkOut.toEpochDay());
+                out.writeLong(reservation.expiresAt);
+                out.writeBoolean(reservation.getConfirmed());
             }
         }
-        return availableRooms;
+    }
+
+    /**
+     * @return A hotel written by writeTo.
+     * @see #writeTo(DataOutput)
+     */
+    public static Hotel readFrom(DataInput in) throws IOException {
+        Hotel hotel = new Hotel(readString(in), in.readInt(), ReservationIdGenerator.readFrom(in));
+        hotel.reservations.readFrom(in);
+        hotel.reservedRooms.readFrom(in);
+        int holdCount = in.readInt();
+        for (int i = 0; i < holdCount; i++) {
+            String holdId = readString(in);
+            long expiresAt = in.readLong();
+            int size = in.readInt();
+            ArrayList<Reservation> held = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                Reservation reservation = new Reservation(readString(in), readString(in), in.readInt(),
+                        LocalDate.ofEpochDay(in.readLong()), LocalDate.ofEpochDay(in.readLong()), in.readLong());
+                reservation.setConfirmed(in.readBoolean());
+                held.add(reservation);
+            }
+            Hold hold = new Hold(holdId, held, expiresAt);
+            hotel.holds.put(holdId, hold);
+            if (expiresAt != 0) {
+                hotel.holdExpiries.add(hold);
+            }
+        }
+        return hotel;
+    }
+
+    /**
+     * Its length and UTF-8 bytes, writeUTF doesn't take strings over 64 KB.
+     */
+    static void writeString(String string, DataOutput out) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Ordered by expiry, and by id for holds that expire at the same time.
+     */
+    private static class Hold implements Comparable<Hold> {
+        final String id;
+        final ArrayList<Reservation> reservations;
+        /**
+         * Time in epoch milliseconds after which the hold is released. 0 if it doesn't expire.
+         */
+        final long expiresAt;
+
+        Hold(String id, ArrayList<Reservation> reservations, long expiresAt) {
+            this.id = id;
+            this.reservations = reservations;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public int compareTo(Hold other) {
+            int order = Long.compare(expiresAt, other.expiresAt);
+            return order != 0 ? order : id.compareTo(other.id);
+        }
     }
 
 
@@ -0,0 +1,48 @@
+package nl.saxion.concurrency.domain;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Immutable snapshot of a hotel with its availability for a stay.
+ * Send instead of the Hotel itself, so its reservations don't have to be copied between actors.
+ * @see Hotel#getSummary(LocalDate, int)
+ */
+public class HotelSummary implements Serializable {
+
+    public final String name;
+    public final int roomCount;
+    public final int reservationCount;
+    /**
+     * Check-in date of the stay.
+     */
+    public final LocalDate date;
+    public final int nights;
+    /**
+     * Amount of rooms that don't have a reservation on any of the nights of the stay.
+     */
+    public final int availableRooms;
+
+
+    public HotelSummary(String name, int roomCount, int reservationCount, LocalDate date, int nights,
+                        int availableRooms) {
+        this.name = name;
+        this.roomCount = roomCount;
+        this.reservationCount = reservationCount;
+        this.date = date;
+        this.nights = nights;
+        this.availableRooms = availableRooms;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s: Rooms: %d, Reservations: %d",
+                name,
+                roomCount,
+                reservationCount
+        );
+    }
+
+}
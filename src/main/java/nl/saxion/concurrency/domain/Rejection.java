@@ -0,0 +1,72 @@
+package nl.saxion.concurrency.domain;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Why a hotel or reservation request can't be done, as a reason code with the hotel or reservation it's about.
+ * Actors send it as it is, the text for the user is only made by StartAkka.
+ * @see nl.saxion.concurrency.StartAkka#render(nl.saxion.concurrency.messages.RentARoomMessage)
+ */
+public class Rejection implements Serializable {
+
+    public enum Reason {
+        HOTEL_UNKNOWN,
+        HOTEL_EXISTS,
+        /**
+         * The name has the same key as a hotel that's in our system, so their reservation ids would be ambiguous.
+         */
+        HOTEL_NAME_TAKEN,
+        HOTEL_NO_ANSWER,
+        /**
+         * The hotel doesn't hold the reservations of a booking anymore, they expired.
+         */
+        HOLD_GONE,
+        NOT_ENOUGH_ROOMS,
+        /**
+         * The stay isn't in the period the hotel takes reservations for.
+         */
+        DATE_NOT_TAKEN,
+        RESERVATION_UNKNOWN,
+        /**
+         * The reservation is archived, it can't be changed anymore.
+         */
+        RESERVATION_PAST
+    }
+
+    public final Reason reason;
+    /**
+     * The name of the hotel, or the id of the reservation for RESERVATION_UNKNOWN and RESERVATION_PAST.
+     */
+    public final String subject;
+    /**
+     * The rooms that were asked for, with NOT_ENOUGH_ROOMS. 0 otherwise.
+     */
+    public final int roomCount;
+    /**
+     * The check-in date, with DATE_NOT_TAKEN. Null otherwise.
+     */
+    public final LocalDate date;
+
+
+    public Rejection(Reason reason, String subject) {
+        this(reason, subject, 0, null);
+    }
+
+    public Rejection(Reason reason, String subject, int roomCount, LocalDate date) {
+        this.reason = reason;
+        this.subject = subject;
+        this.roomCount = roomCount;
+        this.date = date;
+    }
+
+
+    /**
+     * For logs, the user gets the rendered text.
+     */
+    @Override
+    public String toString() {
+        return reason + " " + subject;
+    }
+
+}
@@ -1,13 +1,17 @@
 package nl.saxion.concurrency.domain;
 
+import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
-public class Reservation {
+public class Reservation implements Serializable {
 
     /**
-     * Unique UUID to identify the reservation.
+     * Unique id to identify the reservation. It has the format of a UUID.
+     * The first 64 bits are the key of the hotel that owns the reservation.
+     * Given by the hotel when the reservation is added, null before that.
+     * @see Hotel#addReservation(Reservation)
      */
     public final String id;
     /**
@@ -18,21 +22,85 @@ public class Reservation {
      * Amount of rooms to reserve.
      */
     public final int roomCount;
+    /**
+     * Check-in date, the first night of the stay.
+     */
     public final LocalDate date;
+    /**
+     * Check-out date, the day after the last night of the stay.
+     */
+    public final LocalDate checkOut;
+    /**
+     * Time in epoch milliseconds after which the hotel releases the reservation if it isn't confirmed.
+     * 0 if it doesn't expire.
+     */
+    public final long expiresAt;
 
     private boolean confirmed;
 
 
+    /**
+     * Makes a reservation request for one night. The hotel gives it an id when it's added.
+     */
     public Reservation(String customer, int roomCount, LocalDate date) {
+        this(null, customer, roomCount, date);
+    }
+
+    /**
+     * Makes a reservation request for the nights from checkIn until checkOut. The hotel gives it an id when it's added.
+     */
+    public Reservation(String customer, int roomCount, LocalDate checkIn, LocalDate checkOut) {
+        this(null, customer, roomCount, checkIn, checkOut);
+    }
+
+    public Reservation(String id, String customer, int roomCount, LocalDate date) {
+        this(id, customer, roomCount, date, date.plusDays(1));
+    }
+
+    public Reservation(String id, String customer, int roomCount, LocalDate checkIn, LocalDate checkOut) {
+        this(id, customer, roomCount, checkIn, checkOut, 0);
+    }
+
+    /**
+     * @throws IllegalArgumentException If checkOut isn't after checkIn.
+     */
+    public Reservation(String id, String customer, int roomCount, LocalDate checkIn, LocalDate checkOut,
+                       long expiresAt) {
+        if (!checkOut.isAfter(checkIn)) {
+            throw new IllegalArgumentException("The check-out date has to be after the check-in date.");
+        }
+        this.id = id;
         this.customer = customer;
         this.roomCount = roomCount;
-        this.date = date;
+        this.date = checkIn;
+        this.checkOut = checkOut;
+        this.expiresAt = expiresAt;
 
-        this.id = UUID.randomUUID().toString();
         this.confirmed = false;
     }
 
 
+    /**
+     * @return The key of the hotel that owns the reservation with the given id.
+     * Null if the id doesn't have the right format.
+     * @see Hotel#getKey(String)
+     */
+    public static Long getHotelKey(String reservationId) {
+        try {
+            return UUID.fromString(reservationId).getMostSignificantBits();
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+
+    /**
+     * @return Amount of nights of the stay.
+     */
+    public long getNights() {
+        return checkOut.toEpochDay() - date.toEpochDay();
+    }
+
     public boolean getConfirmed() {
         return confirmed;
     }
@@ -45,12 +113,14 @@ public class Reservation {
     @Override
     public String toString() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        return String.format(
+        String text = String.format(
                 "Id: %s, Rooms: %d, Date: %s",
                 id,
                 roomCount,
                 date.format(formatter)
         );
+        // One night is shown as a single date, like before stays could be longer.
+        return getNights() == 1 ? text : text + " to " + checkOut.format(formatter);
     }
 
 }
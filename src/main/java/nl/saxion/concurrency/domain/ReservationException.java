@@ -2,6 +2,11 @@ package nl.saxion.concurrency.domain;
 
 public class ReservationException extends Exception {
 
+    /**
+     * Why the reservation can't be made. Null for the other problems.
+     */
+    private final Rejection rejection;
+
     /**
      * Thrown by Hotel to say why there was a problem bound to a Reservation.
      * @see Hotel
@@ -9,6 +14,26 @@ public class ReservationException extends Exception {
      */
     public ReservationException(String message) {
         super(message);
+        rejection = null;
+    }
+
+    /**
+     * Thrown by Hotel when a reservation can't be made. That's a normal answer to a request,
+     * so it doesn't fill in a stack trace or a message.
+     */
+    public ReservationException(Rejection rejection) {
+        super(null, null, false, false);
+        this.rejection = rejection;
+    }
+
+
+    public Rejection getRejection() {
+        return rejection;
+    }
+
+    @Override
+    public String getMessage() {
+        return rejection == null ? super.getMessage() : rejection.toString();
     }
 
 }
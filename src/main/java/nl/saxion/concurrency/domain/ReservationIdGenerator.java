@@ -0,0 +1,111 @@
+package nl.saxion.concurrency.domain;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Makes the last 64 bits of the ids of a hotel's reservations. The first 64 bits are the key of the hotel,
+ * so a reservation can be routed to its hotel by id.
+ * A hotel is used by one actor at a time, so a generator doesn't need locks. It's stored with the hotel in snapshots.
+ * @see Hotel#createReservation(Reservation, java.util.List)
+ */
+public interface ReservationIdGenerator {
+
+    /**
+     * @return The next id. Never 0.
+     */
+    long nextId();
+
+    /**
+     * Writes the type and the state of the generator, so the hotel keeps making the same kind of ids after a restart.
+     * @see #readFrom(DataInput)
+     */
+    void writeTo(DataOutput out) throws IOException;
+
+    /**
+     * @param type "snowflake" or "random", like rent-a-room.hotel.id-generator.
+     * @throws IllegalArgumentException If there is no generator of the type.
+     */
+    static ReservationIdGenerator create(String type) {
+        switch (type) {
+            case "snowflake":
+                return new Snowflake();
+            case "random":
+                return new Random();
+            default:
+                throw new IllegalArgumentException("There is no reservation id generator " + type + ".");
+        }
+    }
+
+
+    /**
+     * @return A generator written by writeTo.
+     */
+    static ReservationIdGenerator readFrom(DataInput in) throws IOException {
+        String type = in.readUTF();
+        ReservationIdGenerator generator = create(type);
+        if (generator instanceof Snowflake) {
+            ((Snowflake) generator).lastTime = in.readLong();
+            ((Snowflake) generator).sequence = in.readLong();
+        }
+        return generator;
+    }
+
+
+    /**
+     * Milliseconds since 2020 in the first 41 bits and a counter in the last 23, so ids go up and don't repeat.
+     * That's 8 million ids per millisecond, after that the ids borrow from the next millisecond.
+     * The time never goes back, also when the clock does.
+     */
+    class Snowflake implements ReservationIdGenerator {
+        private static final long EPOCH = 1577836800000L;
+        private static final int SEQUENCE_BITS = 23;
+        private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+        private long lastTime;
+        private long sequence;
+
+        @Override
+        public long nextId() {
+            long time = System.currentTimeMillis() - EPOCH;
+            if (time > lastTime) {
+                lastTime = time;
+                sequence = 0;
+            } else if (++sequence > SEQUENCE_MASK) {
+                lastTime++;
+                sequence = 0;
+            }
+            // The time is after 2020, so the id isn't 0.
+            return (lastTime << SEQUENCE_BITS) | sequence;
+        }
+
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeUTF("snowflake");
+            out.writeLong(lastTime);
+            out.writeLong(sequence);
+        }
+    }
+
+    /**
+     * Random ids from the random generator of the thread, shared by nothing else.
+     */
+    class Random implements ReservationIdGenerator {
+        @Override
+        public long nextId() {
+            long id;
+            do {
+                id = ThreadLocalRandom.current().nextLong();
+            } while (id == 0);
+            return id;
+        }
+
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeUTF("random");
+        }
+    }
+
+}
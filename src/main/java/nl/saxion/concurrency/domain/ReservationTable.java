@@ -0,0 +1,493 @@
+package nl.saxion.concurrency.domain;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * The reservations of a hotel, stored column by column in arrays of primitives instead of as Reservation objects.
+ * A reservation is a row: an index in every column. Rows of removed reservations are reused.
+ * <p>
+ * Only the last 64 bits of an id are stored, the first 64 are the key of the hotel. Dates are epoch days.
+ * Customers are stored once, a row refers to its customer by number.
+ * The rows of a customer are a linked list through columns of row numbers, in the order they were added,
+ * so they can be walked and changed without extra objects.
+ * The unconfirmed rows that expire are a binary heap on their expiry time, so the first to expire is on top,
+ * whatever order they were added in.
+ * Ids are found through an open addressing hash table of rows.
+ * <p>
+ * That's about 60 bytes per reservation, against about 360 for a Reservation with its id, dates and map entries.
+ */
+class ReservationTable {
+
+    /**
+     * No row, the end of a linked list.
+     */
+    static final int NONE = -1;
+    /**
+     * The id of a free row. Not given to reservations.
+     */
+    static final long FREE = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The columns.
+    private long[] ids;
+    private int[] checkIns;
+    private int[] checkOuts;
+    private int[] roomCounts;
+    private int[] customers;
+    private long[] expiresAts;
+    private boolean[] confirmed;
+    /**
+     * The rows of the same customer. nextOfCustomer also links the free rows.
+     */
+    private int[] nextOfCustomer;
+    private int[] previousOfCustomer;
+    /**
+     * The place of the row in unconfirmed, NONE if it isn't in there.
+     */
+    private int[] heapPositions;
+    /**
+     * Amount of rows that were ever used. The rows after it are free, and not in the list of free rows.
+     */
+    private int usedRows;
+    private int freeRow;
+    private int size;
+
+    /**
+     * The unconfirmed rows that expire, as a min-heap on expiresAt. The children of place i are at 2i + 1 and 2i + 2.
+     */
+    private int[] unconfirmed;
+    private int unconfirmedCount;
+
+    /**
+     * The rows by id, with linear probing. Slots with NONE are empty.
+     * Only holds rows, the ids to compare with are in their column.
+     */
+    private int[] index;
+
+    /**
+     * <Customer, Number>, and the other way around with the first and last row and the amount of rows per number.
+     */
+    private final HashMap<String, Integer> customerNumbers;
+    private String[] customerNames;
+    private int[] customerFirst;
+    private int[] customerLast;
+    private int[] customerSizes;
+    /**
+     * Numbers of customers without reservations are reused. customerFirst links them.
+     */
+    private int freeCustomer;
+    private int usedCustomers;
+
+
+    ReservationTable() {
+        ids = new long[INITIAL_CAPACITY];
+        checkIns = new int[INITIAL_CAPACITY];
+        checkOuts = new int[INITIAL_CAPACITY];
+        roomCounts = new int[INITIAL_CAPACITY];
+        customers = new int[INITIAL_CAPACITY];
+        expiresAts = new long[INITIAL_CAPACITY];
+        confirmed = new boolean[INITIAL_CAPACITY];
+        nextOfCustomer = new int[INITIAL_CAPACITY];
+        previousOfCustomer = new int[INITIAL_CAPACITY];
+        heapPositions = new int[INITIAL_CAPACITY];
+        usedRows = 0;
+        freeRow = NONE;
+        size = 0;
+        unconfirmed = new int[INITIAL_CAPACITY];
+        unconfirmedCount = 0;
+
+        index = new int[INITIAL_CAPACITY * 2];
+        Arrays.fill(index, NONE);
+
+        customerNumbers = new HashMap<>();
+        customerNames = new String[INITIAL_CAPACITY];
+        customerFirst = new int[INITIAL_CAPACITY];
+        customerLast = new int[INITIAL_CAPACITY];
+        customerSizes = new int[INITIAL_CAPACITY];
+        freeCustomer = NONE;
+        usedCustomers = 0;
+    }
+
+
+    /**
+     * @param id The last 64 bits of the id, not FREE and not in the table yet.
+     * @param expiresAt Time in epoch milliseconds after which the reservation expires if it isn't confirmed. 0 if never.
+     * @return The row of the reservation.
+     */
+    int add(long id, String customer, int roomCount, int checkIn, int checkOut, long expiresAt, boolean isConfirmed) {
+        int row = allocateRow();
+        ids[row] = id;
+        checkIns[row] = checkIn;
+        checkOuts[row] = checkOut;
+        roomCounts[row] = roomCount;
+        expiresAts[row] = expiresAt;
+        confirmed[row] = isConfirmed;
+
+        int customerNumber = getCustomerNumber(customer);
+        customers[row] = customerNumber;
+        nextOfCustomer[row] = NONE;
+        previousOfCustomer[row] = customerLast[customerNumber];
+        if (customerLast[customerNumber] == NONE) {
+            customerFirst[customerNumber] = row;
+        } else {
+            nextOfCustomer[customerLast[customerNumber]] = row;
+        }
+        customerLast[customerNumber] = row;
+        customerSizes[customerNumber]++;
+
+        heapPositions[row] = NONE;
+        if (expiresAt != 0 && !isConfirmed) {
+            if (unconfirmedCount == unconfirmed.length) {
+                unconfirmed = Arrays.copyOf(unconfirmed, unconfirmed.length * 2);
+            }
+            placeUnconfirmed(row, unconfirmedCount++);
+            siftUp(unconfirmedCount - 1);
+        }
+
+        if ((size + 1) * 4 > index.length * 3) {
+            resizeIndex(index.length * 2);
+        }
+        putIndex(row);
+        size++;
+        return row;
+    }
+
+    /**
+     * @return The row of the reservation with the given last 64 bits of its id, NONE if the table doesn't have it.
+     */
+    int find(long id) {
+        if (id == FREE) {
+            return NONE;
+        }
+        int mask = index.length - 1;
+        for (int slot = hash(id) & mask; index[slot] != NONE; slot = (slot + 1) & mask) {
+            if (ids[index[slot]] == id) {
+                return index[slot];
+            }
+        }
+        return NONE;
+    }
+
+    void remove(int row) {
+        removeIndex(row);
+        removeUnconfirmed(row);
+
+        int customerNumber = customers[row];
+        if (previousOfCustomer[row] == NONE) {
+            customerFirst[customerNumber] = nextOfCustomer[row];
+        } else {
+            nextOfCustomer[previousOfCustomer[row]] = nextOfCustomer[row];
+        }
+        if (nextOfCustomer[row] == NONE) {
+            customerLast[customerNumber] = previousOfCustomer[row];
+        } else {
+            previousOfCustomer[nextOfCustomer[row]] = previousOfCustomer[row];
+        }
+        // Forget the customer when it has no reservations left, so the customers don't keep growing.
+        if (--customerSizes[customerNumber] == 0) {
+            customerNumbers.remove(customerNames[customerNumber]);
+            customerNames[customerNumber] = null;
+            customerFirst[customerNumber] = freeCustomer;
+            freeCustomer = customerNumber;
+        }
+
+        ids[row] = FREE;
+        nextOfCustomer[row] = freeRow;
+        freeRow = row;
+        size--;
+    }
+
+    void confirm(int row) {
+        confirmed[row] = true;
+        removeUnconfirmed(row);
+    }
+
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Writes the reservations per customer, in the order they were added. Free rows aren't written.
+     * @see #readFrom(DataInput)
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(customerNumbers.size());
+        for (int customerNumber = 0; customerNumber < usedCustomers; customerNumber++) {
+            if (customerNames[customerNumber] == null) {
+                continue;
+            }
+            Hotel.writeString(customerNames[customerNumber], out);
+            out.writeInt(customerSizes[customerNumber]);
+            for (int row = customerFirst[customerNumber]; row != NONE; row = nextOfCustomer[row]) {
+                out.writeLong(ids[row]);
+                out.writeInt(roomCounts[row]);
+                out.writeInt(checkIns[row]);
+                out.writeInt(checkOuts[row]);
+                out.writeLong(expiresAts[row]);
+                out.writeBoolean(confirmed[row]);
+            }
+        }
+    }
+
+    /**
+     * Adds the reservations written by writeTo to this table.
+     */
+    void readFrom(DataInput in) throws IOException {
+        int customerCount = in.readInt();
+        for (int i = 0; i < customerCount; i++) {
+            String customer = Hotel.readString(in);
+            int rows = in.readInt();
+            for (int j = 0; j < rows; j++) {
+                add(in.readLong(), customer, in.readInt(), in.readInt(), in.readInt(), in.readLong(), in.readBoolean());
+            }
+        }
+    }
+
+    /**
+     * @return The amount of rows to loop over to see every reservation. Skip the rows that aren't used.
+     */
+    int getRowCount() {
+        return usedRows;
+    }
+
+    boolean isUsed(int row) {
+        return ids[row] != FREE;
+    }
+
+    /**
+     * @return The first row of the customer, NONE if the customer doesn't have reservations.
+     */
+    int getFirstOfCustomer(String customer) {
+        Integer customerNumber = customerNumbers.get(customer);
+        return customerNumber == null ? NONE : customerFirst[customerNumber];
+    }
+
+    int getNextOfCustomer(int row) {
+        return nextOfCustomer[row];
+    }
+
+    /**
+     * @return The unconfirmed row that expires first, NONE if no row expires.
+     */
+    int getFirstUnconfirmed() {
+        return unconfirmedCount == 0 ? NONE : unconfirmed[0];
+    }
+
+    /**
+     * Gives the unconfirmed rows that expire at the given time or before, in no particular order.
+     * Only visits those rows and their children in the heap.
+     */
+    void forEachUnconfirmed(long time, IntConsumer action) {
+        forEachUnconfirmed(0, time, action);
+    }
+
+    long getId(int row) {
+        return ids[row];
+    }
+
+    String getCustomer(int row) {
+        return customerNames[customers[row]];
+    }
+
+    int getRoomCount(int row) {
+        return roomCounts[row];
+    }
+
+    int getCheckIn(int row) {
+        return checkIns[row];
+    }
+
+    int getCheckOut(int row) {
+        return checkOuts[row];
+    }
+
+    long getExpiresAt(int row) {
+        return expiresAts[row];
+    }
+
+    boolean isConfirmed(int row) {
+        return confirmed[row];
+    }
+
+
+    private int allocateRow() {
+        if (freeRow != NONE) {
+            int row = freeRow;
+            freeRow = nextOfCustomer[row];
+            return row;
+        }
+        if (usedRows == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            checkIns = Arrays.copyOf(checkIns, capacity);
+            checkOuts = Arrays.copyOf(checkOuts, capacity);
+            roomCounts = Arrays.copyOf(roomCounts, capacity);
+            customers = Arrays.copyOf(customers, capacity);
+            expiresAts = Arrays.copyOf(expiresAts, capacity);
+            confirmed = Arrays.copyOf(confirmed, capacity);
+            nextOfCustomer = Arrays.copyOf(nextOfCustomer, capacity);
+            previousOfCustomer = Arrays.copyOf(previousOfCustomer, capacity);
+            heapPositions = Arrays.copyOf(heapPositions, capacity);
+        }
+        return usedRows++;
+    }
+
+    private int getCustomerNumber(String customer) {
+        Integer known = customerNumbers.get(customer);
+        if (known != null) {
+            return known;
+        }
+
+        int customerNumber;
+        if (freeCustomer != NONE) {
+            customerNumber = freeCustomer;
+            freeCustomer = customerFirst[customerNumber];
+        } else {
+            if (usedCustomers == customerNames.length) {
+                int capacity = customerNames.length * 2;
+                customerNames = Arrays.copyOf(customerNames, capacity);
+                customerFirst = Arrays.copyOf(customerFirst, capacity);
+                customerLast = Arrays.copyOf(customerLast, capacity);
+                customerSizes = Arrays.copyOf(customerSizes, capacity);
+            }
+            customerNumber = usedCustomers++;
+        }
+        customerNames[customerNumber] = customer;
+        customerFirst[customerNumber] = NONE;
+        customerLast[customerNumber] = NONE;
+        customerSizes[customerNumber] = 0;
+        customerNumbers.put(customer, customerNumber);
+        return customerNumber;
+    }
+
+    /**
+     * Takes the row out of the unconfirmed rows, if it's in there. The last row of the heap takes its place.
+     */
+    private void removeUnconfirmed(int row) {
+        int position = heapPositions[row];
+        if (position == NONE) {
+            return;
+        }
+        heapPositions[row] = NONE;
+        int last = unconfirmed[--unconfirmedCount];
+        if (position != unconfirmedCount) {
+            placeUnconfirmed(last, position);
+            siftDown(position);
+            siftUp(position);
+        }
+    }
+
+    private void forEachUnconfirmed(int position, long time, IntConsumer action) {
+        // The children of a row don't expire before it.
+        if (position >= unconfirmedCount || expiresAts[unconfirmed[position]] > time) {
+            return;
+        }
+        action.accept(unconfirmed[position]);
+        forEachUnconfirmed(2 * position + 1, time, action);
+        forEachUnconfirmed(2 * position + 2, time, action);
+    }
+
+    /**
+     * Moves the row at the position up until its parent doesn't expire later.
+     */
+    private void siftUp(int position) {
+        int row = unconfirmed[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (expiresAts[unconfirmed[parent]] <= expiresAts[row]) {
+                break;
+            }
+            placeUnconfirmed(unconfirmed[parent], position);
+            position = parent;
+        }
+        placeUnconfirmed(row, position);
+    }
+
+    /**
+     * Moves the row at the position down until its children don't expire earlier.
+     */
+    private void siftDown(int position) {
+        int row = unconfirmed[position];
+        while (2 * position + 1 < unconfirmedCount) {
+            int child = 2 * position + 1;
+            if (child + 1 < unconfirmedCount && expiresAts[unconfirmed[child + 1]] < expiresAts[unconfirmed[child]]) {
+                child++;
+            }
+            if (expiresAts[row] <= expiresAts[unconfirmed[child]]) {
+                break;
+            }
+            placeUnconfirmed(unconfirmed[child], position);
+            position = child;
+        }
+        placeUnconfirmed(row, position);
+    }
+
+    private void placeUnconfirmed(int row, int position) {
+        unconfirmed[position] = row;
+        heapPositions[row] = position;
+    }
+
+    private void putIndex(int row) {
+        int mask = index.length - 1;
+        int slot = hash(ids[row]) & mask;
+        while (index[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = row;
+    }
+
+    /**
+     * Empties the slot of the row, and moves the rows after it back that can't be found anymore otherwise.
+     */
+    private void removeIndex(int row) {
+        int mask = index.length - 1;
+        int slot = hash(ids[row]) & mask;
+        while (index[slot] != row) {
+            slot = (slot + 1) & mask;
+        }
+
+        int next = (slot + 1) & mask;
+        while (index[next] != NONE) {
+            int home = hash(ids[index[next]]) & mask;
+            // The row at next can move to slot if slot lies between its home and next, going around the end.
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                index[slot] = index[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index[slot] = NONE;
+    }
+
+    private void resizeIndex(int capacity) {
+        int[] oldIndex = index;
+        index = new int[capacity];
+        Arrays.fill(index, NONE);
+        for (int row : oldIndex) {
+            if (row != NONE) {
+                putIndex(row);
+            }
+        }
+    }
+
+    /**
+     * The finalizer of MurmurHash3 (fmix64), so every bit of the id changes the slot.
+     * Snowflake ids aren't random: their last 23 bits count up from 0 every millisecond and the bits above are the
+     * time, so folding the high bits in would put the ids of different milliseconds in neighbouring slots.
+     */
+    private static int hash(long id) {
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        id *= 0xc4ceb9fe1a85ec53L;
+        id ^= id >>> 33;
+        return (int) id;
+    }
+
+}
@@ -0,0 +1,165 @@
+package nl.saxion.concurrency.domain;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Amount of reserved rooms per night, as a segment tree over epoch days.
+ * Adding rooms to a range of nights and finding the most reserved night in a range
+ * both take O(log days), however long the range and however many reservations there are.
+ * <p>
+ * Nodes are only made for the parts of the calendar that have reservations, and removed when they're empty again.
+ * A node adds its own rooms to every night in its range, on top of the rooms of its children,
+ * so a range update doesn't have to push anything down to the children.
+ */
+public class RoomCalendar {
+
+    /**
+     * The calendar covers the epoch days [0, DAYS), from 1970 until after the year 4800.
+     */
+    private static final int DAYS = 1 << 20;
+
+    private Node root;
+
+
+    /**
+     * @return Whether the calendar covers all nights in [from, to).
+     */
+    public static boolean covers(LocalDate from, LocalDate to) {
+        return from.toEpochDay() >= 0 && to.toEpochDay() <= DAYS;
+    }
+
+    /**
+     * Adds roomCount reserved rooms to every night in [from, to). A negative roomCount removes them again.
+     * @throws IllegalArgumentException If the calendar doesn't cover the range.
+     */
+    public void add(LocalDate from, LocalDate to, int roomCount) {
+        if (!covers(from, to)) {
+            throw new IllegalArgumentException("The calendar doesn't cover " + from + " - " + to + ".");
+        }
+        root = add(root, 0, DAYS, (int) from.toEpochDay(), (int) to.toEpochDay(), roomCount);
+    }
+
+    /**
+     * @return The most rooms reserved on one night in [from, to). 0 for the nights the calendar doesn't cover.
+     */
+    public int getMaxReserved(LocalDate from, LocalDate to) {
+        long start = Math.max(from.toEpochDay(), 0);
+        long end = Math.min(to.toEpochDay(), DAYS);
+        if (start >= end) {
+            return 0;
+        }
+        return getMax(root, 0, DAYS, (int) start, (int) end);
+    }
+
+
+    /**
+     * Writes the nodes depth first, a node before its children.
+     * @see #readFrom(DataInput)
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        write(root, out);
+    }
+
+    /**
+     * Replaces the calendar with the one written by writeTo.
+     */
+    public void readFrom(DataInput in) throws IOException {
+        root = read(in);
+    }
+
+
+    /**
+     * Adds roomCount to the nights in [from, to) within the node's nights [start, end).
+     * @return The node, or null if it has no reserved rooms anymore.
+     */
+    private static Node add(Node node, int start, int end, int from, int to, int roomCount) {
+        if (to <= start || end <= from) {
+            return node;
+        }
+        if (node == null) {
+            node = new Node();
+        }
+
+        if (from <= start && end <= to) {
+            node.rooms += roomCount;
+            node.max += roomCount;
+        } else {
+            int middle = (start + end) >>> 1;
+            node.left = add(node.left, start, middle, from, to, roomCount);
+            node.right = add(node.right, middle, end, from, to, roomCount);
+            node.max = node.rooms + Math.max(getMax(node.left), getMax(node.right));
+        }
+
+        // Reserved rooms are never negative, so a max of 0 means none of the nights have reserved rooms.
+        return node.max == 0 ? null : node;
+    }
+
+    /**
+     * @return The most reserved rooms on one night in [from, to), which overlaps the node's nights [start, end).
+     */
+    private static int getMax(Node node, int start, int end, int from, int to) {
+        if (node == null) {
+            return 0;
+        }
+        if (from <= start && end <= to) {
+            return node.max;
+        }
+
+        int middle = (start + end) >>> 1;
+        int max = 0;
+        if (from < middle) {
+            max = getMax(node.left, start, middle, from, to);
+        }
+        if (middle < to) {
+            max = Math.max(max, getMax(node.right, middle, end, from, to));
+        }
+        return node.rooms + max;
+    }
+
+    private static int getMax(Node node) {
+        return node == null ? 0 : node.max;
+    }
+
+    /**
+     * The tree is at most 21 nodes deep, so this doesn't recurse far.
+     */
+    private static void write(Node node, DataOutput out) throws IOException {
+        out.writeBoolean(node != null);
+        if (node != null) {
+            out.writeInt(node.rooms);
+            out.writeInt(node.max);
+            write(node.left, out);
+            write(node.right, out);
+        }
+    }
+
+    private static Node read(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Node node = new Node();
+        node.rooms = in.readInt();
+        node.max = in.readInt();
+        node.left = read(in);
+        node.right = read(in);
+        return node;
+    }
+
+
+    private static class Node {
+        /**
+         * Rooms reserved on every night of this node's range.
+         */
+        int rooms;
+        /**
+         * The most rooms reserved on one night of this node's range, including rooms.
+         */
+        int max;
+        Node left;
+        Node right;
+    }
+
+}
@@ -0,0 +1,117 @@
+package nl.saxion.concurrency.messages;
+
+import nl.saxion.concurrency.domain.Reservation;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+/**
+ * The changes to a hotel, as stored in the journal of its HotelManagerActor.
+ * Replaying them on the latest snapshot of the hotel brings it back to its last state.
+ * @see nl.saxion.concurrency.actors.HotelManagerActor
+ */
+public interface HotelEvent extends Serializable {
+
+    class HotelAdded implements HotelEvent {
+        public final int roomCount;
+
+        public HotelAdded(int roomCount) {
+            this.roomCount = roomCount;
+        }
+    }
+
+    class HotelDeleted implements HotelEvent {
+    }
+
+
+    /**
+     * The reservation has its id already, so replaying the event gives the same id.
+     */
+    class ReservationAdded implements HotelEvent {
+        public final Reservation reservation;
+
+        public ReservationAdded(Reservation reservation) {
+            this.reservation = reservation;
+        }
+    }
+
+    class ReservationConfirmed implements HotelEvent {
+        public final String id;
+
+        public ReservationConfirmed(String id) {
+            this.id = id;
+        }
+    }
+
+    class ReservationCancelled implements HotelEvent {
+        public final String id;
+
+        public ReservationCancelled(String id) {
+            this.id = id;
+        }
+    }
+
+
+    /**
+     * Reservations held for a booking over multiple hotels. They have their ids already, like in ReservationAdded.
+     */
+    class ReservationsHeld implements HotelEvent {
+        public final String holdId;
+        public final ArrayList<Reservation> reservations;
+        /**
+         * Time in epoch milliseconds after which the hold is released. 0 if it doesn't expire.
+         */
+        public final long expiresAt;
+
+        public ReservationsHeld(String holdId, ArrayList<Reservation> reservations, long expiresAt) {
+            this.holdId = holdId;
+            this.reservations = reservations;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    class HoldCommitted implements HotelEvent {
+        public final String holdId;
+
+        public HoldCommitted(String holdId) {
+            this.holdId = holdId;
+        }
+    }
+
+    class HoldReleased implements HotelEvent {
+        public final String holdId;
+
+        public HoldReleased(String holdId) {
+            this.holdId = holdId;
+        }
+    }
+
+    /**
+     * The unconfirmed reservations and holds that expired at the time are released.
+     * Stores the time instead of the reservations, replaying it releases the same ones.
+     */
+    class ReservationsExpired implements HotelEvent {
+        /**
+         * Time in epoch milliseconds.
+         */
+        public final long time;
+
+        public ReservationsExpired(long time) {
+            this.time = time;
+        }
+    }
+
+    /**
+     * The reservations that check out on the date or before are written to the archive, and are forgotten.
+     * Stores the date instead of the reservations, replaying it forgets the same ones.
+     */
+    class ReservationsArchived implements HotelEvent {
+        public final LocalDate date;
+
+        public ReservationsArchived(LocalDate date) {
+            this.date = date;
+        }
+    }
+
+}
@@ -2,10 +2,12 @@ package nl.saxion.concurrency.messages;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.receptionist.Receptionist;
-import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.HotelSummary;
+import nl.saxion.concurrency.domain.Rejection;
 import nl.saxion.concurrency.domain.Reservation;
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -13,17 +15,39 @@ import java.util.HashMap;
 public interface RentARoomMessage extends Serializable {
 
     /**
-     * The response of a message send from StartAkka.
-     * It includes one of the following:
-     *      a user friendly status message.
-     *      the requested data in a user friendly text form.
-     *      a user friendly error message if something went wrong.
+     * The answer to a command that was done and has nothing else to send back, like adding a hotel.
+     * The answers to StartAkka are data, StartAkka makes the text for the user.
+     * @see nl.saxion.concurrency.StartAkka#render(RentARoomMessage)
      */
-    class Response implements RentARoomMessage {
-        public final String status;
+    class Done implements RentARoomMessage {
+        public enum Action {
+            AGENT_ADDED,
+            HOTEL_ADDED,
+            HOTEL_DELETED,
+            RESERVATION_CONFIRMED,
+            RESERVATION_CANCELLED
+        }
+
+        public final Action action;
+        /**
+         * The hotel the action was done in. Null for AGENT_ADDED.
+         */
+        public final String hotelName;
+
+        public Done(Action action, String hotelName) {
+            this.action = action;
+            this.hotelName = hotelName;
+        }
+    }
+
+    /**
+     * The answer to a command that couldn't be done.
+     */
+    class Rejected implements RentARoomMessage {
+        public final Rejection rejection;
 
-        public Response(String status) {
-            this.status = status;
+        public Rejected(Rejection rejection) {
+            this.rejection = rejection;
         }
     }
 
@@ -80,40 +104,154 @@ public interface RentARoomMessage extends Serializable {
 
 
     /**
-     * Message to list all hotels that have at least the given minRoomCount available at the given date.
+     * Message to list all hotels that have at least the given minRoomCount available
+     * on every night of a stay of the given amount of nights from date.
      */
     class ListAvailableRooms implements RentARoomMessage {
         public final ActorRef<RentARoomMessage> sender;
         public final int minRoomCount;
         public final LocalDate date;
+        public final int nights;
 
         public ListAvailableRooms(ActorRef<RentARoomMessage> sender, int minRoomCount, LocalDate date) {
+            this(sender, minRoomCount, date, 1);
+        }
+
+        public ListAvailableRooms(ActorRef<RentARoomMessage> sender, int minRoomCount, LocalDate date, int nights) {
+            this.sender = sender;
+            this.minRoomCount = minRoomCount;
+            this.date = date;
+            this.nights = nights;
+        }
+    }
+
+    /**
+     * Message to find the limit hotels with the most rooms available on every night of the stay,
+     * of the hotels that have at least minRoomCount available.
+     * Answers after the budget with the hotels that answered in time.
+     */
+    class SearchAvailableRooms implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final int minRoomCount;
+        public final LocalDate date;
+        public final int nights;
+        public final int limit;
+        public final Duration budget;
+
+        public SearchAvailableRooms(ActorRef<RentARoomMessage> sender, int minRoomCount, LocalDate date, int nights,
+                                    int limit, Duration budget) {
+            this.sender = sender;
+            this.minRoomCount = minRoomCount;
+            this.date = date;
+            this.nights = nights;
+            this.limit = limit;
+            this.budget = budget;
+        }
+    }
+
+    /**
+     * Message for an AgentActor to ask a HotelManagerActor if its hotel has at least minRoomCount available
+     * on every night of the stay.
+     */
+    class RequestAvailableRooms implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final int minRoomCount;
+        public final LocalDate date;
+        public final int nights;
+
+        public RequestAvailableRooms(ActorRef<RentARoomMessage> sender, int minRoomCount, LocalDate date, int nights) {
             this.sender = sender;
             this.minRoomCount = minRoomCount;
             this.date = date;
+            this.nights = nights;
+        }
+    }
+
+    /**
+     * Message to send the available rooms of the HotelManagerActor's hotel to the AgentActor that requested them.
+     * @see RequestAvailableRooms
+     */
+    class SendAvailableRooms implements RentARoomMessage {
+        /**
+         * Null if the hotel doesn't have enough rooms available, or isn't in our system.
+         */
+        public final String hotelName;
+        public final int availableRooms;
+
+        public SendAvailableRooms(String hotelName, int availableRooms) {
+            this.hotelName = hotelName;
+            this.availableRooms = availableRooms;
         }
     }
 
     /**
-     * Message for an AgentActor to request a hotel from a HotelManagerActor.
+     * Message for an AgentActor to request a summary of the hotel of a HotelManagerActor.
      */
-    class RequestHotel implements RentARoomMessage {
+    class RequestHotelSummary implements RentARoomMessage {
         public final ActorRef<RentARoomMessage> sender;
+        /**
+         * The stay to include the availability of in the summary, from date for the given amount of nights.
+         */
+        public final LocalDate date;
+        public final int nights;
 
-        public RequestHotel(ActorRef<RentARoomMessage> sender) {
+        public RequestHotelSummary(ActorRef<RentARoomMessage> sender, LocalDate date, int nights) {
             this.sender = sender;
+            this.date = date;
+            this.nights = nights;
+        }
+    }
+
+    /**
+     * Message to send the summary of the HotelManagerActor's hotel to the AgentActor that requested it.
+     * @see RequestHotelSummary
+     */
+    class SendHotelSummary implements RentARoomMessage {
+        public final HotelSummary summary;
+
+        public SendHotelSummary(HotelSummary summary) {
+            this.summary = summary;
+        }
+    }
+
+
+    /**
+     * The answer to ListHotels, sorted by name.
+     */
+    class SendHotels implements RentARoomMessage {
+        public final ArrayList<HotelSummary> hotels;
+
+        public SendHotels(ArrayList<HotelSummary> hotels) {
+            this.hotels = hotels;
         }
     }
 
     /**
-     * Message to send the HotelManagerActor's hotel to the AgentActor that requested it.
-     * @see RequestHotel
+     * The answer to ListAvailableRooms, sorted by name.
      */
-    class SendHotel implements RentARoomMessage {
-        public final Hotel hotel;
+    class SendHotelsWithRooms implements RentARoomMessage {
+        public final ArrayList<SendAvailableRooms> hotels;
+
+        public SendHotelsWithRooms(ArrayList<SendAvailableRooms> hotels) {
+            this.hotels = hotels;
+        }
+    }
 
-        public SendHotel(Hotel hotel) {
-            this.hotel = hotel;
+    /**
+     * The answer to SearchAvailableRooms, the most available rooms first.
+     */
+    class SendBestHotels implements RentARoomMessage {
+        public final ArrayList<SendAvailableRooms> hotels;
+        /**
+         * Amount of hotels that answered within the budget, of hotelCount.
+         */
+        public final int answered;
+        public final int hotelCount;
+
+        public SendBestHotels(ArrayList<SendAvailableRooms> hotels, int answered, int hotelCount) {
+            this.hotels = hotels;
+            this.answered = answered;
+            this.hotelCount = hotelCount;
         }
     }
 
@@ -133,16 +271,96 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
+    /**
+     * The answer to ListReservations, with the reservations of the customer in the order they were made.
+     */
+    class SendReservations implements RentARoomMessage {
+        public final String hotelName;
+        public final ArrayList<Reservation> reservations;
+
+        public SendReservations(String hotelName, ArrayList<Reservation> reservations) {
+            this.hotelName = hotelName;
+            this.reservations = reservations;
+        }
+    }
+
+    /**
+     * Message to list the reservations of the customer in all hotels.
+     * The sender receives a SendCustomerReservations per hotel with reservations, as soon as that hotel answers.
+     * SendCustomerReservationTotals ends the stream.
+     */
+    class ListCustomerReservations implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final String customer;
+
+        public ListCustomerReservations(ActorRef<RentARoomMessage> sender, String customer) {
+            this.sender = sender;
+            this.customer = customer;
+        }
+    }
+
+    /**
+     * Message to request the reservations of the customer from a HotelManagerActor.
+     * @see ListCustomerReservations
+     */
+    class RequestCustomerReservations implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final String customer;
+
+        public RequestCustomerReservations(ActorRef<RentARoomMessage> sender, String customer) {
+            this.sender = sender;
+            this.customer = customer;
+        }
+    }
+
+    /**
+     * Message with the reservations of a customer in one hotel, like SendReservations.
+     * @see ListCustomerReservations
+     */
+    class SendCustomerReservations implements RentARoomMessage {
+        public final String hotelName;
+        public final ArrayList<Reservation> reservations;
+
+        public SendCustomerReservations(String hotelName, ArrayList<Reservation> reservations) {
+            this.hotelName = hotelName;
+            this.reservations = reservations;
+        }
+    }
+
+    /**
+     * The last answer to ListCustomerReservations, with the totals over all hotels.
+     */
+    class SendCustomerReservationTotals implements RentARoomMessage {
+        public final int reservationCount;
+        public final int hotelCount;
+
+        public SendCustomerReservationTotals(int reservationCount, int hotelCount) {
+            this.reservationCount = reservationCount;
+            this.hotelCount = hotelCount;
+        }
+    }
+
     /**
      * Message to request multiple reservations for multiple hotels.
      */
     class RequestReservationsMultiHotels implements RentARoomMessage {
         public final ActorRef<RentARoomMessage> sender;
         public final HashMap<String, ArrayList<Reservation>> reservations;
+        /**
+         * Make all reservations or none of them. Otherwise every hotel makes the reservations that fit.
+         */
+        public final boolean allOrNothing;
 
         public RequestReservationsMultiHotels(ActorRef<RentARoomMessage> sender, HashMap<String, ArrayList<Reservation>> reservations) {
+            this(sender, reservations, false);
+        }
+
+        public RequestReservationsMultiHotels(ActorRef<RentARoomMessage> sender,
+                                              HashMap<String, ArrayList<Reservation>> reservations,
+                                              boolean allOrNothing) {
             this.sender = sender;
             this.reservations = reservations;
+            this.allOrNothing = allOrNothing;
         }
     }
 
@@ -161,6 +379,128 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
+    /**
+     * The answer of a HotelManagerActor to RequestReservations.
+     */
+    class Booked implements RentARoomMessage {
+        public final String hotelName;
+        /**
+         * The made reservations with their ids, and the requested ones that were rejected, in the requested order.
+         */
+        public final ArrayList<Reservation> reservations;
+        /**
+         * Why the reservation at the same index was rejected. Null for the made reservations.
+         */
+        public final ArrayList<Rejection> rejections;
+
+        public Booked(String hotelName, ArrayList<Reservation> reservations, ArrayList<Rejection> rejections) {
+            this.hotelName = hotelName;
+            this.reservations = reservations;
+            this.rejections = rejections;
+        }
+    }
+
+    /**
+     * The answer to RequestReservationsMultiHotels.
+     */
+    class BookingResult implements RentARoomMessage {
+        /**
+         * The hotels that couldn't take part, like hotels that aren't in our system or didn't answer in time.
+         */
+        public final ArrayList<Rejection> rejections;
+        /**
+         * The answers of the hotels that took part.
+         */
+        public final ArrayList<Booked> hotels;
+        /**
+         * None of the reservations were made because of the rejections, with allOrNothing.
+         */
+        public final boolean aborted;
+
+        public BookingResult(ArrayList<Rejection> rejections, ArrayList<Booked> hotels, boolean aborted) {
+            this.rejections = rejections;
+            this.hotels = hotels;
+            this.aborted = aborted;
+        }
+    }
+
+    /**
+     * Message for a BookingCoordinatorActor to hold all reservations for a hotel, or none if they don't all fit.
+     * The held rooms can't be reserved by others until the hold is committed or released.
+     * @see nl.saxion.concurrency.actors.BookingCoordinatorActor
+     */
+    class HoldReservations implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final String holdId;
+        public final ArrayList<Reservation> reservations;
+
+        public HoldReservations(ActorRef<RentARoomMessage> sender, String holdId, ArrayList<Reservation> reservations) {
+            this.sender = sender;
+            this.holdId = holdId;
+            this.reservations = reservations;
+        }
+    }
+
+    /**
+     * Message to turn the held reservations into reservations.
+     */
+    class CommitHold implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final String holdId;
+
+        public CommitHold(ActorRef<RentARoomMessage> sender, String holdId) {
+            this.sender = sender;
+            this.holdId = holdId;
+        }
+    }
+
+    /**
+     * Message to free the rooms of the held reservations.
+     */
+    class ReleaseHold implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final String holdId;
+
+        public ReleaseHold(ActorRef<RentARoomMessage> sender, String holdId) {
+            this.sender = sender;
+            this.holdId = holdId;
+        }
+    }
+
+    /**
+     * The answer of a HotelManagerActor to HoldReservations, CommitHold and ReleaseHold.
+     */
+    class HoldResponse implements RentARoomMessage {
+        public final String hotelName;
+        public final String holdId;
+        /**
+         * The held reservations with their ids. Empty for commits and releases.
+         */
+        public final ArrayList<Reservation> reservations;
+        /**
+         * Why the reservations couldn't be held or committed. Null if they could.
+         */
+        public final Rejection rejection;
+
+        public HoldResponse(String hotelName, String holdId, ArrayList<Reservation> reservations, Rejection rejection) {
+            this.hotelName = hotelName;
+            this.holdId = holdId;
+            this.reservations = reservations;
+            this.rejection = rejection;
+        }
+
+        public boolean isSuccess() {
+            return rejection == null;
+        }
+    }
+
+    /**
+     * Message a BookingCoordinatorActor sends to itself when the hotels didn't answer in time.
+     * @see nl.saxion.concurrency.actors.BookingCoordinatorActor
+     */
+    class BookingTimeout implements RentARoomMessage {
+    }
+
     /**
      * Message to confirm a reservation.
      */
@@ -187,6 +527,193 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
+    /**
+     * Message to look up a reservation by id, also when it's in the past and archived.
+     */
+    class GetReservation implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final String id;
+
+        public GetReservation(ActorRef<RentARoomMessage> sender, String id) {
+            this.sender = sender;
+            this.id = id;
+        }
+    }
+
+    /**
+     * The answer to GetReservation.
+     */
+    class SendReservation implements RentARoomMessage {
+        public final Reservation reservation;
+
+        public SendReservation(Reservation reservation) {
+            this.reservation = reservation;
+        }
+    }
+
+
+    /**
+     * Message a HotelManagerActor publishes after a change to its hotel, so AgentActors can update their caches.
+     */
+    class HotelChanged implements RentARoomMessage {
+        public final String hotelName;
+        /**
+         * The changed nights are [from, to). Null if the whole hotel changed, like when it's added or deleted.
+         */
+        public final LocalDate from;
+        public final LocalDate to;
+
+        public HotelChanged(String hotelName, LocalDate from, LocalDate to) {
+            this.hotelName = hotelName;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Message an AgentActor sends to itself with the summaries it was missing in its cache to answer the query.
+     * @see nl.saxion.concurrency.domain.AvailabilityCache
+     */
+    class SummariesFetched implements RentARoomMessage {
+        /**
+         * The ListHotels, ListAvailableRooms or SearchAvailableRooms to answer.
+         */
+        public final RentARoomMessage query;
+        /**
+         * The stay the summaries are cached under. A null date for the summaries of ListHotels.
+         */
+        public final LocalDate date;
+        public final int nights;
+        public final ArrayList<HotelSummary> summaries;
+        /**
+         * The cache version when the summaries were requested.
+         */
+        public final long requestedAt;
+
+        public SummariesFetched(RentARoomMessage query, LocalDate date, int nights, ArrayList<HotelSummary> summaries,
+                                long requestedAt) {
+            this.query = query;
+            this.date = date;
+            this.nights = nights;
+            this.summaries = summaries;
+            this.requestedAt = requestedAt;
+        }
+    }
+
+    /**
+     * Message a HotelManagerActor sends to itself to move its past reservations to the archive.
+     * @see nl.saxion.concurrency.actors.HotelManagerActor
+     */
+    class ArchiveReservations implements RentARoomMessage {
+    }
+
+    /**
+     * Message a HotelManagerActor sends to itself when its past reservations are written to the archive.
+     * @see nl.saxion.concurrency.actors.HotelManagerActor
+     */
+    class ReservationsWritten implements RentARoomMessage {
+        /**
+         * The reservations that check out on this date or before are written.
+         */
+        public final LocalDate date;
+        /**
+         * 0 if they couldn't be written.
+         */
+        public final int count;
+
+        public ReservationsWritten(LocalDate date, int count) {
+            this.date = date;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Message a HotelManagerActor sends to itself with the answer to a message it looked up in the archive.
+     * @see nl.saxion.concurrency.actors.HotelManagerActor
+     */
+    class ArchiveLookedUp implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        public final RentARoomMessage response;
+
+        public ArchiveLookedUp(ActorRef<RentARoomMessage> sender, RentARoomMessage response) {
+            this.sender = sender;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Message a HotelManagerActor sends to itself when its first unconfirmed reservation or hold expires.
+     * @see nl.saxion.concurrency.actors.HotelManagerActor
+     */
+    class ExpireReservations implements RentARoomMessage {
+    }
+
+    /**
+     * Message an AggregatorActor sends to itself when the deadline for its replies has passed.
+     * @see nl.saxion.concurrency.actors.AggregatorActor
+     */
+    class AggregatorTimeout implements RentARoomMessage {
+    }
+
+    /**
+     * Message the RentARoomActor sends to itself every autoscaler interval, to check the load of its AgentActors.
+     * @see nl.saxion.concurrency.actors.RentARoomActor
+     */
+    class Autoscale implements RentARoomMessage {
+    }
+
+    /**
+     * Message to ask an AgentActor how busy it is. It waits in the mailbox behind the messages that came before it,
+     * so the time until the SendLoad shows how long requests wait in the mailbox.
+     */
+    class ProbeLoad implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> sender;
+        /**
+         * System.nanoTime() when the probe was sent.
+         */
+        public final long sentAt;
+
+        public ProbeLoad(ActorRef<RentARoomMessage> sender, long sentAt) {
+            this.sender = sender;
+            this.sentAt = sentAt;
+        }
+    }
+
+    /**
+     * Reply to ProbeLoad.
+     */
+    class SendLoad implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> agent;
+        public final long sentAt;
+        /**
+         * Messages the AgentActor handled since the previous probe.
+         */
+        public final int handled;
+
+        public SendLoad(ActorRef<RentARoomMessage> agent, long sentAt, int handled) {
+            this.agent = agent;
+            this.sentAt = sentAt;
+            this.handled = handled;
+        }
+    }
+
+    /**
+     * Message to stop an AgentActor. It leaves the group of the routers first,
+     * and handles the messages that still arrive for the drain time before it stops.
+     */
+    class StopAgent implements RentARoomMessage {
+    }
+
+    /**
+     * Message the RentARoomActor gets when one of its AgentActors stopped.
+     */
+    class AgentStopped implements RentARoomMessage {
+        public final ActorRef<RentARoomMessage> agent;
+
+        public AgentStopped(ActorRef<RentARoomMessage> agent) {
+            this.agent = agent;
+        }
+    }
 
     /**
      * Message with the current receptionist list of HotelManagerActors.
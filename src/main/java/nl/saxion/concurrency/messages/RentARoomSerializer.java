@@ -0,0 +1,649 @@
+package nl.saxion.concurrency.messages;
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorRefResolver;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.SerializerWithStringManifest;
+import nl.saxion.concurrency.domain.HotelSummary;
+import nl.saxion.concurrency.domain.Rejection;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.persistence.HotelSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary serializer for the RentARoomMessages between nodes, and the HotelEvents and HotelSnapshots in the journal,
+ * instead of java serialization, which writes the names of all classes and fields in every message.
+ * Only the fields are written, in the order of the constructor. The manifest is the name of the class.
+ * <p>
+ * Strings are their length and UTF-8 bytes, with length -1 for null. Dates are epoch days, actor refs are their path,
+ * enums are their number.
+ * Bound in application.conf.
+ */
+public class RentARoomSerializer extends SerializerWithStringManifest {
+
+    private static final int IDENTIFIER = 4711;
+
+    private final ExtendedActorSystem system;
+    /**
+     * Made on first use, the typed system isn't there yet when the serializer is made.
+     */
+    private ActorRefResolver resolver;
+
+
+    public RentARoomSerializer(ExtendedActorSystem system) {
+        this.system = system;
+    }
+
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        return o.getClass().getSimpleName();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the object isn't a message or event that can be sent to another node.
+     */
+    @Override
+    public byte[] toBinary(Object o) {
+        if (o instanceof HotelSnapshot) {
+            return ((HotelSnapshot) o).toBytes();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (o instanceof RentARoomMessage) {
+                writeMessage((RentARoomMessage) o, out);
+            } else if (o instanceof HotelEvent) {
+                writeEvent((HotelEvent) o, out);
+            } else {
+                throw new IllegalArgumentException("Can't serialize " + o.getClass().getName() + ".");
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        if (manifest.equals("HotelSnapshot")) {
+            return HotelSnapshot.fromBytes(bytes);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            Object o = readEvent(manifest, in);
+            return o != null ? o : readMessage(manifest, in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+
+    private void writeMessage(RentARoomMessage message, DataOutputStream out) throws IOException {
+        if (message instanceof RentARoomMessage.Done) {
+            RentARoomMessage.Done done = (RentARoomMessage.Done) message;
+            out.writeByte(done.action.ordinal());
+            writeString(done.hotelName, out);
+        } else if (message instanceof RentARoomMessage.Rejected) {
+            writeRejection(((RentARoomMessage.Rejected) message).rejection, out);
+        } else if (message instanceof RentARoomMessage.AddAgent) {
+            writeRef(((RentARoomMessage.AddAgent) message).sender, out);
+        } else if (message instanceof RentARoomMessage.ListHotels) {
+            writeRef(((RentARoomMessage.ListHotels) message).sender, out);
+        } else if (message instanceof RentARoomMessage.AddHotel) {
+            RentARoomMessage.AddHotel addHotel = (RentARoomMessage.AddHotel) message;
+            writeRef(addHotel.sender, out);
+            writeString(addHotel.name, out);
+            out.writeInt(addHotel.roomCount);
+        } else if (message instanceof RentARoomMessage.DeleteHotel) {
+            RentARoomMessage.DeleteHotel deleteHotel = (RentARoomMessage.DeleteHotel) message;
+            writeRef(deleteHotel.sender, out);
+            writeString(deleteHotel.name, out);
+        } else if (message instanceof RentARoomMessage.ListAvailableRooms) {
+            RentARoomMessage.ListAvailableRooms list = (RentARoomMessage.ListAvailableRooms) message;
+            writeRef(list.sender, out);
+            out.writeInt(list.minRoomCount);
+            writeDate(list.date, out);
+            out.writeInt(list.nights);
+        } else if (message instanceof RentARoomMessage.SearchAvailableRooms) {
+            RentARoomMessage.SearchAvailableRooms search = (RentARoomMessage.SearchAvailableRooms) message;
+            writeRef(search.sender, out);
+            out.writeInt(search.minRoomCount);
+            writeDate(search.date, out);
+            out.writeInt(search.nights);
+            out.writeInt(search.limit);
+            out.writeLong(search.budget.toMillis());
+        } else if (message instanceof RentARoomMessage.RequestAvailableRooms) {
+            RentARoomMessage.RequestAvailableRooms request = (RentARoomMessage.RequestAvailableRooms) message;
+            writeRef(request.sender, out);
+            out.writeInt(request.minRoomCount);
+            writeDate(request.date, out);
+            out.writeInt(request.nights);
+        } else if (message instanceof RentARoomMessage.SendAvailableRooms) {
+            RentARoomMessage.SendAvailableRooms send = (RentARoomMessage.SendAvailableRooms) message;
+            writeString(send.hotelName, out);
+            out.writeInt(send.availableRooms);
+        } else if (message instanceof RentARoomMessage.RequestHotelSummary) {
+            RentARoomMessage.RequestHotelSummary request = (RentARoomMessage.RequestHotelSummary) message;
+            writeRef(request.sender, out);
+            writeDate(request.date, out);
+            out.writeInt(request.nights);
+        } else if (message instanceof RentARoomMessage.SendHotelSummary) {
+            writeSummary(((RentARoomMessage.SendHotelSummary) message).summary, out);
+        } else if (message instanceof RentARoomMessage.SendHotels) {
+            ArrayList<HotelSummary> hotels = ((RentARoomMessage.SendHotels) message).hotels;
+            out.writeInt(hotels.size());
+            for (HotelSummary summary : hotels) {
+                writeSummary(summary, out);
+            }
+        } else if (message instanceof RentARoomMessage.SendHotelsWithRooms) {
+            writeAvailableRooms(((RentARoomMessage.SendHotelsWithRooms) message).hotels, out);
+        } else if (message instanceof RentARoomMessage.SendBestHotels) {
+            RentARoomMessage.SendBestHotels best = (RentARoomMessage.SendBestHotels) message;
+            writeAvailableRooms(best.hotels, out);
+            out.writeInt(best.answered);
+            out.writeInt(best.hotelCount);
+        } else if (message instanceof RentARoomMessage.ListReservations) {
+            RentARoomMessage.ListReservations list = (RentARoomMessage.ListReservations) message;
+            writeRef(list.sender, out);
+            writeString(list.hotelName, out);
+            writeString(list.customer, out);
+        } else if (message instanceof RentARoomMessage.SendReservations) {
+            RentARoomMessage.SendReservations send = (RentARoomMessage.SendReservations) message;
+            writeString(send.hotelName, out);
+            writeReservations(send.reservations, out);
+        } else if (message instanceof RentARoomMessage.ListCustomerReservations) {
+            RentARoomMessage.ListCustomerReservations list = (RentARoomMessage.ListCustomerReservations) message;
+            writeRef(list.sender, out);
+            writeString(list.customer, out);
+        } else if (message instanceof RentARoomMessage.RequestCustomerReservations) {
+            RentARoomMessage.RequestCustomerReservations request =
+                    (RentARoomMessage.RequestCustomerReservations) message;
+            writeRef(request.sender, out);
+            writeString(request.customer, out);
+        } else if (message instanceof RentARoomMessage.SendCustomerReservations) {
+            RentARoomMessage.SendCustomerReservations send = (RentARoomMessage.SendCustomerReservations) message;
+            writeString(send.hotelName, out);
+            writeReservations(send.reservations, out);
+        } else if (message instanceof RentARoomMessage.SendCustomerReservationTotals) {
+            RentARoomMessage.SendCustomerReservationTotals totals =
+                    (RentARoomMessage.SendCustomerReservationTotals) message;
+            out.writeInt(totals.reservationCount);
+            out.writeInt(totals.hotelCount);
+        } else if (message instanceof RentARoomMessage.RequestReservationsMultiHotels) {
+            RentARoomMessage.RequestReservationsMultiHotels request =
+                    (RentARoomMessage.RequestReservationsMultiHotels) message;
+            writeRef(request.sender, out);
+            out.writeInt(request.reservations.size());
+            for (Map.Entry<String, ArrayList<Reservation>> entry : request.reservations.entrySet()) {
+                writeString(entry.getKey(), out);
+                writeReservations(entry.getValue(), out);
+            }
+            out.writeBoolean(request.allOrNothing);
+        } else if (message instanceof RentARoomMessage.RequestReservations) {
+            RentARoomMessage.RequestReservations request = (RentARoomMessage.RequestReservations) message;
+            writeRef(request.sender, out);
+            writeReservations(request.reservations, out);
+        } else if (message instanceof RentARoomMessage.Booked) {
+            writeBooked((RentARoomMessage.Booked) message, out);
+        } else if (message instanceof RentARoomMessage.BookingResult) {
+            RentARoomMessage.BookingResult result = (RentARoomMessage.BookingResult) message;
+            out.writeInt(result.rejections.size());
+            for (Rejection rejection : result.rejections) {
+                writeRejection(rejection, out);
+            }
+            out.writeInt(result.hotels.size());
+            for (RentARoomMessage.Booked booked : result.hotels) {
+                writeBooked(booked, out);
+            }
+            out.writeBoolean(result.aborted);
+        } else if (message instanceof RentARoomMessage.HoldReservations) {
+            RentARoomMessage.HoldReservations hold = (RentARoomMessage.HoldReservations) message;
+            writeRef(hold.sender, out);
+            writeString(hold.holdId, out);
+            writeReservations(hold.reservations, out);
+        } else if (message instanceof RentARoomMessage.CommitHold) {
+            RentARoomMessage.CommitHold commit = (RentARoomMessage.CommitHold) message;
+            writeRef(commit.sender, out);
+            writeString(commit.holdId, out);
+        } else if (message instanceof RentARoomMessage.ReleaseHold) {
+            RentARoomMessage.ReleaseHold release = (RentARoomMessage.ReleaseHold) message;
+            writeRef(release.sender, out);
+            writeString(release.holdId, out);
+        } else if (message instanceof RentARoomMessage.HoldResponse) {
+            RentARoomMessage.HoldResponse response = (RentARoomMessage.HoldResponse) message;
+            writeString(response.hotelName, out);
+            writeString(response.holdId, out);
+            writeReservations(response.reservations, out);
+            writeRejection(response.rejection, out);
+        } else if (message instanceof RentARoomMessage.ConfirmReservation) {
+            RentARoomMessage.ConfirmReservation confirm = (RentARoomMessage.ConfirmReservation) message;
+            writeRef(confirm.sender, out);
+            writeString(confirm.id, out);
+        } else if (message instanceof RentARoomMessage.CancelReservation) {
+            RentARoomMessage.CancelReservation cancel = (RentARoomMessage.CancelReservation) message;
+            writeRef(cancel.sender, out);
+            writeString(cancel.id, out);
+        } else if (message instanceof RentARoomMessage.GetReservation) {
+            RentARoomMessage.GetReservation get = (RentARoomMessage.GetReservation) message;
+            writeRef(get.sender, out);
+            writeString(get.id, out);
+        } else if (message instanceof RentARoomMessage.SendReservation) {
+            writeReservation(((RentARoomMessage.SendReservation) message).reservation, out);
+        } else if (message instanceof RentARoomMessage.HotelChanged) {
+            RentARoomMessage.HotelChanged changed = (RentARoomMessage.HotelChanged) message;
+            writeString(changed.hotelName, out);
+            writeDate(changed.from, out);
+            writeDate(changed.to, out);
+        } else if (message instanceof RentARoomMessage.SummariesFetched) {
+            RentARoomMessage.SummariesFetched fetched = (RentARoomMessage.SummariesFetched) message;
+            writeString(manifest(fetched.query), out);
+            writeMessage(fetched.query, out);
+            writeDate(fetched.date, out);
+            out.writeInt(fetched.nights);
+            out.writeInt(fetched.summaries.size());
+            for (HotelSummary summary : fetched.summaries) {
+                writeSummary(summary, out);
+            }
+            out.writeLong(fetched.requestedAt);
+        } else if (message instanceof RentARoomMessage.ReservationsWritten) {
+            RentARoomMessage.ReservationsWritten written = (RentARoomMessage.ReservationsWritten) message;
+            writeDate(written.date, out);
+            out.writeInt(written.count);
+        } else if (message instanceof RentARoomMessage.ArchiveLookedUp) {
+            RentARoomMessage.ArchiveLookedUp lookedUp = (RentARoomMessage.ArchiveLookedUp) message;
+            writeRef(lookedUp.sender, out);
+            writeString(manifest(lookedUp.response), out);
+            writeMessage(lookedUp.response, out);
+        } else if (message instanceof RentARoomMessage.ProbeLoad) {
+            RentARoomMessage.ProbeLoad probe = (RentARoomMessage.ProbeLoad) message;
+            writeRef(probe.sender, out);
+            out.writeLong(probe.sentAt);
+        } else if (message instanceof RentARoomMessage.SendLoad) {
+            RentARoomMessage.SendLoad load = (RentARoomMessage.SendLoad) message;
+            writeRef(load.agent, out);
+            out.writeLong(load.sentAt);
+            out.writeInt(load.handled);
+        } else if (message instanceof RentARoomMessage.AgentStopped) {
+            writeRef(((RentARoomMessage.AgentStopped) message).agent, out);
+        } else if (!(message instanceof RentARoomMessage.BookingTimeout
+                || message instanceof RentARoomMessage.ArchiveReservations
+                || message instanceof RentARoomMessage.ExpireReservations
+                || message instanceof RentARoomMessage.AggregatorTimeout
+                || message instanceof RentARoomMessage.Autoscale
+                || message instanceof RentARoomMessage.StopAgent)) {
+            // UpdateHotelManagerActors only goes to actors of the same node.
+            throw new IllegalArgumentException("Can't serialize " + message.getClass().getName() + ".");
+        }
+    }
+
+    private RentARoomMessage readMessage(String manifest, DataInputStream in) throws IOException {
+        switch (manifest) {
+            case "Done":
+                return new RentARoomMessage.Done(RentARoomMessage.Done.Action.values()[in.readByte()], readString(in));
+            case "Rejected":
+                return new RentARoomMessage.Rejected(readRejection(in));
+            case "AddAgent":
+                return new RentARoomMessage.AddAgent(readRef(in));
+            case "ListHotels":
+                return new RentARoomMessage.ListHotels(readRef(in));
+            case "AddHotel":
+                return new RentARoomMessage.AddHotel(readRef(in), readString(in), in.readInt());
+            case "DeleteHotel":
+                return new RentARoomMessage.DeleteHotel(readRef(in), readString(in));
+            case "ListAvailableRooms":
+                return new RentARoomMessage.ListAvailableRooms(readRef(in), in.readInt(), readDate(in), in.readInt());
+            case "SearchAvailableRooms":
+                return new RentARoomMessage.SearchAvailableRooms(readRef(in), in.readInt(), readDate(in), in.readInt(),
+                        in.readInt(), Duration.ofMillis(in.readLong()));
+            case "RequestAvailableRooms":
+                return new RentARoomMessage.RequestAvailableRooms(readRef(in), in.readInt(), readDate(in), in.readInt());
+            case "SendAvailableRooms":
+                return new RentARoomMessage.SendAvailableRooms(readString(in), in.readInt());
+            case "RequestHotelSummary":
+                return new RentARoomMessage.RequestHotelSummary(readRef(in), readDate(in), in.readInt());
+            case "SendHotelSummary":
+                return new RentARoomMessage.SendHotelSummary(readSummary(in));
+            case "SendHotels": {
+                int count = in.readInt();
+                ArrayList<HotelSummary> hotels = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    hotels.add(readSummary(in));
+                }
+                return new RentARoomMessage.SendHotels(hotels);
+            }
+            case "SendHotelsWithRooms":
+                return new RentARoomMessage.SendHotelsWithRooms(readAvailableRooms(in));
+            case "SendBestHotels":
+                return new RentARoomMessage.SendBestHotels(readAvailableRooms(in), in.readInt(), in.readInt());
+            case "ListReservations":
+                return new RentARoomMessage.ListReservations(readRef(in), readString(in), readString(in));
+            case "SendReservations":
+                return new RentARoomMessage.SendReservations(readString(in), readReservations(in));
+            case "ListCustomerReservations":
+                return new RentARoomMessage.ListCustomerReservations(readRef(in), readString(in));
+            case "RequestCustomerReservations":
+                return new RentARoomMessage.RequestCustomerReservations(readRef(in), readString(in));
+            case "SendCustomerReservations":
+                return new RentARoomMessage.SendCustomerReservations(readString(in), readReservations(in));
+            case "SendCustomerReservationTotals":
+                return new RentARoomMessage.SendCustomerReservationTotals(in.readInt(), in.readInt());
+            case "RequestReservationsMultiHotels": {
+                ActorRef<RentARoomMessage> sender = readRef(in);
+                int count = in.readInt();
+                HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    reservations.put(readString(in), readReservations(in));
+                }
+                return new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations, in.readBoolean());
+            }
+            case "RequestReservations":
+                return new RentARoomMessage.RequestReservations(readRef(in), readReservations(in));
+            case "Booked":
+                return readBooked(in);
+            case "BookingResult": {
+                int rejectionCount = in.readInt();
+                ArrayList<Rejection> rejections = new ArrayList<>(rejectionCount);
+                for (int i = 0; i < rejectionCount; i++) {
+                    rejections.add(readRejection(in));
+                }
+                int hotelCount = in.readInt();
+                ArrayList<RentARoomMessage.Booked> hotels = new ArrayList<>(hotelCount);
+                for (int i = 0; i < hotelCount; i++) {
+                    hotels.add(readBooked(in));
+                }
+                return new RentARoomMessage.BookingResult(rejections, hotels, in.readBoolean());
+            }
+            case "HoldReservations":
+                return new RentARoomMessage.HoldReservations(readRef(in), readString(in), readReservations(in));
+            case "CommitHold":
+                return new RentARoomMessage.CommitHold(readRef(in), readString(in));
+            case "ReleaseHold":
+                return new RentARoomMessage.ReleaseHold(readRef(in), readString(in));
+            case "HoldResponse":
+                return new RentARoomMessage.HoldResponse(readString(in), readString(in), readReservations(in),
+                        readRejection(in));
+            case "BookingTimeout":
+                return new RentARoomMessage.BookingTimeout();
+            case "ConfirmReservation":
+                return new RentARoomMessage.ConfirmReservation(readRef(in), readString(in));
+            case "CancelReservation":
+                return new RentARoomMessage.CancelReservation(readRef(in), readString(in));
+            case "GetReservation":
+                return new RentARoomMessage.GetReservation(readRef(in), readString(in));
+            case "SendReservation":
+                return new RentARoomMessage.SendReservation(readReservation(in));
+            case "HotelChanged":
+                return new RentARoomMessage.HotelChanged(readString(in), readDate(in), readDate(in));
+            case "SummariesFetched": {
+                RentARoomMessage query = readMessage(readString(in), in);
+                LocalDate date = readDate(in);
+                int nights = in.readInt();
+                int count = in.readInt();
+                ArrayList<HotelSummary> summaries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    summaries.add(readSummary(in));
+                }
+                return new RentARoomMessage.SummariesFetched(query, date, nights, summaries, in.readLong());
+            }
+            case "ArchiveReservations":
+                return new RentARoomMessage.ArchiveReservations();
+            case "ReservationsWritten":
+                return new RentARoomMessage.ReservationsWritten(readDate(in), in.readInt());
+            case "ArchiveLookedUp": {
+                ActorRef<RentARoomMessage> sender = readRef(in);
+                return new RentARoomMessage.ArchiveLookedUp(sender, readMessage(readString(in), in));
+            }
+            case "ExpireReservations":
+                return new RentARoomMessage.ExpireReservations();
+            case "AggregatorTimeout":
+                return new RentARoomMessage.AggregatorTimeout();
+            case "Autoscale":
+                return new RentARoomMessage.Autoscale();
+            case "ProbeLoad":
+                return new RentARoomMessage.ProbeLoad(readRef(in), in.readLong());
+            case "SendLoad":
+                return new RentARoomMessage.SendLoad(readRef(in), in.readLong(), in.readInt());
+            case "StopAgent":
+                return new RentARoomMessage.StopAgent();
+            case "AgentStopped":
+                return new RentARoomMessage.AgentStopped(readRef(in));
+            default:
+                throw new NotSerializableException("Unknown manifest " + manifest + ".");
+        }
+    }
+
+
+    private void writeEvent(HotelEvent event, DataOutputStream out) throws IOException {
+        if (event instanceof HotelEvent.HotelAdded) {
+            out.writeInt(((HotelEvent.HotelAdded) event).roomCount);
+        } else if (event instanceof HotelEvent.ReservationAdded) {
+            writeReservation(((HotelEvent.ReservationAdded) event).reservation, out);
+        } else if (event instanceof HotelEvent.ReservationConfirmed) {
+            writeString(((HotelEvent.ReservationConfirmed) event).id, out);
+        } else if (event instanceof HotelEvent.ReservationCancelled) {
+            writeString(((HotelEvent.ReservationCancelled) event).id, out);
+        } else if (event instanceof HotelEvent.ReservationsHeld) {
+            HotelEvent.ReservationsHeld held = (HotelEvent.ReservationsHeld) event;
+            writeString(held.holdId, out);
+            writeReservations(held.reservations, out);
+            out.writeLong(held.expiresAt);
+        } else if (event instanceof HotelEvent.HoldCommitted) {
+            writeString(((HotelEvent.HoldCommitted) event).holdId, out);
+        } else if (event instanceof HotelEvent.HoldReleased) {
+            writeString(((HotelEvent.HoldReleased) event).holdId, out);
+        } else if (event instanceof HotelEvent.ReservationsExpired) {
+            out.writeLong(((HotelEvent.ReservationsExpired) event).time);
+        } else if (event instanceof HotelEvent.ReservationsArchived) {
+            writeDate(((HotelEvent.ReservationsArchived) event).date, out);
+        } else if (!(event instanceof HotelEvent.HotelDeleted)) {
+            throw new IllegalArgumentException("Can't serialize " + event.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * @return Null if the manifest isn't of an event.
+     */
+    private HotelEvent readEvent(String manifest, DataInputStream in) throws IOException {
+        switch (manifest) {
+            case "HotelAdded":
+                return new HotelEvent.HotelAdded(in.readInt());
+            case "HotelDeleted":
+                return new HotelEvent.HotelDeleted();
+            case "ReservationAdded":
+                return new HotelEvent.ReservationAdded(readReservation(in));
+            case "ReservationConfirmed":
+                return new HotelEvent.ReservationConfirmed(readString(in));
+            case "ReservationCancelled":
+                return new HotelEvent.ReservationCancelled(readString(in));
+            case "ReservationsHeld":
+                return new HotelEvent.ReservationsHeld(readString(in), readReservations(in), in.readLong());
+            case "HoldCommitted":
+                return new HotelEvent.HoldCommitted(readString(in));
+            case "HoldReleased":
+                return new HotelEvent.HoldReleased(readString(in));
+            case "ReservationsExpired":
+                return new HotelEvent.ReservationsExpired(in.readLong());
+            case "ReservationsArchived":
+                return new HotelEvent.ReservationsArchived(readDate(in));
+            default:
+                return null;
+        }
+    }
+
+
+    private void writeReservations(ArrayList<Reservation> reservations, DataOutputStream out) throws IOException {
+        out.writeInt(reservations.size());
+        for (Reservation reservation : reservations) {
+            writeReservation(reservation, out);
+        }
+    }
+
+    private ArrayList<Reservation> readReservations(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<Reservation> reservations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            reservations.add(readReservation(in));
+        }
+        return reservations;
+    }
+
+    private void writeReservation(Reservation reservation, DataOutputStream out) throws IOException {
+        writeString(reservation.id, out);
+        writeString(reservation.customer, out);
+        out.writeInt(reservation.roomCount);
+        writeDate(reservation.date, out);
+        writeDate(reservation.checkOut, out);
+        out.writeLong(reservation.expiresAt);
+        out.writeBoolean(reservation.getConfirmed());
+    }
+
+    private Reservation readReservation(DataInputStream in) throws IOException {
+        Reservation reservation = new Reservation(
+                readString(in), readString(in), in.readInt(), readDate(in), readDate(in), in.readLong());
+        reservation.setConfirmed(in.readBoolean());
+        return reservation;
+    }
+
+    /**
+     * Booked is also part of BookingResult.
+     */
+    private void writeBooked(RentARoomMessage.Booked booked, DataOutputStream out) throws IOException {
+        writeString(booked.hotelName, out);
+        writeReservations(booked.reservations, out);
+        for (Rejection rejection : booked.rejections) {
+            writeRejection(rejection, out);
+        }
+    }
+
+    private RentARoomMessage.Booked readBooked(DataInputStream in) throws IOException {
+        String hotelName = readString(in);
+        ArrayList<Reservation> reservations = readReservations(in);
+        ArrayList<Rejection> rejections = new ArrayList<>(reservations.size());
+        for (int i = 0; i < reservations.size(); i++) {
+            rejections.add(readRejection(in));
+        }
+        return new RentARoomMessage.Booked(hotelName, reservations, rejections);
+    }
+
+    /**
+     * The reason as its number, with -1 for null.
+     */
+    private static void writeRejection(Rejection rejection, DataOutputStream out) throws IOException {
+        if (rejection == null) {
+            out.writeByte(-1);
+            return;
+        }
+        out.writeByte(rejection.reason.ordinal());
+        writeString(rejection.subject, out);
+        out.writeInt(rejection.roomCount);
+        writeDate(rejection.date, out);
+    }
+
+    private static Rejection readRejection(DataInputStream in) throws IOException {
+        byte reason = in.readByte();
+        if (reason < 0) {
+            return null;
+        }
+        return new Rejection(Rejection.Reason.values()[reason], readString(in), in.readInt(), readDate(in));
+    }
+
+    private void writeAvailableRooms(ArrayList<RentARoomMessage.SendAvailableRooms> hotels, DataOutputStream out)
+            throws IOException {
+        out.writeInt(hotels.size());
+        for (RentARoomMessage.SendAvailableRooms hotel : hotels) {
+            writeString(hotel.hotelName, out);
+            out.writeInt(hotel.availableRooms);
+        }
+    }
+
+    private ArrayList<RentARoomMessage.SendAvailableRooms> readAvailableRooms(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<RentARoomMessage.SendAvailableRooms> hotels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hotels.add(new RentARoomMessage.SendAvailableRooms(readString(in), in.readInt()));
+        }
+        return hotels;
+    }
+
+    private void writeSummary(HotelSummary summary, DataOutputStream out) throws IOException {
+        writeString(summary.name, out);
+        out.writeInt(summary.roomCount);
+        out.writeInt(summary.reservationCount);
+        writeDate(summary.date, out);
+        out.writeInt(summary.nights);
+        out.writeInt(summary.availableRooms);
+    }
+
+    private HotelSummary readSummary(DataInputStream in) throws IOException {
+        return new HotelSummary(readString(in), in.readInt(), in.readInt(), readDate(in), in.readInt(), in.readInt());
+    }
+
+    private void writeRef(ActorRef<RentARoomMessage> ref, DataOutputStream out) throws IOException {
+        writeString(ref == null ? null : getResolver().toSerializationFormat(ref), out);
+    }
+
+    private ActorRef<RentARoomMessage> readRef(DataInputStream in) throws IOException {
+        String path = readString(in);
+        return path == null ? null : getResolver().resolveActorRef(path);
+    }
+
+    private ActorRefResolver getResolver() {
+        if (resolver == null) {
+            resolver = ActorRefResolver.get(Adapter.toTyped(system));
+        }
+        return resolver;
+    }
+
+    /**
+     * Not writeUTF(), that only fits 64 KB, and a name or id from a user can be longer.
+     */
+    private static void writeString(String string, DataOutputStream out) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(LocalDate date, DataOutputStream out) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.toEpochDay());
+        }
+    }
+
+    private static LocalDate readDate(DataInputStream in) throws IOException {
+        return in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+    }
+
+}
@@ -0,0 +1,310 @@
+package nl.saxion.concurrency.persistence;
+
+import akka.dispatch.Futures;
+import akka.persistence.AtomicWrite;
+import akka.persistence.PersistentRepr;
+import akka.persistence.journal.japi.AsyncWriteJournal;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import com.typesafe.config.Config;
+import scala.collection.JavaConverters;
+import scala.compat.java8.FutureConverters;
+import scala.concurrent.Future;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Akka persistence journal that appends the events of all persistence ids to one WriteAheadLog.
+ * Writes only wait for their commit, so with group commit the writes of many hotels share one fsync,
+ * and a hotel only replies after the fsync of its events.
+ * <p>
+ * Deletions are appended as records as well. The positions of the events that aren't deleted are kept in memory,
+ * and are found again on start by reading the whole log. Segments before the first event that isn't deleted are removed.
+ * An event of a hotel that doesn't change anymore would keep every segment after it, so when less than half of the log
+ * is still needed, the needed events in the oldest segments are copied to the end of the log.
+ * That keeps the log, and the time to read it on start, at about twice the events that are needed.
+ * <p>
+ * Only one journal can use a directory. Other nodes reach it through akka.persistence.journal.proxy.
+ */
+public class FileJournal extends AsyncWriteJournal {
+
+    private static final byte EVENT = 0;
+    private static final byte DELETE = 1;
+
+    private final WriteAheadLog log;
+    private final int segmentSize;
+    private final Serialization serialization;
+    private final HashMap<String, Events> index = new HashMap<>();
+    /**
+     * The events that aren't deleted, by their position in the log. The first one keeps its segment and all after it.
+     */
+    private final TreeMap<Long, LiveEvent> live = new TreeMap<>();
+    /**
+     * The size of the records in live.
+     */
+    private long liveBytes;
+
+
+    public FileJournal(Config config) throws IOException {
+        segmentSize = (int) (long) config.getBytes("segment-size");
+        log = new WriteAheadLog(Paths.get(config.getString("dir")), segmentSize, config.getBoolean("group-commit"));
+        serialization = SerializationExtension.get(context().system());
+        log.forEach(this::index);
+    }
+
+
+    @Override
+    public Future<Iterable<Optional<Exception>>> doAsyncWriteMessages(Iterable<AtomicWrite> messages) {
+        ArrayList<Optional<Exception>> results = new ArrayList<>();
+        for (AtomicWrite write : messages) {
+            List<PersistentRepr> events = JavaConverters.seqAsJavaList(write.payload());
+
+            // Serialize all events before writing, an AtomicWrite is written completely or not at all.
+            ArrayList<byte[]> records = new ArrayList<>(events.size());
+            try {
+                for (PersistentRepr event : events) {
+                    records.add(encode(EVENT, event.persistenceId(), event.sequenceNr(),
+                            serialization.serialize(event).get()));
+                }
+            } catch (Exception ex) {
+                // Rejects this write, the other writes can still succeed.
+                results.add(Optional.of(ex));
+                continue;
+            }
+
+            for (int i = 0; i < records.size(); i++) {
+                long position = log.append(records.get(i));
+                addEvent(events.get(i).persistenceId(), events.get(i).sequenceNr(), position, records.get(i).length);
+            }
+            results.add(Optional.empty());
+        }
+
+        // Completes when the batch is on disk, possibly together with the batches of other writes.
+        return FutureConverters.toScala(log.commit().thenApply(done -> (Iterable<Optional<Exception>>) results));
+    }
+
+    @Override
+    public Future<Void> doAsyncDeleteMessagesTo(String persistenceId, long toSequenceNr) {
+        Events events = index.get(persistenceId);
+        if (events == null) {
+            return Futures.successful(null);
+        }
+
+        long deletedTo = Math.min(toSequenceNr, events.highestSequenceNr);
+        log.append(encode(DELETE, persistenceId, deletedTo, new byte[0]));
+        deleteEvents(events, deletedTo);
+        compact();
+        // The index is only used by this actor, not by the thread that completes the commit.
+        // The segments are only removed after the copies of compact() are on disk.
+        long firstLivePosition = live.isEmpty() ? Long.MAX_VALUE : live.firstKey();
+
+        return FutureConverters.toScala(log.commit().thenApply(done -> {
+            try {
+                log.truncate(firstLivePosition);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return (Void) null;
+        }));
+    }
+
+    @Override
+    public Future<Void> doAsyncReplayMessages(String persistenceId,
+                                              long fromSequenceNr,
+                                              long toSequenceNr,
+                                              long max,
+                                              Consumer<PersistentRepr> replayCallback) {
+        Events events = index.get(persistenceId);
+        if (events == null) {
+            return Futures.successful(null);
+        }
+
+        long from = Math.max(fromSequenceNr, events.deletedTo + 1);
+        if (from > toSequenceNr) {
+            return Futures.successful(null);
+        }
+        long count = 0;
+        for (long position : events.positions.subMap(from, true, toSequenceNr, true).values()) {
+            if (count >= max) {
+                break;
+            }
+            byte[] record = log.read(position);
+            // Skips the header that encode() put in front of the event.
+            byte[] event = Arrays.copyOfRange(record, getHeaderSize(persistenceId), record.length);
+            replayCallback.accept(serialization.deserialize(event, PersistentRepr.class).get());
+            count++;
+        }
+        return Futures.successful(null);
+    }
+
+    @Override
+    public Future<Long> doAsyncReadHighestSequenceNr(String persistenceId, long fromSequenceNr) {
+        Events events = index.get(persistenceId);
+        return Futures.successful(events == null ? 0L : events.highestSequenceNr);
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        log.close();
+        super.postStop();
+    }
+
+
+    /**
+     * Adds a record of the log to the index. Used to build the index on start.
+     */
+    private void index(long position, byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            byte type = in.readByte();
+            String persistenceId = in.readUTF();
+            long sequenceNr = in.readLong();
+            if (type == EVENT) {
+                addEvent(persistenceId, sequenceNr, position, record.length);
+            } else {
+                deleteEvents(getEvents(persistenceId), sequenceNr);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return The record for the log: the type, the persistence id, the sequence number and the data.
+     */
+    private static byte[] encode(byte type, String persistenceId, long sequenceNr, byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(getHeaderSize(persistenceId) + data.length);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeUTF(persistenceId);
+            out.writeLong(sequenceNr);
+            out.write(data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return The size of the part of a record before its data. writeUTF() writes the length as a short.
+     */
+    private static int getHeaderSize(String persistenceId) {
+        int utfLength = 0;
+        for (char c : persistenceId.toCharArray()) {
+            utfLength += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return Byte.BYTES + Short.BYTES + utfLength + Long.BYTES;
+    }
+
+    /**
+     * Adds the event at the position to the index. A copy made by compact() replaces the event it was copied from.
+     */
+    private void addEvent(String persistenceId, long sequenceNr, long position, int length) {
+        Events events = getEvents(persistenceId);
+        Long copiedFrom = events.positions.put(sequenceNr, position);
+        if (copiedFrom != null) {
+            removeLive(copiedFrom);
+        }
+        events.highestSequenceNr = Math.max(events.highestSequenceNr, sequenceNr);
+        live.put(position, new LiveEvent(persistenceId, sequenceNr, length));
+        liveBytes += length;
+    }
+
+    /**
+     * Forgets the events up to and including the given sequence number.
+     * The last event stays in the log, the highest sequence number needs to survive a restart.
+     */
+    private void deleteEvents(Events events, long toSequenceNr) {
+        events.deletedTo = Math.max(events.deletedTo, toSequenceNr);
+        boolean keepLast = !events.positions.isEmpty() && events.positions.lastKey() <= events.deletedTo;
+        Iterator<Map.Entry<Long, Long>> deleted = events.positions.headMap(events.deletedTo, true).entrySet().iterator();
+        while (deleted.hasNext()) {
+            Map.Entry<Long, Long> event = deleted.next();
+            if (keepLast && !deleted.hasNext()) {
+                break;
+            }
+            removeLive(event.getValue());
+            deleted.remove();
+        }
+    }
+
+    private void removeLive(long position) {
+        LiveEvent event = live.remove(position);
+        if (event != null) {
+            liveBytes -= event.length;
+        }
+    }
+
+    /**
+     * Copies the events that aren't deleted in the oldest segments to the end of the log, one segment at a time,
+     * while less than half of the log is needed and the oldest segment isn't the one that is appended to.
+     * A persistence id with deleted events gets a new deletion record before its copies,
+     * so its copies of deleted events aren't replayed after a restart either.
+     * The old segments are removed by truncate() once the copies are committed.
+     */
+    private void compact() {
+        long start = log.getStart();
+        HashSet<String> deletionsWritten = new HashSet<>();
+        while (log.getEnd() - start >= 2L * segmentSize && liveBytes * 2 < log.getEnd() - start) {
+            long end = start + segmentSize;
+            for (Map.Entry<Long, LiveEvent> event : new ArrayList<>(live.headMap(end).entrySet())) {
+                String persistenceId = event.getValue().persistenceId;
+                Events events = index.get(persistenceId);
+                if (events.deletedTo > 0 && deletionsWritten.add(persistenceId)) {
+                    log.append(encode(DELETE, persistenceId, events.deletedTo, new byte[0]));
+                }
+                byte[] record = log.read(event.getKey());
+                addEvent(persistenceId, event.getValue().sequenceNr, log.append(record), record.length);
+            }
+            start = end;
+        }
+    }
+
+    private Events getEvents(String persistenceId) {
+        return index.computeIfAbsent(persistenceId, id -> new Events());
+    }
+
+
+    /**
+     * The events of one persistence id that aren't deleted.
+     */
+    private static class Events {
+        /**
+         * Position in the log by sequence number.
+         */
+        final TreeMap<Long, Long> positions = new TreeMap<>();
+        long highestSequenceNr;
+        long deletedTo;
+    }
+
+    /**
+     * An event in live, with what's needed to copy it.
+     */
+    private static class LiveEvent {
+        final String persistenceId;
+        final long sequenceNr;
+        final int length;
+
+        LiveEvent(String persistenceId, long sequenceNr, int length) {
+            this.persistenceId = persistenceId;
+            this.sequenceNr = sequenceNr;
+            this.length = length;
+        }
+    }
+
+}
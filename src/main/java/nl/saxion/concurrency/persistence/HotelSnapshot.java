@@ -0,0 +1,75 @@
+package nl.saxion.concurrency.persistence;
+
+import nl.saxion.concurrency.domain.Hotel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A snapshot of a hotel, as the bytes of Hotel.writeTo.
+ * The hotel is changed in place by its actor, while the snapshot store serializes the snapshot on another thread.
+ * So the snapshot is made on the thread of the actor, and can't be changed after that.
+ * The RentARoomSerializer stores its bytes as they are.
+ * @see Hotel#writeTo(java.io.DataOutput)
+ */
+public final class HotelSnapshot {
+
+    /**
+     * Empty when there is no hotel.
+     */
+    private final byte[] bytes;
+
+
+    private HotelSnapshot(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @param hotel Null if the hotel isn't added.
+     */
+    public static HotelSnapshot of(Hotel hotel) {
+        if (hotel == null) {
+            return new HotelSnapshot(new byte[0]);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            hotel.writeTo(data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new HotelSnapshot(out.toByteArray());
+    }
+
+    /**
+     * @param bytes Of toBytes, not copied.
+     */
+    public static HotelSnapshot fromBytes(byte[] bytes) {
+        return new HotelSnapshot(bytes);
+    }
+
+    /**
+     * @return The bytes of the snapshot. Not copied, so they must not be changed.
+     */
+    public byte[] toBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return A new hotel with the state of the snapshot, null if there was no hotel.
+     */
+    public Hotel toHotel() {
+        if (bytes.length == 0) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return Hotel.readFrom(in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+package nl.saxion.concurrency.persistence;
+
+import akka.actor.ActorRef;
+import akka.actor.ExtendedActorSystem;
+import akka.japi.Util;
+import akka.persistence.DeleteMessagesFailure;
+import akka.persistence.DeleteMessagesSuccess;
+import akka.persistence.DeleteSnapshotFailure;
+import akka.persistence.DeleteSnapshotSuccess;
+import akka.persistence.DeleteSnapshotsFailure;
+import akka.persistence.DeleteSnapshotsSuccess;
+import akka.persistence.JournalProtocol;
+import akka.persistence.PersistentEnvelope;
+import akka.persistence.PersistentRepr;
+import akka.persistence.SaveSnapshotFailure;
+import akka.persistence.SaveSnapshotSuccess;
+import akka.persistence.SelectedSnapshot;
+import akka.persistence.SnapshotMetadata;
+import akka.persistence.SnapshotProtocol;
+import akka.persistence.SnapshotSelectionCriteria;
+import akka.remote.serialization.ThrowableNotSerializableException;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.SerializerWithStringManifest;
+import akka.serialization.Serializers;
+import scala.Option;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Binary serializer for the messages between the journal and snapshot store proxies on the other nodes
+ * and the journal and snapshot store on the first node. Akka only has java serialization for them, which is off.
+ * <p>
+ * The events and snapshots they carry are written with the serializer that is bound to them, which is the
+ * RentARoomSerializer for HotelEvents and HotelSnapshots. Actor refs are their path. Errors are their class and message, and come back as a
+ * ThrowableNotSerializableException, the persistent actor only logs them.
+ * Bound in application.conf.
+ */
+public class JournalProtocolSerializer extends SerializerWithStringManifest {
+
+    private static final int IDENTIFIER = 4712;
+
+    private final ExtendedActorSystem system;
+    /**
+     * Made on first use, the extension isn't there yet when the serializer is made.
+     */
+    private Serialization serialization;
+
+
+    public JournalProtocolSerializer(ExtendedActorSystem system) {
+        this.system = system;
+    }
+
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        return o.getClass().getSimpleName();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the object isn't a message of the journal or the snapshot store.
+     */
+    @Override
+    public byte[] toBinary(Object o) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(o, out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return read(manifest, in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+
+    private void write(Object o, DataOutputStream out) throws IOException {
+        if (o instanceof JournalProtocol.WriteMessages) {
+            JournalProtocol.WriteMessages write = (JournalProtocol.WriteMessages) o;
+            out.writeInt(write.messages().size());
+            for (PersistentEnvelope envelope : Util.javaArrayList(write.messages())) {
+                writeObject(envelope, out);
+            }
+            writeRef(write.persistentActor(), out);
+            out.writeInt(write.actorInstanceId());
+        } else if (o instanceof JournalProtocol.ReplayMessages) {
+            JournalProtocol.ReplayMessages replay = (JournalProtocol.ReplayMessages) o;
+            out.writeLong(replay.fromSequenceNr());
+            out.writeLong(replay.toSequenceNr());
+            out.writeLong(replay.max());
+            writeString(replay.persistenceId(), out);
+            writeRef(replay.persistentActor(), out);
+        } else if (o instanceof JournalProtocol.DeleteMessagesTo) {
+            JournalProtocol.DeleteMessagesTo delete = (JournalProtocol.DeleteMessagesTo) o;
+            writeString(delete.persistenceId(), out);
+            out.writeLong(delete.toSequenceNr());
+            writeRef(delete.persistentActor(), out);
+        } else if (o instanceof JournalProtocol.WriteMessagesSuccessful$) {
+            // Nothing to write.
+        } else if (o instanceof JournalProtocol.WriteMessagesFailed) {
+            JournalProtocol.WriteMessagesFailed failed = (JournalProtocol.WriteMessagesFailed) o;
+            writeThrowable(failed.cause(), out);
+            out.writeInt(failed.writeCount());
+        } else if (o instanceof JournalProtocol.WriteMessageSuccess) {
+            JournalProtocol.WriteMessageSuccess success = (JournalProtocol.WriteMessageSuccess) o;
+            writeObject(success.persistent(), out);
+            out.writeInt(success.actorInstanceId());
+        } else if (o instanceof JournalProtocol.WriteMessageRejected) {
+            JournalProtocol.WriteMessageRejected rejected = (JournalProtocol.WriteMessageRejected) o;
+            writeObject(rejected.message(), out);
+            writeThrowable(rejected.cause(), out);
+            out.writeInt(rejected.actorInstanceId());
+        } else if (o instanceof JournalProtocol.WriteMessageFailure) {
+            JournalProtocol.WriteMessageFailure failure = (JournalProtocol.WriteMessageFailure) o;
+            writeObject(failure.message(), out);
+            writeThrowable(failure.cause(), out);
+            out.writeInt(failure.actorInstanceId());
+        } else if (o instanceof JournalProtocol.LoopMessageSuccess) {
+            JournalProtocol.LoopMessageSuccess loop = (JournalProtocol.LoopMessageSuccess) o;
+            writeObject(loop.message(), out);
+            out.writeInt(loop.actorInstanceId());
+        } else if (o instanceof JournalProtocol.ReplayedMessage) {
+            writeObject(((JournalProtocol.ReplayedMessage) o).persistent(), out);
+        } else if (o instanceof JournalProtocol.RecoverySuccess) {
+            out.writeLong(((JournalProtocol.RecoverySuccess) o).highestSequenceNr());
+        } else if (o instanceof JournalProtocol.ReplayMessagesFailure) {
+            writeThrowable(((JournalProtocol.ReplayMessagesFailure) o).cause(), out);
+        } else if (o instanceof DeleteMessagesSuccess) {
+            out.writeLong(((DeleteMessagesSuccess) o).toSequenceNr());
+        } else if (o instanceof DeleteMessagesFailure) {
+            DeleteMessagesFailure failure = (DeleteMessagesFailure) o;
+            writeThrowable(failure.cause(), out);
+            out.writeLong(failure.toSequenceNr());
+        } else if (o instanceof SnapshotProtocol.LoadSnapshot) {
+            SnapshotProtocol.LoadSnapshot load = (SnapshotProtocol.LoadSnapshot) o;
+            writeString(load.persistenceId(), out);
+            writeCriteria(load.criteria(), out);
+            out.writeLong(load.toSequenceNr());
+        } else if (o instanceof SnapshotProtocol.LoadSnapshotResult) {
+            SnapshotProtocol.LoadSnapshotResult result = (SnapshotProtocol.LoadSnapshotResult) o;
+            out.writeBoolean(result.snapshot().isDefined());
+            if (result.snapshot().isDefined()) {
+                writeMetadata(result.snapshot().get().metadata(), out);
+                writeObject(result.snapshot().get().snapshot(), out);
+            }
+            out.writeLong(result.toSequenceNr());
+        } else if (o instanceof SnapshotProtocol.LoadSnapshotFailed) {
+            writeThrowable(((SnapshotProtocol.LoadSnapshotFailed) o).cause(), out);
+        } else if (o instanceof SnapshotProtocol.SaveSnapshot) {
+            SnapshotProtocol.SaveSnapshot save = (SnapshotProtocol.SaveSnapshot) o;
+            writeMetadata(save.metadata(), out);
+            writeObject(save.snapshot(), out);
+        } else if (o instanceof SnapshotProtocol.DeleteSnapshot) {
+            writeMetadata(((SnapshotProtocol.DeleteSnapshot) o).metadata(), out);
+        } else if (o instanceof SnapshotProtocol.DeleteSnapshots) {
+            SnapshotProtocol.DeleteSnapshots delete = (SnapshotProtocol.DeleteSnapshots) o;
+            writeString(delete.persistenceId(), out);
+            writeCriteria(delete.criteria(), out);
+        } else if (o instanceof SaveSnapshotSuccess) {
+            writeMetadata(((SaveSnapshotSuccess) o).metadata(), out);
+        } else if (o instanceof SaveSnapshotFailure) {
+            SaveSnapshotFailure failure = (SaveSnapshotFailure) o;
+            writeMetadata(failure.metadata(), out);
+            writeThrowable(failure.cause(), out);
+        } else if (o instanceof DeleteSnapshotSuccess) {
+            writeMetadata(((DeleteSnapshotSuccess) o).metadata(), out);
+        } else if (o instanceof DeleteSnapshotFailure) {
+            DeleteSnapshotFailure failure = (DeleteSnapshotFailure) o;
+            writeMetadata(failure.metadata(), out);
+            writeThrowable(failure.cause(), out);
+        } else if (o instanceof DeleteSnapshotsSuccess) {
+            writeCriteria(((DeleteSnapshotsSuccess) o).criteria(), out);
+        } else if (o instanceof DeleteSnapshotsFailure) {
+            DeleteSnapshotsFailure failure = (DeleteSnapshotsFailure) o;
+            writeCriteria(failure.criteria(), out);
+            writeThrowable(failure.cause(), out);
+        } else {
+            throw new IllegalArgumentException("Can't serialize " + o.getClass().getName() + ".");
+        }
+    }
+
+    private Object read(String manifest, DataInputStream in) throws IOException {
+        switch (manifest) {
+            case "WriteMessages": {
+                int count = in.readInt();
+                ArrayList<PersistentEnvelope> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    messages.add((PersistentEnvelope) readObject(in));
+                }
+                return new JournalProtocol.WriteMessages(Util.immutableSeq(messages), readRef(in), in.readInt());
+            }
+            case "ReplayMessages":
+                return new JournalProtocol.ReplayMessages(
+                        in.readLong(), in.readLong(), in.readLong(), readString(in), readRef(in));
+            case "DeleteMessagesTo":
+                return new JournalProtocol.DeleteMessagesTo(readString(in), in.readLong(), readRef(in));
+            case "WriteMessagesSuccessful$":
+                return JournalProtocol.WriteMessagesSuccessful$.MODULE$;
+            case "WriteMessagesFailed":
+                return new JournalProtocol.WriteMessagesFailed(readThrowable(in), in.readInt());
+            case "WriteMessageSuccess":
+                return new JournalProtocol.WriteMessageSuccess((PersistentRepr) readObject(in), in.readInt());
+            case "WriteMessageRejected":
+                return new JournalProtocol.WriteMessageRejected(
+                        (PersistentRepr) readObject(in), readThrowable(in), in.readInt());
+            case "WriteMessageFailure":
+                return new JournalProtocol.WriteMessageFailure(
+                        (PersistentRepr) readObject(in), readThrowable(in), in.readInt());
+            case "LoopMessageSuccess":
+                return new JournalProtocol.LoopMessageSuccess(readObject(in), in.readInt());
+            case "ReplayedMessage":
+                return new JournalProtocol.ReplayedMessage((PersistentRepr) readObject(in));
+            case "RecoverySuccess":
+                return new JournalProtocol.RecoverySuccess(in.readLong());
+            case "ReplayMessagesFailure":
+                return new JournalProtocol.ReplayMessagesFailure(readThrowable(in));
+            case "DeleteMessagesSuccess":
+                return new DeleteMessagesSuccess(in.readLong());
+            case "DeleteMessagesFailure":
+                return new DeleteMessagesFailure(readThrowable(in), in.readLong());
+            case "LoadSnapshot":
+                return new SnapshotProtocol.LoadSnapshot(readString(in), readCriteria(in), in.readLong());
+            case "LoadSnapshotResult": {
+                Option<SelectedSnapshot> snapshot = in.readBoolean()
+                        ? Option.apply(new SelectedSnapshot(readMetadata(in), readObject(in)))
+                        : Option.empty();
+                return new SnapshotProtocol.LoadSnapshotResult(snapshot, in.readLong());
+            }
+            case "LoadSnapshotFailed":
+                return new SnapshotProtocol.LoadSnapshotFailed(readThrowable(in));
+            case "SaveSnapshot":
+                return new SnapshotProtocol.SaveSnapshot(readMetadata(in), readObject(in));
+            case "DeleteSnapshot":
+                return new SnapshotProtocol.DeleteSnapshot(readMetadata(in));
+            case "DeleteSnapshots":
+                return new SnapshotProtocol.DeleteSnapshots(readString(in), readCriteria(in));
+            case "SaveSnapshotSuccess":
+                return new SaveSnapshotSuccess(readMetadata(in));
+            case "SaveSnapshotFailure":
+                return new SaveSnapshotFailure(readMetadata(in), readThrowable(in));
+            case "DeleteSnapshotSuccess":
+                return new DeleteSnapshotSuccess(readMetadata(in));
+            case "DeleteSnapshotFailure":
+                return new DeleteSnapshotFailure(readMetadata(in), readThrowable(in));
+            case "DeleteSnapshotsSuccess":
+                return new DeleteSnapshotsSuccess(readCriteria(in));
+            case "DeleteSnapshotsFailure":
+                return new DeleteSnapshotsFailure(readCriteria(in), readThrowable(in));
+            default:
+                throw new NotSerializableException("Unknown manifest " + manifest + ".");
+        }
+    }
+
+
+    /**
+     * Writes the object with the serializer that is bound to it, and the id and manifest to find it back.
+     */
+    private void writeObject(Object o, DataOutputStream out) throws IOException {
+        Serializer serializer = getSerialization().findSerializerFor(o);
+        byte[] bytes = serializer.toBinary(o);
+        out.writeInt(serializer.identifier());
+        writeString(Serializers.manifestFor(serializer, o), out);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private Object readObject(DataInputStream in) throws IOException {
+        int serializerId = in.readInt();
+        String manifest = readString(in);
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return getSerialization().deserialize(bytes, serializerId, manifest).get();
+    }
+
+    private static void writeMetadata(SnapshotMetadata metadata, DataOutputStream out) throws IOException {
+        writeString(metadata.persistenceId(), out);
+        out.writeLong(metadata.sequenceNr());
+        out.writeLong(metadata.timestamp());
+    }
+
+    private static SnapshotMetadata readMetadata(DataInputStream in) throws IOException {
+        return new SnapshotMetadata(readString(in), in.readLong(), in.readLong());
+    }
+
+    private static void writeCriteria(SnapshotSelectionCriteria criteria, DataOutputStream out) throws IOException {
+        out.writeLong(criteria.maxSequenceNr());
+        out.writeLong(criteria.maxTimestamp());
+        out.writeLong(criteria.minSequenceNr());
+        out.writeLong(criteria.minTimestamp());
+    }
+
+    private static SnapshotSelectionCriteria readCriteria(DataInputStream in) throws IOException {
+        return new SnapshotSelectionCriteria(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+    }
+
+    private void writeThrowable(Throwable cause, DataOutputStream out) throws IOException {
+        writeString(cause.getClass().getName(), out);
+        writeString(cause.getMessage(), out);
+    }
+
+    private Throwable readThrowable(DataInputStream in) throws IOException {
+        String className = readString(in);
+        return new ThrowableNotSerializableException(readString(in), className);
+    }
+
+    private void writeRef(ActorRef ref, DataOutputStream out) throws IOException {
+        writeString(ref == null ? null : Serialization.serializedActorPath(ref), out);
+    }
+
+    private ActorRef readRef(DataInputStream in) throws IOException {
+        String path = readString(in);
+        return path == null ? null : system.provider().resolveActorRef(path);
+    }
+
+    private Serialization getSerialization() {
+        if (serialization == null) {
+            serialization = SerializationExtension.get(system);
+        }
+        return serialization;
+    }
+
+    private static void writeString(String string, DataOutputStream out) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,293 @@
+package nl.saxion.concurrency.persistence;
+
+import nl.saxion.concurrency.domain.Reservation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of the past reservations of one hotel, so they don't have to stay in memory.
+ * Every append() adds one block, which is stored column by column: first the ids, then the check-in dates, and so on.
+ * The lowest and highest id of every block are kept in memory, so a lookup by id only reads the id column of the
+ * blocks whose range has the id, and the rest of the block that has it.
+ * Ids of the Snowflake generator grow over time, so the ranges of the blocks hardly overlap.
+ * <p>
+ * A block is stored as its length, its CRC32 and its bytes, like a record of the WriteAheadLog.
+ * A block that was partly written is cut off when the archive is opened.
+ * The ids of a block share their first 64 bits, the key of the hotel, which is stored once.
+ * Customers are stored once per block as well, the reservations refer to them by index.
+ * <p>
+ * Does blocking file I/O, so the HotelManagerActor uses it on the blocking dispatcher. Not thread safe.
+ */
+public class ReservationArchive implements AutoCloseable {
+
+    private static final String EXTENSION = ".archive";
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    /**
+     * Amount of reservations and the shared first 64 bits of their ids, at the start of every block.
+     */
+    private static final int BLOCK_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+
+    /**
+     * Where a block is in the file, and the range of the last 64 bits of its ids.
+     */
+    private static class Block {
+        final long position;
+        final int count;
+        final long minId;
+        final long maxId;
+
+        Block(long position, int count, long minId, long maxId) {
+            this.position = position;
+            this.count = count;
+            this.minId = minId;
+            this.maxId = maxId;
+        }
+    }
+
+    private final FileChannel channel;
+    /**
+     * Every block in the file, in the order they were appended.
+     */
+    private final ArrayList<Block> blocks = new ArrayList<>();
+    /**
+     * The first 64 bits of the ids, the same for every block. Only valid if there are blocks.
+     */
+    private long key;
+    private long end;
+    private int size;
+
+
+    /**
+     * Opens the archive in the given file, and finds the end of the last complete block to append to.
+     */
+    public ReservationArchive(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        end = 0;
+        while (true) {
+            byte[] block = readBlock(end);
+            if (block == null) {
+                break;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+            int count = buffer.getInt();
+            key = buffer.getLong();
+            long minId = Long.MAX_VALUE;
+            long maxId = Long.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                minId = Math.min(minId, id);
+                maxId = Math.max(maxId, id);
+            }
+            blocks.add(new Block(end, count, minId, maxId));
+            size += count;
+            end += HEADER_SIZE + block.length;
+        }
+        channel.truncate(end);
+    }
+
+    /**
+     * @return The file of the archive of the given hotel in the directory.
+     */
+    public static Path getFile(Path dir, String hotelName) {
+        return dir.resolve(hotelName + EXTENSION);
+    }
+
+
+    /**
+     * Adds the reservations as one block, and forces it to disk.
+     * @throws IllegalArgumentException If the ids of the reservations don't start with the same hotel key,
+     *                                  or with another key than the reservations that are archived already.
+     */
+    public void append(List<Reservation> reservations) throws IOException {
+        if (reservations.isEmpty()) {
+            return;
+        }
+        long key = UUID.fromString(reservations.get(0).id).getMostSignificantBits();
+        if (!blocks.isEmpty() && key != this.key) {
+            throw new IllegalArgumentException("The archive only has reservations of one hotel.");
+        }
+        HashMap<String, Integer> customerIndexes = new HashMap<>();
+        ArrayList<byte[]> customers = new ArrayList<>();
+        int customersSize = 0;
+        for (Reservation reservation : reservations) {
+            if (UUID.fromString(reservation.id).getMostSignificantBits() != key) {
+                throw new IllegalArgumentException("The reservations of a block have to be of one hotel.");
+            }
+            if (!customerIndexes.containsKey(reservation.customer)) {
+                customerIndexes.put(reservation.customer, customers.size());
+                byte[] customer = reservation.customer.getBytes(StandardCharsets.UTF_8);
+                customers.add(customer);
+                customersSize += Integer.BYTES + customer.length;
+            }
+        }
+
+        int count = reservations.size();
+        // Id, check-in, check-out, room count, customer index and confirmed.
+        int columnsSize = count * (Long.BYTES + Integer.BYTES * 4 + 1);
+        ByteBuffer payload = ByteBuffer.allocate(BLOCK_HEADER_SIZE + columnsSize + Integer.BYTES + customersSize);
+        payload.putInt(count).putLong(key);
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        for (Reservation reservation : reservations) {
+            long id = UUID.fromString(reservation.id).getLeastSignificantBits();
+            payload.putLong(id);
+            minId = Math.min(minId, id);
+            maxId = Math.max(maxId, id);
+        }
+        for (Reservation reservation : reservations) {
+            payload.putInt((int) reservation.date.toEpochDay());
+        }
+        for (Reservation reservation : reservations) {
+            payload.putInt((int) reservation.checkOut.toEpochDay());
+        }
+        for (Reservation reservation : reservations) {
+            payload.putInt(reservation.roomCount);
+        }
+        for (Reservation reservation : reservations) {
+            payload.putInt(customerIndexes.get(reservation.customer));
+        }
+        for (Reservation reservation : reservations) {
+            payload.put((byte) (reservation.getConfirmed() ? 1 : 0));
+        }
+        payload.putInt(customers.size());
+        for (byte[] customer : customers) {
+            payload.putInt(customer.length).put(customer);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        ByteBuffer block = ByteBuffer.allocate(HEADER_SIZE + payload.capacity());
+        block.putInt(payload.capacity()).putInt((int) crc.getValue()).put(payload.array());
+        block.flip();
+        while (block.hasRemaining()) {
+            channel.write(block, end + block.position());
+        }
+        channel.force(false);
+
+        blocks.add(new Block(end, count, minId, maxId));
+        this.key = key;
+        end += block.capacity();
+        size += count;
+    }
+
+    /**
+     * @return The archived reservation with the given id, null if it isn't archived.
+     */
+    public Reservation get(String id) throws IOException {
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(id);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+
+        if (blocks.isEmpty() || uuid.getMostSignificantBits() != key) {
+            return null;
+        }
+        long lsb = uuid.getLeastSignificantBits();
+        for (Block block : blocks) {
+            if (lsb < block.minId || lsb > block.maxId) {
+                continue;
+            }
+            // Only the id column.
+            ByteBuffer ids = read(block.position + HEADER_SIZE + BLOCK_HEADER_SIZE, block.count * Long.BYTES);
+            for (int i = 0; i < block.count; i++) {
+                if (ids.getLong() == lsb) {
+                    return getReservation(block.position, block.count, i, id);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The amount of archived reservations.
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    /**
+     * Reads the reservation at the given index of the block from the other columns.
+     */
+    private Reservation getReservation(long position, int count, int index, String id) throws IOException {
+        ByteBuffer block = ByteBuffer.wrap(readBlock(position));
+        int columns = BLOCK_HEADER_SIZE + count * Long.BYTES;
+        LocalDate checkIn = LocalDate.ofEpochDay(block.getInt(columns + index * Integer.BYTES));
+        columns += count * Integer.BYTES;
+        LocalDate checkOut = LocalDate.ofEpochDay(block.getInt(columns + index * Integer.BYTES));
+        columns += count * Integer.BYTES;
+        int roomCount = block.getInt(columns + index * Integer.BYTES);
+        columns += count * Integer.BYTES;
+        int customerIndex = block.getInt(columns + index * Integer.BYTES);
+        columns += count * Integer.BYTES;
+        boolean confirmed = block.get(columns + index) == 1;
+        columns += count;
+
+        block.position(columns);
+        block.getInt();
+        for (int i = 0; i < customerIndex; i++) {
+            int length = block.getInt();
+            block.position(block.position() + length);
+        }
+        byte[] customer = new byte[block.getInt()];
+        block.get(customer);
+
+        Reservation reservation = new Reservation(
+                id, new String(customer, StandardCharsets.UTF_8), roomCount, checkIn, checkOut);
+        reservation.setConfirmed(confirmed);
+        return reservation;
+    }
+
+    /**
+     * @return The bytes of the block at the given position, null if there is no complete block.
+     */
+    private byte[] readBlock(long position) throws IOException {
+        if (channel.size() - position < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = read(position, HEADER_SIZE);
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length <= 0 || length > channel.size() - position - HEADER_SIZE) {
+            return null;
+        }
+
+        byte[] block = read(position + HEADER_SIZE, length).array();
+        CRC32 crc = new CRC32();
+        crc.update(block);
+        return (int) crc.getValue() == checksum ? block : null;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("The archive ends in the middle of a block.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+}
@@ -0,0 +1,361 @@
+package nl.saxion.concurrency.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records, stored in memory-mapped segment files of a fixed size.
+ * Appending only copies the record into the mapped memory. commit() makes everything appended so far durable.
+ * <p>
+ * With group commit, commits are collected by a flusher thread. It forces the segments to disk once
+ * for all commits that came in while the previous force was running, so a burst of writes shares one fsync.
+ * Without it, every commit forces the segments itself.
+ * <p>
+ * A record is stored as its length, its CRC32 and its bytes. A segment ends at a length of 0,
+ * which is what a new segment is filled with, or at a record with a wrong checksum, which was partly written.
+ * Segments are named after the position of their first byte, records never span two segments.
+ * The directory is forced too after a segment is created or removed, so the file itself survives a crash.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final String SEGMENT_EXTENSION = ".wal";
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final boolean groupCommit;
+
+    /**
+     * All segments by the position of their first byte.
+     */
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    /**
+     * Segments with appended records that aren't forced yet.
+     * By identity, a ByteBuffer's equals() and hashCode() depend on its contents.
+     */
+    private final Set<MappedByteBuffer> dirtySegments = Collections.newSetFromMap(new IdentityHashMap<>());
+    private MappedByteBuffer segment;
+    private long segmentStart;
+
+    private final Object forceLock = new Object();
+    private final Object flushLock = new Object();
+    private ArrayList<CompletableFuture<Void>> waitingCommits = new ArrayList<>();
+    private final Thread flusher;
+    private volatile boolean closed;
+    private final AtomicLong forceCount = new AtomicLong();
+
+
+    /**
+     * Opens the log in the given directory, and finds the end of the last segment to append to.
+     * @param segmentSize The size of a segment file in bytes. The max size of a record is a bit smaller.
+     * @param groupCommit Whether commits share the force of the segments.
+     */
+    public WriteAheadLog(Path dir, int segmentSize, boolean groupCommit) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.groupCommit = groupCommit;
+        Files.createDirectories(dir);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long start = Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+                segments.put(start, map(file));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            roll(0);
+        } else {
+            Map.Entry<Long, MappedByteBuffer> last = segments.lastEntry();
+            segmentStart = last.getKey();
+            segment = last.getValue();
+            segment.position(findEnd(segment));
+        }
+
+        if (groupCommit) {
+            flusher = new Thread(this::flushLoop, "write-ahead-log-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+
+    /**
+     * Copies the record to the end of the log. It isn't durable until commit() completes.
+     * @return The position of the record, to read it with read().
+     */
+    public synchronized long append(byte[] record) {
+        if (HEADER_SIZE + record.length > segmentSize) {
+            throw new IllegalArgumentException("A record can't be larger than " + (segmentSize - HEADER_SIZE) + " bytes.");
+        }
+        if (segment.remaining() < HEADER_SIZE + record.length) {
+            roll(segmentStart + segmentSize);
+        }
+
+        long position = segmentStart + segment.position();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        segment.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        synchronized (dirtySegments) {
+            dirtySegments.add(segment);
+        }
+        return position;
+    }
+
+    /**
+     * @return A future that completes when every record appended before this call is on disk.
+     */
+    public CompletableFuture<Void> commit() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!groupCommit) {
+            force();
+            future.complete(null);
+            return future;
+        }
+
+        synchronized (flushLock) {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("The write-ahead log is closed."));
+                return future;
+            }
+            waitingCommits.add(future);
+            flushLock.notify();
+        }
+        return future;
+    }
+
+    /**
+     * @return The record at the given position, as returned by append().
+     */
+    public synchronized byte[] read(long position) {
+        Map.Entry<Long, MappedByteBuffer> entry = segments.floorEntry(position);
+        if (entry == null) {
+            throw new IllegalArgumentException("There is no segment with position " + position + ".");
+        }
+        ByteBuffer buffer = entry.getValue().duplicate();
+        buffer.position((int) (position - entry.getKey()));
+        byte[] record = new byte[buffer.getInt()];
+        buffer.getInt();
+        buffer.get(record);
+        return record;
+    }
+
+    /**
+     * Calls the consumer with the position and the bytes of every record, from the first to the last.
+     */
+    public synchronized void forEach(BiConsumer<Long, byte[]> consumer) {
+        for (Map.Entry<Long, MappedByteBuffer> entry : segments.entrySet()) {
+            ByteBuffer buffer = entry.getValue().duplicate();
+            buffer.position(0);
+            int end = findEnd(buffer);
+            while (buffer.position() < end) {
+                long position = entry.getKey() + buffer.position();
+                byte[] record = new byte[buffer.getInt()];
+                buffer.getInt();
+                buffer.get(record);
+                consumer.accept(position, record);
+            }
+        }
+    }
+
+    /**
+     * Removes the segments that only have records before the given position. The last segment always stays.
+     */
+    public synchronized void truncate(long position) throws IOException {
+        boolean removedAny = false;
+        while (segments.size() > 1) {
+            long start = segments.firstKey();
+            if (start + segmentSize > position) {
+                break;
+            }
+            MappedByteBuffer removed = segments.remove(start);
+            synchronized (dirtySegments) {
+                dirtySegments.remove(removed);
+            }
+            Files.delete(getSegmentFile(start));
+            removedAny = true;
+        }
+        if (removedAny) {
+            forceDirectory();
+        }
+    }
+
+    /**
+     * @return The position of the first byte of the first segment.
+     */
+    public synchronized long getStart() {
+        return segments.firstKey();
+    }
+
+    /**
+     * @return The position the next record is appended at, or after if it doesn't fit in the current segment.
+     */
+    public synchronized long getEnd() {
+        return segmentStart + segment.position();
+    }
+
+    /**
+     * @return How often the segments were forced to disk. With group commit this is lower than the amount of commits.
+     */
+    public long getForceCount() {
+        return forceCount.get();
+    }
+
+    /**
+     * Forces the appended records to disk and stops the flusher.
+     */
+    @Override
+    public void close() {
+        synchronized (flushLock) {
+            closed = true;
+            flushLock.notify();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        force();
+    }
+
+
+    /**
+     * Forces every commit that is waiting, until the log is closed.
+     * Commits that come in while forcing wait for the next round, together.
+     */
+    private void flushLoop() {
+        while (true) {
+            ArrayList<CompletableFuture<Void>> commits;
+            synchronized (flushLock) {
+                while (waitingCommits.isEmpty() && !closed) {
+                    try {
+                        flushLock.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (waitingCommits.isEmpty()) {
+                    return;
+                }
+                commits = waitingCommits;
+                waitingCommits = new ArrayList<>();
+            }
+
+            try {
+                force();
+                for (CompletableFuture<Void> commit : commits) {
+                    commit.complete(null);
+                }
+            } catch (RuntimeException ex) {
+                for (CompletableFuture<Void> commit : commits) {
+                    commit.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * One force at a time. A commit that finds nothing dirty may only return after the running force has finished,
+     * that force can have its records.
+     */
+    private void force() {
+        synchronized (forceLock) {
+            ArrayList<MappedByteBuffer> forcing;
+            // Cleared before forcing, so a record appended during the force marks its segment dirty again.
+            synchronized (dirtySegments) {
+                forcing = new ArrayList<>(dirtySegments);
+                dirtySegments.clear();
+            }
+            for (MappedByteBuffer dirty : forcing) {
+                dirty.force();
+            }
+            forceCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Starts a new segment at the given position.
+     */
+    private void roll(long start) {
+        try {
+            segment = map(getSegmentFile(start));
+            forceDirectory();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Can't create a segment of the write-ahead log.", ex);
+        }
+        segmentStart = start;
+        segments.put(start, segment);
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    /**
+     * Forces the entries of the directory to disk, so a created segment is still there after a crash,
+     * and a removed one doesn't come back.
+     * Skipped on Windows, which can't open a directory as a file.
+     */
+    private void forceDirectory() throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return The position after the last complete record in the segment, starting at the position of the buffer.
+     */
+    private int findEnd(ByteBuffer buffer) {
+        ByteBuffer reader = buffer.duplicate();
+        while (reader.remaining() >= HEADER_SIZE) {
+            int start = reader.position();
+            int length = reader.getInt();
+            int checksum = reader.getInt();
+            if (length <= 0 || length > reader.remaining()) {
+                return start;
+            }
+
+            byte[] record = new byte[length];
+            reader.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) {
+                return start;
+            }
+        }
+        return reader.position();
+    }
+
+    private Path getSegmentFile(long start) {
+        return dir.resolve(String.format("%019d%s", start, SEGMENT_EXTENSION));
+    }
+
+}
@@ -0,0 +1,221 @@
+package tests;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.ShardRegion;
+import akka.cluster.sharding.typed.ClusterShardingQuery;
+import akka.cluster.sharding.typed.GetShardRegionState;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Leave;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.StartAkka;
+import nl.saxion.concurrency.actors.HotelManagerActor;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.TestData.*;
+
+/**
+ * Runs two nodes on the loopback interface, each with a random port.
+ */
+public class ClusterTests {
+
+    private static final int HOTEL_COUNT = 20;
+    /**
+     * Enough reservations for three snapshots of a hotel, after which the events before the first one are deleted.
+     */
+    private static final int SNAPSHOT_RESERVATIONS = 305;
+
+
+    /**
+     * Books every hotel through both nodes and checks that both bookings end up at the same HotelManagerActor.
+     */
+    @Test
+    public void bookingLandsOnOwningShard() throws IOException {
+        Path persistenceDir = Files.createTempDirectory("rent-a-room");
+        ActorSystem<RentARoomMessage> node1 = initTest(persistenceDir);
+        ActorSystem<RentARoomMessage> node2 = initSecondNode(node1, persistenceDir);
+
+        addHotels(node1);
+        for (int i = 0; i < HOTEL_COUNT; i++) {
+            assertTrue(requestReservation(node1, "h" + i).contains("was received"));
+            assertTrue(requestReservation(node2, "h" + i).contains("was received"));
+        }
+
+        for (int i = 0; i < HOTEL_COUNT; i++) {
+            String msg = listReservations(node2, "h" + i);
+            // Both reservations are listed, so there is only one hotel with this name.
+            assertEquals(2, msg.split("\n").length - 1);
+        }
+
+        HashSet<String> hotels1 = getHostedHotels(node1);
+        HashSet<String> hotels2 = getHostedHotels(node2);
+        // Both nodes host a part of the hotels and no hotel lives on both nodes.
+        assertFalse(hotels1.isEmpty());
+        assertFalse(hotels2.isEmpty());
+        assertEquals(HOTEL_COUNT, hotels1.size() + hotels2.size());
+        hotels1.retainAll(hotels2);
+        assertTrue(hotels1.isEmpty());
+    }
+
+    /**
+     * Lets the second node leave and checks that its hotels move to the first node, with their reservations.
+     * The hotels of the second node have enough events for snapshots, after which their first events are deleted.
+     * The second node has its own directory for snapshots, so the first node only finds them if they were saved
+     * in its snapshot store.
+     */
+    @Test
+    public void rebalanceWhenNodeLeaves() throws IOException {
+        Path persistenceDir = Files.createTempDirectory("rent-a-room");
+        ActorSystem<RentARoomMessage> node1 = initTest(persistenceDir);
+        ActorSystem<RentARoomMessage> node2 = initSecondNode(node1, persistenceDir, ConfigFactory.parseString(
+                "akka.persistence.snapshot-store.local.dir = \""
+                        + Files.createTempDirectory("rent-a-room").toUri().getPath() + "\""));
+
+        addHotels(node1);
+        for (int i = 0; i < HOTEL_COUNT; i++) {
+            assertTrue(requestReservation(node1, "h" + i).contains("was received"));
+        }
+        HashSet<String> hotels2 = getHostedHotels(node2);
+        assertFalse(hotels2.isEmpty());
+        for (String hotelName : hotels2) {
+            requestReservations(node1, hotelName, SNAPSHOT_RESERVATIONS);
+        }
+
+        Cluster.get(node2).manager().tell(Leave.create(Cluster.get(node2).selfMember().address()));
+        awaitUpMembers(node1, 1);
+
+        // The hotels of the second node are started on the node that is left, and recovered from the journal.
+        for (int i = 0; i < HOTEL_COUNT; i++) {
+            String msg = listReservations(node1, "h" + i);
+            int expected = hotels2.contains("h" + i) ? 1 + SNAPSHOT_RESERVATIONS : 1;
+            assertEquals(expected, msg.split("\n").length - 1, "h" + i);
+        }
+        assertEquals(HOTEL_COUNT, getHostedHotels(node1).size());
+    }
+
+
+    /**
+     * Starts a second node that joins the cluster of the given node, and waits until both are up.
+     * @param persistenceDir The directory the given node stores its hotels in.
+     */
+    private static ActorSystem<RentARoomMessage> initSecondNode(ActorSystem<RentARoomMessage> node1, Path persistenceDir) {
+        return initSecondNode(node1, persistenceDir, ConfigFactory.empty());
+    }
+
+    /**
+     * @param overrides Settings of the second node that overwrite those of application.conf.
+     */
+    private static ActorSystem<RentARoomMessage> initSecondNode(ActorSystem<RentARoomMessage> node1, Path persistenceDir,
+                                                                Config overrides) {
+        ActorSystem<RentARoomMessage> node2 = new StartAkka().test(
+                persistenceDir, Cluster.get(node1).selfMember().address(), overrides);
+        awaitUpMembers(node1, 2);
+        awaitUpMembers(node2, 2);
+        return node2;
+    }
+
+    /**
+     * Waits until the cluster consists of the given amount of members that are all up.
+     */
+    private static void awaitUpMembers(ActorSystem<RentARoomMessage> node, int memberCount) {
+        for (int i = 0; i < 200; i++) {
+            int upCount = 0;
+            int count = 0;
+            for (Member member : Cluster.get(node).state().getMembers()) {
+                count++;
+                if (member.status() == MemberStatus.up()) {
+                    upCount++;
+                }
+            }
+            if (upCount == memberCount && count == memberCount) {
+                return;
+            }
+            try { Thread.sleep(100); } catch (Exception ignored) { }
+        }
+        fail("The cluster doesn't have " + memberCount + " members.");
+    }
+
+    private static void addHotels(ActorSystem<RentARoomMessage> node) {
+        for (int i = 0; i < HOTEL_COUNT; i++) {
+            String name = "h" + i;
+            AskPattern.<RentARoomMessage, RentARoomMessage>ask(node,
+                    sender -> new RentARoomMessage.AddHotel(sender, name, 10),
+                    Duration.ofSeconds(10), node.scheduler()).toCompletableFuture().join();
+        }
+    }
+
+    private static String requestReservation(ActorSystem<RentARoomMessage> node, String hotelName) {
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put(hotelName, new ArrayList<>(Arrays.asList(new Reservation("c1", 1, LocalDate.of(2022, 1, 1)))));
+        String msg;
+        // The other node may not know the hotel yet.
+        do {
+            msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(node,
+                    sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                    Duration.ofSeconds(10), node.scheduler()).toCompletableFuture().join());
+        } while (msg.equals(hotelName + " is not in our system."));
+        return msg;
+    }
+
+    /**
+     * Requests one room for one night in the hotel, on the given amount of nights after 01-01-2022.
+     */
+    private static void requestReservations(ActorSystem<RentARoomMessage> node, String hotelName, int count) {
+        ArrayList<Reservation> nights = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            nights.add(new Reservation("c1", 1, LocalDate.of(2022, 1, 1).plusDays(i)));
+        }
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put(hotelName, nights);
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(node,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                Duration.ofSeconds(10), node.scheduler()).toCompletableFuture().join());
+        assertFalse(msg.contains("not"), msg);
+    }
+
+    private static String listReservations(ActorSystem<RentARoomMessage> node, String hotelName) {
+        String msg;
+        // A hotel that moves is unknown to the agents until it's registered on its new node.
+        long deadline = System.currentTimeMillis() + 10000;
+        do {
+            msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(node,
+                    sender -> new RentARoomMessage.ListReservations(sender, hotelName, "c1"),
+                    Duration.ofSeconds(10), node.scheduler()).toCompletableFuture().join());
+        } while (msg.equals(hotelName + " is not in our system.") && System.currentTimeMillis() < deadline);
+        return msg;
+    }
+
+    /**
+     * @return The names of the hotels that have a running HotelManagerActor on the given node.
+     */
+    private static HashSet<String> getHostedHotels(ActorSystem<RentARoomMessage> node) {
+        ShardRegion.CurrentShardRegionState state = AskPattern.<ClusterShardingQuery, ShardRegion.CurrentShardRegionState>ask(
+                ClusterSharding.get(node).shardState(),
+                sender -> new GetShardRegionState(HotelManagerActor.ENTITY_TYPE_KEY, sender),
+                Duration.ofSeconds(10), node.scheduler()).toCompletableFuture().join();
+
+        HashSet<String> hotels = new HashSet<>();
+        for (ShardRegion.ShardState shard : state.getShards()) {
+            hotels.addAll(shard.getEntityIds());
+        }
+        return hotels;
+    }
+
+}
@@ -0,0 +1,200 @@
+package tests;
+
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.domain.ReservationException;
+import nl.saxion.concurrency.domain.ReservationIdGenerator;
+import nl.saxion.concurrency.persistence.HotelSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The storage of the reservations inside Hotel, without actors.
+ */
+public class HotelStorageTests {
+
+    private static final LocalDate DATE = LocalDate.of(2022, 1, 1);
+
+
+    /**
+     * Reservations are found by id and per customer after many adds and deletes, which reuse rows.
+     */
+    @Test
+    public void addAndDeleteReservations() throws ReservationException {
+        Hotel hotel = new Hotel("h1", 10000);
+        ArrayList<Reservation> added = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Reservation reservation = hotel.createReservation(
+                    new Reservation("c" + (i % 10), 1 + i % 3, DATE.plusDays(i % 30), DATE.plusDays(i % 30 + 1 + i % 5)),
+                    Collections.emptyList());
+            hotel.addReservation(reservation);
+            added.add(reservation);
+        }
+        // Every other reservation, so the deleted rows are spread over the table.
+        for (int i = 0; i < 1000; i += 2) {
+            hotel.deleteReservation(added.get(i).id);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            Reservation reservation = added.get(i);
+            if (i % 2 == 0) {
+                assertFalse(hotel.hasReservation(reservation.id));
+                assertNull(hotel.getReservation(reservation.id));
+            } else {
+                assertEquals(reservation.toString(), hotel.getReservation(reservation.id).toString());
+                assertEquals(reservation.customer, hotel.getReservation(reservation.id).customer);
+            }
+        }
+        assertEquals(500, hotel.getSummary(DATE, 1).reservationCount);
+        // Customers with an even number only had deleted reservations.
+        assertTrue(hotel.getReservations("c0").isEmpty());
+        assertEquals(100, hotel.getReservations("c1").size());
+
+        // New reservations take the deleted rows, and come after the others of their customer.
+        Reservation last = hotel.createReservation(new Reservation("c1", 1, DATE), Collections.emptyList());
+        hotel.addReservation(last);
+        ArrayList<Reservation> customerReservations = new ArrayList<>(hotel.getReservations("c1"));
+        assertEquals(101, customerReservations.size());
+        assertEquals(added.get(1).id, customerReservations.get(0).id);
+        assertEquals(last.id, customerReservations.get(100).id);
+    }
+
+    @Test
+    public void idsOfOtherHotelsAreUnknown() throws ReservationException {
+        Hotel hotel = new Hotel("h1", 10);
+        Hotel other = new Hotel("h2", 10);
+        Reservation reservation = other.createReservation(new Reservation("c1", 1, DATE), Collections.emptyList());
+        other.addReservation(reservation);
+
+        assertFalse(hotel.hasReservation(reservation.id));
+        assertFalse(hotel.hasReservation("(Id that doesn't exist)"));
+        assertThrows(ReservationException.class, () -> hotel.confirmReservation(reservation.id));
+    }
+
+    /**
+     * Many ids in the same millisecond still go up, also past the 8 million ids of one millisecond.
+     */
+    @Test
+    public void snowflakeIdsGoUp() {
+        ReservationIdGenerator generator = ReservationIdGenerator.create("snowflake");
+        long last = 0;
+        for (int i = 0; i < 10_000_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+    }
+
+    @Test
+    public void createUnknownIdGenerator() {
+        assertThrows(IllegalArgumentException.class, () -> ReservationIdGenerator.create("sequential"));
+    }
+
+    /**
+     * Confirmed reservations don't expire, the others do when their time is up.
+     */
+    @Test
+    public void unconfirmedReservationsExpire() throws ReservationException {
+        Hotel hotel = new Hotel("h1", 10);
+        ArrayList<Reservation> added = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Reservation reservation = hotel.createReservation(
+                    new Reservation("c1", 3, DATE), Collections.emptyList(), 100 + i);
+            hotel.addReservation(reservation);
+            added.add(reservation);
+        }
+        hotel.confirmReservation(added.get(0).id);
+        assertEquals(1, hotel.getAvailableRooms(DATE));
+        assertEquals(101, hotel.getNextExpiry());
+
+        assertEquals(1, hotel.getExpired(101).size());
+        hotel.expire(101);
+        assertTrue(hotel.hasReservation(added.get(0).id));
+        assertTrue(hotel.getReservation(added.get(0).id).getConfirmed());
+        assertFalse(hotel.hasReservation(added.get(1).id));
+        assertEquals(102, hotel.getNextExpiry());
+        assertEquals(4, hotel.getAvailableRooms(DATE));
+
+        hotel.expire(1000);
+        assertEquals(0, hotel.getNextExpiry());
+        assertEquals(7, hotel.getAvailableRooms(DATE));
+    }
+
+    /**
+     * Reservations and holds expire in the order of their expiry, not in the order they were added:
+     * a committed hold keeps the expiry it got when held, and a shorter time to live may be used later on.
+     */
+    @Test
+    public void reservationsAndHoldsExpireOutOfOrder() throws ReservationException {
+        Hotel hotel = new Hotel("h1", 10);
+        Reservation late = hotel.createReservation(new Reservation("c1", 1, DATE), Collections.emptyList(), 300);
+        hotel.addReservation(late);
+        Reservation held = hotel.createReservation(new Reservation("c1", 2, DATE), Collections.emptyList(), 200);
+        hotel.hold("hold1", Collections.singletonList(held), 250);
+        Reservation early = hotel.createReservation(new Reservation("c1", 3, DATE), Collections.emptyList(), 100);
+        hotel.addReservation(early);
+        hotel.hold("hold2", Collections.singletonList(
+                hotel.createReservation(new Reservation("c2", 1, DATE), Collections.emptyList())), 150);
+        hotel.commitHold("hold1");
+        assertEquals(3, hotel.getAvailableRooms(DATE));
+        assertEquals(100, hotel.getNextExpiry());
+
+        assertEquals(1, hotel.getExpired(100).size());
+        hotel.expire(100);
+        assertFalse(hotel.hasReservation(early.id));
+        assertTrue(hotel.hasReservation(late.id));
+        assertEquals(150, hotel.getNextExpiry());
+
+        hotel.expire(150);
+        assertEquals(7, hotel.getAvailableRooms(DATE));
+        assertEquals(200, hotel.getNextExpiry());
+
+        assertEquals(1, hotel.getExpired(299).size());
+        hotel.expire(299);
+        assertFalse(hotel.hasReservation(held.id));
+        assertTrue(hotel.hasReservation(late.id));
+        assertEquals(300, hotel.getNextExpiry());
+        assertEquals(9, hotel.getAvailableRooms(DATE));
+    }
+
+    /**
+     * A snapshot has the state of the hotel when it was made, also after the hotel changes.
+     */
+    @Test
+    public void snapshotKeepsState() throws ReservationException {
+        Hotel hotel = new Hotel("h1", 10);
+        Reservation first = hotel.createReservation(new Reservation("c1", 2, DATE, DATE.plusDays(3)),
+                Collections.emptyList(), 100);
+        hotel.addReservation(first);
+        Reservation second = hotel.createReservation(new Reservation("c2", 1, DATE), Collections.emptyList());
+        hotel.addReservation(second);
+        hotel.confirmReservation(second.id);
+        hotel.hold("hold1", Collections.singletonList(
+                hotel.createReservation(new Reservation("c1", 3, DATE.plusDays(1)), Collections.emptyList())), 50);
+
+        HotelSnapshot snapshot = HotelSnapshot.of(hotel);
+        hotel.deleteReservation(first.id);
+        hotel.releaseHold("hold1");
+
+        Hotel restored = snapshot.toHotel();
+        assertEquals("h1", restored.name);
+        assertEquals(7, restored.getAvailableRooms(DATE));
+        assertEquals(5, restored.getAvailableRooms(DATE.plusDays(1)));
+        assertEquals(Arrays.asList(first.id, second.id), Arrays.asList(
+                restored.getReservations("c1").get(0).id, restored.getReservations("c2").get(0).id));
+        assertTrue(restored.getReservation(second.id).getConfirmed());
+        assertEquals(1, restored.getHold("hold1").size());
+        assertEquals(50, restored.getNextExpiry());
+        restored.expire(100);
+        assertFalse(restored.hasReservation(first.id));
+        assertEquals(9, restored.getAvailableRooms(DATE));
+        assertNull(HotelSnapshot.of(null).toHotel());
+    }
+
+}
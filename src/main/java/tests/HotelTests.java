@@ -2,6 +2,7 @@ package tests;
 
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.javadsl.AskPattern;
+import nl.saxion.concurrency.StartAkka;
 import nl.saxion.concurrency.messages.RentARoomMessage;
 import org.junit.jupiter.api.Test;
 
@@ -19,9 +20,9 @@ public class HotelTests {
         getAddHotel1(system);
         getAddHotel2(system);
 
-        String msg = ((RentARoomMessage.Response) AskPattern.ask(system,
+        String msg = StartAkka.render(AskPattern.ask(system,
                 RentARoomMessage.ListHotels::new,
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "The following hotels are in our system:\n" +
                 "h1: Rooms: 10, Reservations: 0\n" +
                 "h2: Rooms: 10, Reservations: 0");
@@ -41,10 +42,10 @@ public class HotelTests {
 
         // Add a hotel with h1
         getAddHotel1(system);
-        String msg = ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 // Try to add another one
                 sender -> new RentARoomMessage.AddHotel(sender, "h1", 10),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "h1 is in our system already.");
     }
 
@@ -54,9 +55,9 @@ public class HotelTests {
 
         getAddHotel1(system);
 
-        String msg = ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.DeleteHotel(sender, "h1"),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "h1 has been deleted.");
     }
 
@@ -64,9 +65,9 @@ public class HotelTests {
     public void deleteHotelDoesntExist() {
         ActorSystem<RentARoomMessage> system = initTest();
 
-        String msg = ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.DeleteHotel(sender, "h1"),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "h1 is not in our system.");
     }
 
@@ -83,9 +84,9 @@ public class HotelTests {
                 sender -> new RentARoomMessage.DeleteHotel(sender, "h1"),
                 Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
 
-        String msg = ((RentARoomMessage.Response) AskPattern.ask(system,
+        String msg = StartAkka.render(AskPattern.ask(system,
                 RentARoomMessage.ListHotels::new,
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         // It's deleted if ListHotels doesn't display it anymore.
         assertEquals(msg, "The following hotels are in our system:\n");
     }
@@ -2,13 +2,28 @@ package tests;
 
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.receptionist.Receptionist;
+import akka.stream.javadsl.Sink;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.AgentRouter;
+import nl.saxion.concurrency.StartAkka;
+import nl.saxion.concurrency.actors.AgentActor;
+import nl.saxion.concurrency.actors.RentARoomActor;
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.Reservation;
 import nl.saxion.concurrency.messages.RentARoomMessage;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static tests.TestData.*;
 
 public class OtherTests {
@@ -17,12 +32,62 @@ public class OtherTests {
     public void addAgent() {
         ActorSystem<RentARoomMessage> system = initTest();
 
-        String msg = ((RentARoomMessage.Response) AskPattern.ask(system,
+        String msg = StartAkka.render(AskPattern.ask(system,
                 RentARoomMessage.AddAgent::new,
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "A new agent has been added.");
     }
 
+    /**
+     * Requests sent straight to the agents get the same answers as through the system.
+     */
+    @Test
+    public void agentRouter() {
+        ActorSystem<RentARoomMessage> system = initTest();
+        AgentRouter agents = new AgentRouter(system);
+        try { Thread.sleep(500); } catch (Exception ignored) { }
+
+        String msg = StartAkka.render(agents.ask(sender -> new RentARoomMessage.AddHotel(sender, "h1", 10),
+                Duration.ofSeconds(10)).toCompletableFuture().join());
+        assertEquals("h1 has been added.", msg);
+        msg = StartAkka.render(agents.ask(sender -> new RentARoomMessage.ListReservations(sender, "h1", "c1"),
+                Duration.ofSeconds(10)).toCompletableFuture().join());
+        assertEquals("You have the following reservations in h1:\n", msg);
+
+        List<RentARoomMessage> messages = StartAkka.streamCustomerReservations(system, agents::tell, "c1")
+                .runWith(Sink.seq(), system).toCompletableFuture().join();
+        assertEquals("You have 0 reservations in 0 hotels.", StartAkka.render(messages.get(messages.size() - 1)));
+    }
+
+    /**
+     * Probes that wait longer than scale-up-wait add agents, up to max-agents.
+     */
+    @Test
+    public void autoscalerAddsAgents() {
+        ActorSystem<RentARoomMessage> system = initTest(ConfigFactory.parseString(
+                "rent-a-room.agent.autoscaler { interval = 100ms, scale-up-wait = 0s, max-agents = 3 }"));
+
+        try { Thread.sleep(2000); } catch (Exception ignored) { }
+        assertEquals(3, getAgentCount(system));
+    }
+
+    /**
+     * Idle agents are stopped down to min-agents, and the agent that's left still answers.
+     */
+    @Test
+    public void autoscalerStopsIdleAgents() {
+        ActorSystem<RentARoomMessage> system = initTest(ConfigFactory.parseString(
+                "rent-a-room.agent.autoscaler { interval = 100ms, idle-intervals = 2, drain-time = 100ms }"));
+        for (int i = 0; i < 2; i++) {
+            AskPattern.ask(system, RentARoomMessage.AddAgent::new, Duration.ofSeconds(10), system.scheduler())
+                    .toCompletableFuture().join();
+        }
+
+        try { Thread.sleep(2000); } catch (Exception ignored) { }
+        assertEquals(1, getAgentCount(system));
+        assertEquals("h1 has been added.", getAddHotel1(system));
+    }
+
     @Test
     public void listAvailableRooms() {
         ActorSystem<RentARoomMessage> system = initTest();
@@ -31,12 +96,158 @@ public class OtherTests {
         getAddHotel1(system);
         getAddHotel2(system);
 
-        String msg = ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.ListAvailableRooms(sender, 5, LocalDate.of(2022, 1, 1)),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertEquals(msg, "The following hotels have enough rooms:\n" +
+                "h1: Available rooms: 10\n" +
+                "h2: Available rooms: 10");
+    }
+
+    @Test
+    public void listAvailableRoomsStay() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        // These hotels have roomCount 10.
+        getAddHotel1(system);
+        getAddHotel2(system);
+
+        // h1 has 7 rooms reserved on the third night of the stay, h2 on the night after it.
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 7, LocalDate.of(2022, 1, 3)))));
+        reservations.put("h2", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 7, LocalDate.of(2022, 1, 4), LocalDate.of(2022, 1, 10)))));
+        AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
+
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.ListAvailableRooms(sender, 5, LocalDate.of(2022, 1, 1), 3),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "The following hotels have enough rooms:\n" +
+                "h2: Available rooms: 10");
+    }
+
+    @Test
+    public void searchAvailableRooms() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        // These hotels have roomCount 10.
+        getAddHotel1(system);
+        getAddHotel2(system);
+
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 7, LocalDate.of(2022, 1, 1)))));
+        reservations.put("h2", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 2, LocalDate.of(2022, 1, 1)))));
+        AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
+
+        // Most available rooms first.
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.SearchAvailableRooms(sender, 1, LocalDate.of(2022, 1, 1), 1,
+                        10, Duration.ofSeconds(1)),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertEquals(msg, "The hotels with the most available rooms:\n" +
+                "h2: Available rooms: 8\n" +
+                "h1: Available rooms: 3");
+
+        // Only the top hotel.
+        msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.SearchAvailableRooms(sender, 1, LocalDate.of(2022, 1, 1), 1,
+                        1, Duration.ofSeconds(1)),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertEquals(msg, "The hotels with the most available rooms:\n" +
+                "h2: Available rooms: 8");
+
+        // h1 doesn't have enough rooms.
+        msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.SearchAvailableRooms(sender, 5, LocalDate.of(2022, 1, 1), 1,
+                        10, Duration.ofSeconds(1)),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertEquals(msg, "The hotels with the most available rooms:\n" +
+                "h2: Available rooms: 8");
+    }
+
+    /**
+     * The second search is answered by the agent's cache. The hotels publish their changes, which update the cache.
+     */
+    @Test
+    public void searchAvailableRoomsAfterChange() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        // These hotels have roomCount 10.
+        getAddHotel1(system);
+        getAddHotel2(system);
+
+        String msg = getSearchAvailableRooms(system);
+        assertEquals(msg, "The hotels with the most available rooms:\n" +
                 "h1: Available rooms: 10\n" +
                 "h2: Available rooms: 10");
+
+        // A two night stay that includes the searched night.
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 4, LocalDate.of(2021, 12, 31), LocalDate.of(2022, 1, 2)))));
+        AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
+
+        // The change reaches the agent through the topic, which may take a moment.
+        String expected = "The hotels with the most available rooms:\n" +
+                "h2: Available rooms: 10\n" +
+                "h1: Available rooms: 6";
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            msg = getSearchAvailableRooms(system);
+        } while (!msg.equals(expected) && System.currentTimeMillis() < deadline);
+        assertEquals(msg, expected);
+    }
+
+    private static String getSearchAvailableRooms(ActorSystem<RentARoomMessage> system) {
+        return StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.SearchAvailableRooms(sender, 1, LocalDate.of(2022, 1, 1), 1,
+                        10, Duration.ofSeconds(1)),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+    }
+
+
+    /**
+     * Messages about a hotel and its reservations, and searches for the same stay, go to the same AgentActor.
+     */
+    @Test
+    public void routingKeys() {
+        ActorSystem<RentARoomMessage> system = initTest();
+        String reservationId = new UUID(Hotel.getKey("h1"), 42).toString();
+        LocalDate date = LocalDate.of(2022, 1, 1);
+
+        String hotelKey = RentARoomActor.getRoutingKey(new RentARoomMessage.AddHotel(system, "h1", 10));
+        assertEquals(hotelKey, RentARoomActor.getRoutingKey(new RentARoomMessage.ListReservations(system, "h1", null)));
+        assertEquals(hotelKey, RentARoomActor.getRoutingKey(new RentARoomMessage.ConfirmReservation(system, reservationId)));
+        assertEquals(hotelKey, RentARoomActor.getRoutingKey(new RentARoomMessage.GetReservation(system, reservationId)));
+        assertNotEquals(hotelKey, RentARoomActor.getRoutingKey(new RentARoomMessage.DeleteHotel(system, "h2")));
+
+        assertEquals(RentARoomActor.getRoutingKey(new RentARoomMessage.ListAvailableRooms(system, 1, date, 3)),
+                RentARoomActor.getRoutingKey(new RentARoomMessage.SearchAvailableRooms(system, 5, date, 3, 1,
+                        Duration.ofSeconds(1))));
+        assertNotEquals(RentARoomActor.getRoutingKey(new RentARoomMessage.ListAvailableRooms(system, 1, date, 3)),
+                RentARoomActor.getRoutingKey(new RentARoomMessage.ListAvailableRooms(system, 1, date, 4)));
+
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(new Reservation("c1", 1, date))));
+        assertEquals(RentARoomActor.getRoutingKey(new RentARoomMessage.ListCustomerReservations(system, "c1")),
+                RentARoomActor.getRoutingKey(new RentARoomMessage.RequestReservationsMultiHotels(system, reservations)));
+    }
+
+
+    private static int getAgentCount(ActorSystem<RentARoomMessage> system) {
+        return AskPattern.<Receptionist.Command, Receptionist.Listing>ask(system.receptionist(),
+                sender -> Receptionist.find(AgentActor.AGENT_ACTOR_SERVICE_KEY, sender),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()
+                .getServiceInstances(AgentActor.AGENT_ACTOR_SERVICE_KEY).size();
     }
 
 }
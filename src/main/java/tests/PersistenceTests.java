@@ -0,0 +1,142 @@
+package tests;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.StartAkka;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static tests.TestData.*;
+
+/**
+ * Stops the program and starts it again on the same directory, and checks that nothing is lost.
+ */
+public class PersistenceTests {
+
+    @Test
+    public void hotelsSurviveRestart() throws IOException {
+        Path persistenceDir = Files.createTempDirectory("rent-a-room");
+        ActorSystem<RentARoomMessage> system = initTest(persistenceDir);
+
+        getAddHotel1(system);
+        getAddHotel2(system);
+        String id = getRequestReservations(system).substring(43, 79);
+        AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.ConfirmReservation(sender, id),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
+        AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.DeleteHotel(sender, "h2"),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
+
+        system = restart(system, persistenceDir);
+
+        String msg = listHotels(system);
+        assertEquals("The following hotels are in our system:\n" +
+                "h1: Rooms: 10, Reservations: 1", msg);
+
+        msg = getListReservations(system);
+        assertEquals("You have the following reservations in h1:\n" +
+                "Id: " + id + ", Rooms: 5, Date: 01-01-2022, Confirmed: Yes", msg);
+    }
+
+    /**
+     * Makes more reservations than fit between two snapshots, so the hotel is recovered from a snapshot.
+     */
+    @Test
+    public void recoverFromSnapshot() throws IOException {
+        Path persistenceDir = Files.createTempDirectory("rent-a-room");
+        ActorSystem<RentARoomMessage> system = initTest(persistenceDir);
+
+        getAddHotel1(system);
+        for (int i = 0; i < 250; i++) {
+            HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+            reservations.put("h1", new ArrayList<>(Arrays.asList(
+                    new Reservation("c1", 1, LocalDate.of(2022, 1, 1).plusDays(i)))));
+            ActorSystem<RentARoomMessage> finalSystem = system;
+            AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                    sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                    Duration.ofSeconds(10), finalSystem.scheduler()).toCompletableFuture().join();
+        }
+
+        system = restart(system, persistenceDir);
+
+        try (Stream<Path> snapshots = Files.list(persistenceDir.resolve("snapshots"))) {
+            assertTrue(snapshots.findAny().isPresent());
+        }
+        String msg = getListReservations(system);
+        assertEquals(250, msg.split("\n").length - 1);
+    }
+
+
+    /**
+     * h1 doesn't change after it's added, while h2 makes snapshots and deletes its old events.
+     * The event of h1 is copied forward, so the first segment of the journal is removed,
+     * and both hotels are still there after a restart.
+     */
+    @Test
+    public void journalIsCompacted() throws IOException {
+        Path persistenceDir = Files.createTempDirectory("rent-a-room");
+        Config smallSegments = ConfigFactory.parseString("rent-a-room.journal.segment-size = 16KiB");
+        ActorSystem<RentARoomMessage> system = initTest(persistenceDir, smallSegments);
+
+        getAddHotel1(system);
+        getAddHotel2(system);
+        for (int i = 0; i < 1000; i++) {
+            HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+            reservations.put("h2", new ArrayList<>(Arrays.asList(
+                    new Reservation("c1", 1, LocalDate.of(2022, 1, 1).plusDays(i)))));
+            ActorSystem<RentARoomMessage> finalSystem = system;
+            AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                    sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                    Duration.ofSeconds(10), finalSystem.scheduler()).toCompletableFuture().join();
+        }
+
+        assertFalse(Files.exists(persistenceDir.resolve("journal").resolve(String.format("%019d.wal", 0))));
+
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+        system = initTest(persistenceDir, smallSegments);
+        for (int i = 0; i < 100 && !listHotels(system).contains("h2"); i++) {
+            try { Thread.sleep(100); } catch (Exception ignored) { }
+        }
+        assertEquals("The following hotels are in our system:\n" +
+                "h1: Rooms: 10, Reservations: 0\n" +
+                "h2: Rooms: 10, Reservations: 1000", listHotels(system));
+    }
+
+    /**
+     * Stops the given system and starts a new one on the same directory.
+     * Waits until the hotels are started again, sharding starts them after the coordinator has recovered.
+     */
+    private static ActorSystem<RentARoomMessage> restart(ActorSystem<RentARoomMessage> system, Path persistenceDir) {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+
+        system = initTest(persistenceDir);
+        for (int i = 0; i < 100 && !listHotels(system).contains("h1"); i++) {
+            try { Thread.sleep(100); } catch (Exception ignored) { }
+        }
+        return system;
+    }
+
+    private static String listHotels(ActorSystem<RentARoomMessage> system) {
+        return StartAkka.render(AskPattern.ask(system,
+                RentARoomMessage.ListHotels::new,
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+    }
+
+}
@@ -0,0 +1,111 @@
+package tests;
+
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.domain.ReservationException;
+import nl.saxion.concurrency.persistence.ReservationArchive;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReservationArchiveTests {
+
+    /**
+     * Archives two blocks, and looks the reservations up by id after opening the archive again.
+     */
+    @Test
+    public void reservationsSurviveReopen() throws IOException, ReservationException {
+        Path file = Files.createTempDirectory("archive").resolve("h1.archive");
+        ArrayList<Reservation> reservations = createReservations(new Hotel("h1", 100), 20);
+        reservations.get(3).setConfirmed(true);
+        try (ReservationArchive archive = new ReservationArchive(file)) {
+            archive.append(reservations.subList(0, 10));
+            archive.append(reservations.subList(10, 20));
+        }
+
+        try (ReservationArchive archive = new ReservationArchive(file)) {
+            assertEquals(20, archive.size());
+            for (Reservation reservation : reservations) {
+                Reservation archived = archive.get(reservation.id);
+                assertEquals(reservation.toString(), archived.toString());
+                assertEquals(reservation.customer, archived.customer);
+                assertEquals(reservation.getConfirmed(), archived.getConfirmed());
+            }
+            assertNull(archive.get(createReservations(new Hotel("h1", 1), 1).get(0).id));
+            assertNull(archive.get("(Id that doesn't exist)"));
+        }
+    }
+
+    /**
+     * A block that was partly written when the node crashed is cut off, new blocks go after the complete ones.
+     */
+    @Test
+    public void partialBlockIsCutOff() throws IOException, ReservationException {
+        Path file = Files.createTempDirectory("archive").resolve("h1.archive");
+        ArrayList<Reservation> reservations = createReservations(new Hotel("h1", 100), 2);
+        try (ReservationArchive archive = new ReservationArchive(file)) {
+            archive.append(reservations.subList(0, 1));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 1, 0, 1, 2, 3 }));
+        }
+
+        try (ReservationArchive archive = new ReservationArchive(file)) {
+            assertEquals(1, archive.size());
+            archive.append(reservations.subList(1, 2));
+        }
+        try (ReservationArchive archive = new ReservationArchive(file)) {
+            assertEquals(2, archive.size());
+            assertNotNull(archive.get(reservations.get(1).id));
+        }
+    }
+
+    /**
+     * Lookups use the id ranges of the blocks, also after reopening. The archive only takes reservations of its hotel.
+     */
+    @Test
+    public void lookupUsesIdRanges() throws IOException, ReservationException {
+        Path file = Files.createTempDirectory("archive").resolve("h1.archive");
+        ArrayList<Reservation> reservations = createReservations(new Hotel("h1", 100), 30);
+        try (ReservationArchive archive = new ReservationArchive(file)) {
+            // Newest first, so the ranges of the blocks are in the opposite order of the blocks.
+            archive.append(reservations.subList(20, 30));
+            archive.append(reservations.subList(10, 20));
+            assertEquals(reservations.get(25).toString(), archive.get(reservations.get(25).id).toString());
+            assertThrows(IllegalArgumentException.class,
+                    () -> archive.append(createReservations(new Hotel("h2", 1), 1)));
+        }
+
+        try (ReservationArchive archive = new ReservationArchive(file)) {
+            archive.append(reservations.subList(0, 10));
+            for (Reservation reservation : reservations) {
+                assertEquals(reservation.toString(), archive.get(reservation.id).toString());
+            }
+            assertNull(archive.get(createReservations(new Hotel("h2", 1), 1).get(0).id));
+        }
+    }
+
+    /**
+     * Reservations of 1 room for a growing stay, for 3 customers.
+     */
+    private static ArrayList<Reservation> createReservations(Hotel hotel, int count) throws ReservationException {
+        ArrayList<Reservation> reservations = new ArrayList<>();
+        LocalDate date = LocalDate.of(2022, 1, 1);
+        for (int i = 0; i < count; i++) {
+            reservations.add(hotel.createReservation(
+                    new Reservation("c" + (i % 3), 1, date, date.plusDays(1 + i)), Collections.emptyList()));
+        }
+        return reservations;
+    }
+
+}
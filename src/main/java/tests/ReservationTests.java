@@ -1,7 +1,18 @@
 package tests;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.RecipientRef;
 import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.sharding.typed.javadsl.EntityRef;
+import akka.stream.javadsl.Sink;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.StartAkka;
+import nl.saxion.concurrency.actors.BookingCoordinatorActor;
+import nl.saxion.concurrency.actors.HotelManagerActor;
 import nl.saxion.concurrency.domain.Reservation;
 import nl.saxion.concurrency.messages.RentARoomMessage;
 import org.junit.jupiter.api.Test;
@@ -11,8 +22,12 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static tests.TestData.*;
 
@@ -38,6 +53,26 @@ public class ReservationTests {
                 msg.contains("Rooms: 10, Date: 02-01-2022"));
     }
 
+    @Test
+    public void listReservationsOtherCustomer() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        getAddHotel1(system);
+
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 5, LocalDate.of(2022, 1, 1)),
+                new Reservation("c2", 3, LocalDate.of(2022, 1, 1)))));
+        AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
+
+        // Only the reservation of c1 is listed.
+        String msg = getListReservations(system);
+        assertEquals(2, msg.split("\n").length);
+        assertTrue(msg.contains("Rooms: 5, Date: 01-01-2022"));
+    }
+
     @Test
     public void listReservationsHotelDoesntExist() {
         ActorSystem<RentARoomMessage> system = initTest();
@@ -46,6 +81,37 @@ public class ReservationTests {
         assertEquals(msg, "h1 is not in our system.");
     }
 
+    @Test
+    public void listCustomerReservations() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        getAddHotel1(system);
+        getAddHotel2(system);
+
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 5, LocalDate.of(2022, 1, 1)),
+                new Reservation("c2", 3, LocalDate.of(2022, 1, 1)))));
+        reservations.put("h2", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 2, LocalDate.of(2022, 1, 2)))));
+        AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
+
+        List<RentARoomMessage> messages = StartAkka.streamCustomerReservations(system, "c1")
+                .runWith(Sink.seq(), system).toCompletableFuture().join();
+        // One message per hotel, in the order the hotels answered, and the totals.
+        assertEquals(3, messages.size());
+        HashSet<String> hotels = new HashSet<>();
+        for (RentARoomMessage msg : messages.subList(0, 2)) {
+            RentARoomMessage.SendCustomerReservations hotelReservations = (RentARoomMessage.SendCustomerReservations) msg;
+            assertEquals(1, hotelReservations.reservations.size());
+            hotels.add(hotelReservations.hotelName);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("h1", "h2")), hotels);
+        assertEquals("You have 2 reservations in 2 hotels.", StartAkka.render(messages.get(2)));
+    }
+
     @Test
     public void requestReservations() {
         ActorSystem<RentARoomMessage> system = initTest();
@@ -57,6 +123,230 @@ public class ReservationTests {
         assertTrue(msg.contains("Rooms: 5, Date: 01-01-2022"));
     }
 
+    @Test
+    public void requestReservationsStay() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        // h1 has roomCount 10.
+        getAddHotel1(system);
+
+        HashMap<String, ArrayList<Reservation>> stay = new HashMap<>();
+        stay.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 8, LocalDate.of(2022, 1, 1), LocalDate.of(2022, 1, 4)))));
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, stay),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertTrue(msg.contains("Rooms: 8, Date: 01-01-2022 to 04-01-2022"));
+
+        // The last night of the stay is 03-01-2022, so 3 rooms don't fit on it but do fit on the check-out date.
+        HashMap<String, ArrayList<Reservation>> lastNight = new HashMap<>();
+        lastNight.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c2", 3, LocalDate.of(2022, 1, 3), LocalDate.of(2022, 1, 5)))));
+        msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, lastNight),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertTrue(msg.contains("h1 doesn't have 3 rooms available."));
+
+        HashMap<String, ArrayList<Reservation>> checkOut = new HashMap<>();
+        checkOut.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c2", 3, LocalDate.of(2022, 1, 4)))));
+        msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, checkOut),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertTrue(msg.contains("Rooms: 3, Date: 04-01-2022"));
+    }
+
+    @Test
+    public void requestReservationsAllOrNothing() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        getAddHotel1(system);
+        getAddHotel2(system);
+
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 5, LocalDate.of(2022, 1, 1), LocalDate.of(2022, 1, 3)))));
+        reservations.put("h2", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 10, LocalDate.of(2022, 1, 3)))));
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations, true),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        // Same answer as without allOrNothing, so the id is at the same place.
+        assertTrue(msg.startsWith("Reservations for h1:\nThe reservation: \"Id: "));
+        assertTrue(msg.contains("Rooms: 5, Date: 01-01-2022 to 03-01-2022") &&
+                msg.contains("Rooms: 10, Date: 03-01-2022"));
+
+        assertTrue(getListReservations(system).contains("Rooms: 5, Date: 01-01-2022 to 03-01-2022"));
+    }
+
+    /**
+     * h2 doesn't have enough rooms, so h1 doesn't keep its reservation either.
+     */
+    @Test
+    public void requestReservationsAllOrNothingRejected() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        // These hotels have roomCount 10.
+        getAddHotel1(system);
+        getAddHotel2(system);
+
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 5, LocalDate.of(2022, 1, 1)))));
+        reservations.put("h2", new ArrayList<>(Arrays.asList(
+                new Reservation("c1", 15, LocalDate.of(2022, 1, 1)))));
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations, true),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertEquals(msg, "No reservations were made, because:\nh2 doesn't have 15 rooms available.");
+
+        assertEquals(getListReservations(system), "You have the following reservations in h1:\n");
+        // The rooms h1 held are released, so all 10 can be reserved.
+        HashMap<String, ArrayList<Reservation>> all = new HashMap<>();
+        all.put("h1", new ArrayList<>(Arrays.asList(new Reservation("c2", 10, LocalDate.of(2022, 1, 1)))));
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                    sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, all),
+                    Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        // The release may still be on its way to h1.
+        } while (!msg.contains("Rooms: 10") && System.currentTimeMillis() < deadline);
+        assertTrue(msg.contains("Rooms: 10, Date: 01-01-2022"));
+    }
+
+    /**
+     * h2 is deleted after it held its reservation, so its commit fails after h1 may have committed.
+     * The booking is aborted, and the reservation h1 committed is cancelled again.
+     */
+    @Test
+    public void requestReservationsAllOrNothingHotelDeletedBeforeCommit() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        getAddHotel1(system);
+        getAddHotel2(system);
+
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(new Reservation("c1", 5, LocalDate.of(2022, 1, 1)))));
+        reservations.put("h2", new ArrayList<>(Arrays.asList(new Reservation("c1", 5, LocalDate.of(2022, 1, 1)))));
+        HashMap<String, RecipientRef<RentARoomMessage>> hotels = new HashMap<>();
+        hotels.put("h1", HotelManagerActor.getEntityRef(system, "h1"));
+        hotels.put("h2", system.systemActorOf(
+                deleteAfterHold(HotelManagerActor.getEntityRef(system, "h2"), "h2"), "h2-proxy", Props.empty()));
+
+        CompletableFuture<RentARoomMessage> result = new CompletableFuture<>();
+        ActorRef<RentARoomMessage> replyTo = system.systemActorOf(Behaviors.receiveMessage(message -> {
+            result.complete(message);
+            return Behaviors.stopped();
+        }), "booking-result", Props.empty());
+        system.systemActorOf(BookingCoordinatorActor.create(hotels, reservations, replyTo, Duration.ofSeconds(5)),
+                "booking", Props.empty());
+
+        RentARoomMessage.BookingResult booking = (RentARoomMessage.BookingResult) result.join();
+        assertTrue(booking.aborted);
+        assertTrue(booking.hotels.isEmpty());
+        assertEquals("No reservations were made, because:\nh2 is not in our system.", StartAkka.render(booking));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        String msg;
+        do {
+            msg = getListReservations(system);
+        // The cancel may still be on its way to h1.
+        } while (!msg.equals("You have the following reservations in h1:\n") && System.currentTimeMillis() < deadline);
+        assertEquals("You have the following reservations in h1:\n", msg);
+    }
+
+    /**
+     * Both hotels answer each phase after 60% of the phase timeout, so the booking takes longer than one timeout.
+     * Every phase has its own timeout, so the booking still succeeds.
+     */
+    @Test
+    public void requestReservationsAllOrNothingSlowHotels() {
+        ActorSystem<RentARoomMessage> system = initTest();
+
+        getAddHotel1(system);
+        getAddHotel2(system);
+
+        HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
+        reservations.put("h1", new ArrayList<>(Arrays.asList(new Reservation("c1", 5, LocalDate.of(2022, 1, 1)))));
+        reservations.put("h2", new ArrayList<>(Arrays.asList(new Reservation("c1", 5, LocalDate.of(2022, 1, 1)))));
+        HashMap<String, RecipientRef<RentARoomMessage>> hotels = new HashMap<>();
+        for (String hotelName : reservations.keySet()) {
+            hotels.put(hotelName, system.systemActorOf(delayReplies(
+                    HotelManagerActor.getEntityRef(system, hotelName), Duration.ofMillis(1200)),
+                    hotelName + "-slow-proxy", Props.empty()));
+        }
+
+        CompletableFuture<RentARoomMessage> result = new CompletableFuture<>();
+        ActorRef<RentARoomMessage> replyTo = system.systemActorOf(Behaviors.receiveMessage(message -> {
+            result.complete(message);
+            return Behaviors.stopped();
+        }), "slow-booking-result", Props.empty());
+        system.systemActorOf(BookingCoordinatorActor.create(hotels, reservations, replyTo, Duration.ofSeconds(2)),
+                "slow-booking", Props.empty());
+
+        RentARoomMessage.BookingResult booking = (RentARoomMessage.BookingResult) result.join();
+        assertFalse(booking.aborted);
+        assertEquals(2, booking.hotels.size());
+        assertTrue(booking.rejections.isEmpty());
+    }
+
+    /**
+     * Forwards the messages of the BookingCoordinatorActor to the hotel, and the answers of the hotel to the
+     * coordinator after the given delay.
+     */
+    private static Behavior<RentARoomMessage> delayReplies(EntityRef<RentARoomMessage> hotel, Duration delay) {
+        return Behaviors.setup(context -> Behaviors.receive(RentARoomMessage.class)
+                .onMessage(RentARoomMessage.HoldReservations.class, hold -> {
+                    ActorRef<RentARoomMessage> coordinator = hold.sender;
+                    hotel.tell(new RentARoomMessage.HoldReservations(context.getSelf(), hold.holdId, hold.reservations));
+                    return Behaviors.receive(RentARoomMessage.class)
+                            .onMessage(RentARoomMessage.HoldResponse.class, response -> {
+                                context.scheduleOnce(delay, coordinator, response);
+                                return Behaviors.same();
+                            })
+                            .onMessage(RentARoomMessage.CommitHold.class, commit -> {
+                                hotel.tell(new RentARoomMessage.CommitHold(context.getSelf(), commit.holdId));
+                                return Behaviors.same();
+                            })
+                            .onAnyMessage(message -> {
+                                hotel.tell(message);
+                                return Behaviors.same();
+                            })
+                            .build();
+                })
+                .build());
+    }
+
+    /**
+     * Forwards the messages of the BookingCoordinatorActor to the hotel, but deletes the hotel after it held the
+     * reservations, before the coordinator hears that they are held.
+     */
+    private static Behavior<RentARoomMessage> deleteAfterHold(EntityRef<RentARoomMessage> hotel, String hotelName) {
+        return Behaviors.setup(context -> Behaviors.receive(RentARoomMessage.class)
+                .onMessage(RentARoomMessage.HoldReservations.class, hold -> {
+                    hotel.tell(new RentARoomMessage.HoldReservations(context.getSelf(), hold.holdId, hold.reservations));
+                    return Behaviors.receive(RentARoomMessage.class)
+                            .onMessage(RentARoomMessage.HoldResponse.class, response -> {
+                                hotel.tell(new RentARoomMessage.DeleteHotel(context.getSelf(), hotelName));
+                                return Behaviors.receive(RentARoomMessage.class)
+                                        .onMessage(RentARoomMessage.Done.class, deleted -> {
+                                            hold.sender.tell(response);
+                                            return forward(hotel);
+                                        })
+                                        .build();
+                            })
+                            .build();
+                })
+                .build());
+    }
+
+    private static Behavior<RentARoomMessage> forward(EntityRef<RentARoomMessage> hotel) {
+        return Behaviors.receiveMessage(message -> {
+            hotel.tell(message);
+            return Behaviors.same();
+        });
+    }
+
     /**
      * Requests a reservation that has a higher roomCount than the hotel.
      */
@@ -70,9 +360,9 @@ public class ReservationTests {
         HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
         // Reservation asks for 15 rooms.
         reservations.put("h1", new ArrayList<>(Arrays.asList(new Reservation("c1", 15, LocalDate.of(2022, 1, 1)))));
-        String msg =  ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        String msg =  StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertTrue(msg.contains("h1 doesn't have 15 rooms available."));
     }
 
@@ -90,9 +380,9 @@ public class ReservationTests {
         // The reservation id is mentioned between char 43 and 79 of the RequestReservations response.
         String id = msg.substring(43, 79);
 
-        msg = ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.ConfirmReservation(sender, id),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "The reservation has been confirmed.");
     }
 
@@ -102,9 +392,9 @@ public class ReservationTests {
 
         getAddHotel1(system);
 
-        String msg = ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.ConfirmReservation(sender, "(Id that doesn't exist)"),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "There is no reservation with Id: (Id that doesn't exist) in our system.");
     }
 
@@ -133,6 +423,79 @@ public class ReservationTests {
         assertTrue(msg.contains("Confirmed: Yes"));
     }
 
+    /**
+     * An unconfirmed reservation is released after its time to live, a confirmed one stays.
+     */
+    @Test
+    public void unconfirmedReservationExpires() {
+        ActorSystem<RentARoomMessage> system = initTest(
+                ConfigFactory.parseString("rent-a-room.hotel.unconfirmed-ttl = 1s"));
+
+        getAddHotel1(system);
+        String msg;
+        // The hotel may not have been added before requesting reservations for it.
+        // Keep requesting until the hotel is ready.
+        do {
+            msg = getRequestReservations(system);
+        } while (msg.equals("h1 is not in our system."));
+        String id = msg.substring(43, 79);
+        // Both reservations take 5 of the 10 rooms, so the hotel is full.
+        assertTrue(getRequestReservations(system).contains("was received"));
+        assertTrue(getRequestReservations(system).contains("h1 doesn't have 5 rooms available."));
+
+        AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.ConfirmReservation(sender, id),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join();
+
+        // Only the confirmed reservation is left once the other one expired.
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            try { Thread.sleep(200); } catch (Exception ignored) { }
+            msg = getListReservations(system);
+        } while (msg.split("\n").length - 1 > 1 && System.currentTimeMillis() < deadline);
+        assertEquals(1, msg.split("\n").length - 1);
+        assertTrue(msg.contains(id + ", Rooms: 5, Date: 01-01-2022, Confirmed: Yes"));
+
+        // The rooms of the expired reservation can be reserved again.
+        assertTrue(getRequestReservations(system).contains("was received"));
+    }
+
+    /**
+     * A past reservation is moved to the archive, where it can still be looked up by id.
+     */
+    @Test
+    public void pastReservationIsArchived() {
+        ActorSystem<RentARoomMessage> system = initTest(
+                ConfigFactory.parseString("rent-a-room.hotel.compaction-interval = 1s"));
+
+        getAddHotel1(system);
+        String msg;
+        // The hotel may not have been added before requesting reservations for it.
+        // Keep requesting until the hotel is ready.
+        do {
+            msg = getRequestReservations(system);
+        } while (msg.equals("h1 is not in our system."));
+        String id = msg.substring(43, 79);
+
+        // The reservation on 01-01-2022 isn't listed anymore once it's archived.
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            try { Thread.sleep(200); } catch (Exception ignored) { }
+            msg = getListReservations(system);
+        } while (msg.contains(id) && System.currentTimeMillis() < deadline);
+        assertFalse(msg.contains(id));
+
+        msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.GetReservation(sender, id),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertEquals("Id: " + id + ", Rooms: 5, Date: 01-01-2022, Confirmed: No", msg);
+
+        msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                sender -> new RentARoomMessage.ConfirmReservation(sender, id),
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
+        assertEquals("The reservation with Id: " + id + " is in the past, it can't be changed anymore.", msg);
+    }
+
     @Test
     public void cancelReservation() {
         ActorSystem<RentARoomMessage> system = initTest();
@@ -147,9 +510,9 @@ public class ReservationTests {
         // The reservation id is mentioned between char 43 and 79 of the RequestReservations response.
         String id = msg.substring(43, 79);
 
-        msg = ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.CancelReservation(sender, id),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "The reservation has been cancelled.");
     }
 
@@ -159,9 +522,9 @@ public class ReservationTests {
 
         getAddHotel1(system);
 
-        String msg = ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        String msg = StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.CancelReservation(sender, "(Id that doesn't exist)"),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
         assertEquals(msg, "There is no reservation with Id: (Id that doesn't exist) in our system.");
     }
 
@@ -0,0 +1,318 @@
+package tests;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.japi.Util;
+import akka.persistence.AtomicWrite;
+import akka.persistence.JournalProtocol;
+import akka.persistence.PersistentRepr;
+import akka.persistence.SaveSnapshotFailure;
+import akka.persistence.SelectedSnapshot;
+import akka.persistence.SnapshotMetadata;
+import akka.persistence.SnapshotProtocol;
+import akka.persistence.SnapshotSelectionCriteria;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.HotelSummary;
+import nl.saxion.concurrency.domain.Rejection;
+import nl.saxion.concurrency.domain.Reservation;
+import nl.saxion.concurrency.domain.ReservationException;
+import nl.saxion.concurrency.messages.HotelEvent;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.messages.RentARoomSerializer;
+import nl.saxion.concurrency.persistence.HotelSnapshot;
+import nl.saxion.concurrency.persistence.JournalProtocolSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scala.Option;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The binary serializer of the messages and events, through Akka's serialization like between nodes.
+ */
+public class SerializationTests {
+
+    private static final LocalDate DATE = LocalDate.of(2022, 1, 1);
+
+    private static ActorSystem<RentARoomMessage> system;
+    private static Serialization serialization;
+
+
+    /**
+     * A local system with the serializers of application.conf, so no ports are needed.
+     */
+    @BeforeAll
+    public static void setup() {
+        system = ActorSystem.create(Behaviors.empty(), "SerializationTests",
+                ConfigFactory.parseString("akka.actor.provider = local").withFallback(ConfigFactory.load()));
+        serialization = SerializationExtension.get(Adapter.toClassic(system));
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        system.terminate();
+    }
+
+
+    /**
+     * Every message that can go to another node comes back with the same fields,
+     * so serializing it again gives the same bytes.
+     */
+    @Test
+    public void messagesSurviveRoundTrip() {
+        HotelSummary summary = new HotelSummary("h1", 10, 3, DATE, 2, 7);
+        HashMap<String, ArrayList<Reservation>> multiHotels = new HashMap<>();
+        multiHotels.put("h1", createReservations());
+        multiHotels.put("h2", new ArrayList<>());
+
+        for (RentARoomMessage message : Arrays.asList(
+                new RentARoomMessage.Done(RentARoomMessage.Done.Action.HOTEL_ADDED, "h1"),
+                new RentARoomMessage.Done(RentARoomMessage.Done.Action.AGENT_ADDED, null),
+                new RentARoomMessage.Rejected(new Rejection(Rejection.Reason.NOT_ENOUGH_ROOMS, "h1", 3, null)),
+                new RentARoomMessage.Rejected(new Rejection(Rejection.Reason.DATE_NOT_TAKEN, "h1", 0, DATE)),
+                new RentARoomMessage.AddAgent(system),
+                new RentARoomMessage.ListHotels(system),
+                new RentARoomMessage.AddHotel(system, "h1", 10),
+                new RentARoomMessage.DeleteHotel(system, "h1"),
+                new RentARoomMessage.ListAvailableRooms(system, 5, DATE, 3),
+                new RentARoomMessage.SearchAvailableRooms(system, 5, DATE, 3, 10, Duration.ofMillis(500)),
+                new RentARoomMessage.RequestAvailableRooms(system, 5, DATE, 3),
+                new RentARoomMessage.SendAvailableRooms(null, 0),
+                new RentARoomMessage.RequestHotelSummary(system, DATE, 1),
+                new RentARoomMessage.SendHotelSummary(summary),
+                new RentARoomMessage.SendHotels(new ArrayList<>(Arrays.asList(summary, summary))),
+                new RentARoomMessage.SendHotelsWithRooms(new ArrayList<>(Arrays.asList(
+                        new RentARoomMessage.SendAvailableRooms("h1", 3)))),
+                new RentARoomMessage.SendBestHotels(new ArrayList<>(), 2, 3),
+                new RentARoomMessage.ListReservations(system, "h1", "c1"),
+                new RentARoomMessage.SendReservations("h1", createReservations()),
+                new RentARoomMessage.ListCustomerReservations(system, "c1"),
+                new RentARoomMessage.RequestCustomerReservations(system, "c1"),
+                new RentARoomMessage.SendCustomerReservations("h1", createReservations()),
+                new RentARoomMessage.SendCustomerReservationTotals(2, 1),
+                new RentARoomMessage.RequestReservationsMultiHotels(system, multiHotels, true),
+                new RentARoomMessage.RequestReservations(system, createReservations()),
+                createBooked(),
+                new RentARoomMessage.BookingResult(
+                        new ArrayList<>(Arrays.asList(new Rejection(Rejection.Reason.HOTEL_UNKNOWN, "h3"))),
+                        new ArrayList<>(Arrays.asList(createBooked(), createBooked())), false),
+                new RentARoomMessage.HoldReservations(system, "hold", createReservations()),
+                new RentARoomMessage.CommitHold(system, "hold"),
+                new RentARoomMessage.ReleaseHold(system, "hold"),
+                new RentARoomMessage.HoldResponse("h1", "hold", createReservations(), null),
+                new RentARoomMessage.HoldResponse("h1", "hold", new ArrayList<>(),
+                        new Rejection(Rejection.Reason.HOLD_GONE, "h1")),
+                new RentARoomMessage.BookingTimeout(),
+                new RentARoomMessage.ConfirmReservation(system, "id"),
+                new RentARoomMessage.CancelReservation(system, "id"),
+                new RentARoomMessage.GetReservation(system, "id"),
+                new RentARoomMessage.SendReservation(createReservations().get(1)),
+                new RentARoomMessage.HotelChanged("h1", DATE, null),
+                new RentARoomMessage.SummariesFetched(new RentARoomMessage.ListAvailableRooms(system, 5, DATE, 3),
+                        DATE, 3, new ArrayList<>(Arrays.asList(summary, summary)), 42),
+                new RentARoomMessage.ArchiveReservations(),
+                new RentARoomMessage.ReservationsWritten(DATE, 42),
+                new RentARoomMessage.ArchiveLookedUp(system, new RentARoomMessage.SendReservation(
+                        createReservations().get(0))),
+                new RentARoomMessage.ExpireReservations(),
+                new RentARoomMessage.AggregatorTimeout(),
+                new RentARoomMessage.Autoscale(),
+                new RentARoomMessage.ProbeLoad(system, 42),
+                new RentARoomMessage.SendLoad(system, 42, 7),
+                new RentARoomMessage.StopAgent(),
+                new RentARoomMessage.AgentStopped(system))) {
+            roundTrip(message);
+        }
+    }
+
+    @Test
+    public void eventsSurviveRoundTrip() {
+        for (HotelEvent event : Arrays.asList(
+                new HotelEvent.HotelAdded(10),
+                new HotelEvent.HotelDeleted(),
+                new HotelEvent.ReservationAdded(createReservations().get(0)),
+                new HotelEvent.ReservationConfirmed("id"),
+                new HotelEvent.ReservationCancelled("id"),
+                new HotelEvent.ReservationsHeld("hold", createReservations(), 1000),
+                new HotelEvent.HoldCommitted("hold"),
+                new HotelEvent.HoldReleased("hold"),
+                new HotelEvent.ReservationsExpired(1000),
+                new HotelEvent.ReservationsArchived(DATE))) {
+            roundTrip(event);
+        }
+    }
+
+    @Test
+    public void fieldsAreKept() {
+        RentARoomMessage.RequestReservations request = (RentARoomMessage.RequestReservations)
+                roundTrip(new RentARoomMessage.RequestReservations(system, createReservations()));
+        assertEquals(system, request.sender);
+        Reservation reservation = request.reservations.get(1);
+        assertNull(request.reservations.get(0).id);
+        assertEquals("3e7f1b2a-0000-0000-0000-000000000001", reservation.id);
+        assertEquals("c\u00e9", reservation.customer);
+        assertEquals(2, reservation.roomCount);
+        assertEquals(DATE, reservation.date);
+        assertEquals(DATE.plusDays(3), reservation.checkOut);
+        assertEquals(1000, reservation.expiresAt);
+        assertTrue(reservation.getConfirmed());
+
+        RentARoomMessage.SearchAvailableRooms search = (RentARoomMessage.SearchAvailableRooms)
+                roundTrip(new RentARoomMessage.SearchAvailableRooms(system, 5, DATE, 3, 10, Duration.ofMillis(500)));
+        assertEquals(Duration.ofMillis(500), search.budget);
+
+        RentARoomMessage.Booked booked = (RentARoomMessage.Booked) roundTrip(createBooked());
+        assertNull(booked.rejections.get(0));
+        Rejection rejection = booked.rejections.get(1);
+        assertEquals(Rejection.Reason.NOT_ENOUGH_ROOMS, rejection.reason);
+        assertEquals("h1", rejection.subject);
+        assertEquals(2, rejection.roomCount);
+        assertNull(rejection.date);
+    }
+
+    /**
+     * Texts of more than 64 KB, which DataOutputStream.writeUTF can't write.
+     */
+    @Test
+    public void longText() {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            name.append("Hotel ").append(i).append(' ');
+        }
+        RentARoomMessage.Done done = (RentARoomMessage.Done)
+                roundTrip(new RentARoomMessage.Done(RentARoomMessage.Done.Action.HOTEL_DELETED, name.toString()));
+        assertEquals(name.toString(), done.hotelName);
+    }
+
+    /**
+     * Snapshots of hotels use the RentARoomSerializer too, java serialization is off.
+     */
+    @Test
+    public void snapshotSurvivesRoundTrip() throws Exception {
+        Hotel hotel = new Hotel("h1", 10);
+        hotel.addReservation(hotel.createReservation(new Reservation("c1", 4, DATE), Collections.emptyList()));
+
+        Hotel copy = ((HotelSnapshot) roundTrip(HotelSnapshot.of(hotel))).toHotel();
+        assertEquals(6, copy.getAvailableRooms(DATE));
+        assertEquals(1, copy.getReservations("c1").size());
+        assertNull(((HotelSnapshot) roundTrip(HotelSnapshot.of(null))).toHotel());
+        assertFalse(system.settings().config().getBoolean("akka.actor.allow-java-serialization"));
+    }
+
+    /**
+     * The messages of the journal proxy keep their events, refs and errors.
+     */
+    @Test
+    public void journalMessagesSurviveRoundTrip() {
+        akka.actor.ActorRef persistentActor = Adapter.toClassic(system.deadLetters());
+        PersistentRepr event = PersistentRepr.apply(new HotelEvent.HotelAdded(10), 7, "HotelManager|h1", "",
+                false, akka.actor.ActorRef.noSender(), "writer");
+        JournalProtocol.WriteMessages write = (JournalProtocol.WriteMessages) roundTripJournal(
+                new JournalProtocol.WriteMessages(Util.immutableSingletonSeq(AtomicWrite.apply(event)),
+                        persistentActor, 3));
+        PersistentRepr copy = ((AtomicWrite) write.messages().head()).payload().head();
+        assertEquals(10, ((HotelEvent.HotelAdded) copy.payload()).roomCount);
+        assertEquals(7, copy.sequenceNr());
+        assertEquals("HotelManager|h1", copy.persistenceId());
+        assertEquals(persistentActor, write.persistentActor());
+        assertEquals(3, write.actorInstanceId());
+
+        JournalProtocol.ReplayMessages replay = (JournalProtocol.ReplayMessages) roundTripJournal(
+                new JournalProtocol.ReplayMessages(1, Long.MAX_VALUE, 100, "HotelManager|h1", persistentActor));
+        assertEquals(Long.MAX_VALUE, replay.toSequenceNr());
+        assertEquals("HotelManager|h1", replay.persistenceId());
+
+        JournalProtocol.ReplayMessagesFailure failure = (JournalProtocol.ReplayMessagesFailure) roundTripJournal(
+                new JournalProtocol.ReplayMessagesFailure(new IllegalStateException("Journal is gone.")));
+        assertTrue(failure.cause().getMessage().endsWith("Journal is gone."));
+        assertSame(JournalProtocol.WriteMessagesSuccessful$.MODULE$,
+                roundTripJournal(JournalProtocol.WriteMessagesSuccessful$.MODULE$));
+    }
+
+
+    /**
+     * The messages of the snapshot store proxy keep their snapshots, metadata and criteria.
+     */
+    @Test
+    public void snapshotMessagesSurviveRoundTrip() throws ReservationException {
+        Hotel hotel = new Hotel("h1", 10);
+        hotel.addReservation(hotel.createReservation(new Reservation("c1", 4, DATE), Collections.emptyList()));
+        SnapshotMetadata metadata = new SnapshotMetadata("HotelManager|h1", 200, 1234);
+
+        SnapshotProtocol.SaveSnapshot save = (SnapshotProtocol.SaveSnapshot) roundTripJournal(
+                new SnapshotProtocol.SaveSnapshot(metadata, HotelSnapshot.of(hotel)));
+        assertEquals(metadata, save.metadata());
+        assertEquals(6, ((HotelSnapshot) save.snapshot()).toHotel().getAvailableRooms(DATE));
+
+        SnapshotProtocol.LoadSnapshot load = (SnapshotProtocol.LoadSnapshot) roundTripJournal(
+                new SnapshotProtocol.LoadSnapshot("HotelManager|h1", SnapshotSelectionCriteria.Latest(), Long.MAX_VALUE));
+        assertEquals(SnapshotSelectionCriteria.Latest(), load.criteria());
+        assertEquals(Long.MAX_VALUE, load.toSequenceNr());
+
+        SnapshotProtocol.LoadSnapshotResult result = (SnapshotProtocol.LoadSnapshotResult) roundTripJournal(
+                new SnapshotProtocol.LoadSnapshotResult(
+                        Option.apply(new SelectedSnapshot(metadata, HotelSnapshot.of(hotel))), 205));
+        assertEquals(metadata, result.snapshot().get().metadata());
+        assertEquals(1, ((HotelSnapshot) result.snapshot().get().snapshot()).toHotel().getReservations("c1").size());
+        assertEquals(205, result.toSequenceNr());
+        assertTrue(((SnapshotProtocol.LoadSnapshotResult) roundTripJournal(
+                new SnapshotProtocol.LoadSnapshotResult(Option.empty(), 0))).snapshot().isEmpty());
+
+        SaveSnapshotFailure failure = (SaveSnapshotFailure) roundTripJournal(
+                new SaveSnapshotFailure(metadata, new IllegalStateException("Disk is full.")));
+        assertEquals(metadata, failure.metadata());
+        assertTrue(failure.cause().getMessage().endsWith("Disk is full."));
+    }
+
+    /**
+     * The first reservation made, the second one rejected.
+     */
+    private static RentARoomMessage.Booked createBooked() {
+        return new RentARoomMessage.Booked("h1", createReservations(), new ArrayList<>(Arrays.asList(
+                null, new Rejection(Rejection.Reason.NOT_ENOUGH_ROOMS, "h1", 2, null))));
+    }
+
+    private static ArrayList<Reservation> createReservations() {
+        Reservation confirmed = new Reservation(
+                "3e7f1b2a-0000-0000-0000-000000000001", "c\u00e9", 2, DATE, DATE.plusDays(3), 1000);
+        confirmed.setConfirmed(true);
+        return new ArrayList<>(Arrays.asList(new Reservation("c1", 1, DATE), confirmed));
+    }
+
+    private static Object roundTripJournal(Object o) {
+        Serializer serializer = serialization.findSerializerFor(o);
+        assertTrue(serializer instanceof JournalProtocolSerializer, o.getClass().getName());
+        return serialization.deserialize(serializer.toBinary(o), serializer.identifier(),
+                Serializers.manifestFor(serializer, o)).get();
+    }
+
+    /**
+     * @return The object after serializing and deserializing it with the RentARoomSerializer.
+     */
+    private static Object roundTrip(Object o) {
+        Serializer serializer = serialization.findSerializerFor(o);
+        assertTrue(serializer instanceof RentARoomSerializer, o.getClass().getName());
+        String manifest = Serializers.manifestFor(serializer, o);
+        byte[] bytes = serializer.toBinary(o);
+
+        Object copy = serialization.deserialize(bytes, serializer.identifier(), manifest).get();
+        assertEquals(o.getClass(), copy.getClass());
+        assertArrayEquals(bytes, serializer.toBinary(copy), o.getClass().getName());
+        return copy;
+    }
+
+}
@@ -2,10 +2,15 @@ package tests;
 
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.Config;
 import nl.saxion.concurrency.StartAkka;
 import nl.saxion.concurrency.domain.Reservation;
 import nl.saxion.concurrency.messages.RentARoomMessage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -25,14 +30,50 @@ public class TestData {
         return system;
     }
 
+    /**
+     * Starts the program, which stores its hotels in the given directory.
+     * It sleeps for 1 second to give actors time to initialize and register.
+     * @return the main ActorSystem of the program.
+     */
+    public static ActorSystem<RentARoomMessage> initTest(Path persistenceDir) {
+        ActorSystem<RentARoomMessage> system = new StartAkka().test(persistenceDir, null);
+        try { Thread.sleep(1000); } catch (Exception ignored) { }
+        return system;
+    }
+
+    /**
+     * Starts the program with settings that overwrite those of application.conf.
+     * It sleeps for 1 second to give actors time to initialize and register.
+     * @return the main ActorSystem of the program.
+     */
+    public static ActorSystem<RentARoomMessage> initTest(Config config) {
+        try {
+            return initTest(Files.createTempDirectory("rent-a-room"), config);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Starts the program, which stores its hotels in the given directory, with settings that overwrite those of
+     * application.conf.
+     * It sleeps for 1 second to give actors time to initialize and register.
+     * @return the main ActorSystem of the program.
+     */
+    public static ActorSystem<RentARoomMessage> initTest(Path persistenceDir, Config config) {
+        ActorSystem<RentARoomMessage> system = new StartAkka().test(persistenceDir, null, config);
+        try { Thread.sleep(1000); } catch (Exception ignored) { }
+        return system;
+    }
+
     /**
      * Adds a hotel with name "h1" and roomCount 10.
      * @return The response message.
      */
     public static String getAddHotel1(ActorSystem<RentARoomMessage> system) {
-        return ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        return StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.AddHotel(sender, "h1", 10),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
     }
 
     /**
@@ -40,9 +81,9 @@ public class TestData {
      * @return The response message.
      */
     public static String getAddHotel2(ActorSystem<RentARoomMessage> system) {
-        return ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        return StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.AddHotel(sender, "h2", 10),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
     }
 
     /**
@@ -52,9 +93,9 @@ public class TestData {
     public static String getRequestReservations(ActorSystem<RentARoomMessage> system) {
         HashMap<String, ArrayList<Reservation>> reservations = new HashMap<>();
         reservations.put("h1", new ArrayList<>(Arrays.asList(new Reservation("c1", 5, LocalDate.of(2022, 1, 1)))));
-        return ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        return StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.RequestReservationsMultiHotels(sender, reservations),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
     }
 
     /**
@@ -62,9 +103,9 @@ public class TestData {
      * @return The response message.
      */
     public static String getListReservations(ActorSystem<RentARoomMessage> system) {
-        return ((RentARoomMessage.Response) AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+        return StartAkka.render(AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
                 sender -> new RentARoomMessage.ListReservations(sender, "h1", "c1"),
-                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join()).status;
+                Duration.ofSeconds(10), system.scheduler()).toCompletableFuture().join());
     }
 
 }
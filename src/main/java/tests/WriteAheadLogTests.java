@@ -0,0 +1,83 @@
+package tests;
+
+import nl.saxion.concurrency.persistence.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTests {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+
+    /**
+     * Appends records over more segments, and reads them back after opening the log again.
+     */
+    @Test
+    public void recordsSurviveReopen() throws IOException {
+        Path dir = Files.createTempDirectory("wal");
+        ArrayList<Long> positions = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(dir, SEGMENT_SIZE, true)) {
+            for (int i = 0; i < 100; i++) {
+                positions.add(log.append(("record " + i).getBytes(StandardCharsets.UTF_8)));
+            }
+            log.commit().join();
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(dir, SEGMENT_SIZE, true)) {
+            ArrayList<String> records = new ArrayList<>();
+            log.forEach((position, record) -> records.add(new String(record, StandardCharsets.UTF_8)));
+            assertEquals(100, records.size());
+            assertEquals("record 99", records.get(99));
+            assertEquals("record 42", new String(log.read(positions.get(42)), StandardCharsets.UTF_8));
+
+            // New records go after the old ones.
+            long position = log.append("record 100".getBytes(StandardCharsets.UTF_8));
+            assertTrue(position > positions.get(99));
+        }
+    }
+
+    /**
+     * Commits that come in while the flusher is forcing share the next force.
+     */
+    @Test
+    public void groupCommitSharesForces() throws IOException {
+        Path dir = Files.createTempDirectory("wal");
+        try (WriteAheadLog log = new WriteAheadLog(dir, SEGMENT_SIZE * 1024, true)) {
+            ArrayList<CompletableFuture<Void>> commits = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                log.append(new byte[100]);
+                commits.add(log.commit());
+            }
+            CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0])).join();
+            assertTrue(log.getForceCount() < 1000);
+        }
+    }
+
+    @Test
+    public void truncateRemovesOldSegments() throws IOException {
+        Path dir = Files.createTempDirectory("wal");
+        try (WriteAheadLog log = new WriteAheadLog(dir, SEGMENT_SIZE, false)) {
+            long last = 0;
+            for (int i = 0; i < 100; i++) {
+                last = log.append(new byte[100]);
+            }
+            log.commit().join();
+            log.truncate(last);
+
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(1, files.count());
+            }
+            assertEquals(100, log.read(last).length);
+        }
+    }
+
+}